@@ -20,6 +20,7 @@ public class JwtConfig {
     private long accessTtlMin;          // e.g., 15
     private long refreshTtlDays;
     private String audience;            // expected aud claim
+    private long jwksMaxAgeSec = 300;   // JWKS Cache-Control max-age, capped at the access TTL
 
     public String getAlg() {
         return alg;
@@ -92,6 +93,12 @@ public class JwtConfig {
     public void setAudience(String audience) {
         this.audience = audience;
     }
-}
 
+    public long getJwksMaxAgeSec() {
+        return jwksMaxAgeSec;
+    }
 
+    public void setJwksMaxAgeSec(long jwksMaxAgeSec) {
+        this.jwksMaxAgeSec = jwksMaxAgeSec;
+    }
+}
@@ -7,6 +7,7 @@ import jakarta.servlet.FilterChain;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
+import io.jsonwebtoken.Claims;
 import io.jsonwebtoken.JwtException;
 
 import org.slf4j.Logger;
@@ -22,10 +23,14 @@ import org.springframework.web.filter.OncePerRequestFilter;
 
 import java.io.IOException;
 import java.util.List;
+import java.util.Optional;
 
 @Component
 public class JwtFilter extends OncePerRequestFilter {
 
+    /** Request attribute holding the verified {@link Claims}; set only when the token verified. */
+    public static final String CLAIMS_ATTRIBUTE = JwtFilter.class.getName() + ".claims";
+
     @Autowired
     private JWTService jwtService;
 
@@ -43,7 +48,7 @@ public class JwtFilter extends OncePerRequestFilter {
                                     FilterChain filterChain) throws ServletException, IOException {
 
         String token = resolveToken(request);
-        String sub = null; // holds the JWT subject (user id)
+        Claims claims = null; // verified once here; downstream reads CLAIMS_ATTRIBUTE
         String method = request.getMethod();
         String uri = request.getRequestURI();
 
@@ -51,20 +56,22 @@ public class JwtFilter extends OncePerRequestFilter {
                 token == null ? "<missing>" : "<present>", method, uri);
         if (token != null) {
            try {
-                sub = jwtService.extractPhonenumber(token); // subject = userId
-                log.info("access_token parsed successfully for {} {}, subject={}", method, uri, sub);
+                claims = jwtService.extractAllClaims(token); // signature, issuer, audience, exp
+                log.info("access_token parsed successfully for {} {}, subject={}", method, uri, claims.getSubject());
             } catch (JwtException | IllegalArgumentException ex) {
                 log.warn("access_token parsing failed for {} {}: {}", method, uri, ex.getMessage());
             }
 
         }
+        String sub = claims == null ? null : jwtService.extractPhonenumber(claims); // subject = userId
         // Previously we loaded the user by phone number. However our tokens use the
         // user id as the subject, which caused lookups to fail and every request to
         // be rejected with 403. Instead, simply trust the verified JWT claims and
         // authenticate with the user id extracted from the token.
         if (sub != null && SecurityContextHolder.getContext().getAuthentication() == null) {
-            // ensure token is valid (signature + not expired)
-            if (!jwtService.isTokenExpired(token)) {
+            // claims are already verified; only the expiry needs checking against them
+            if (!jwtService.isTokenExpired(claims)) {
+                request.setAttribute(CLAIMS_ATTRIBUTE, claims);
                 UsernamePasswordAuthenticationToken authentoken =
                         new UsernamePasswordAuthenticationToken(sub, token, List.of());
                 authentoken.setDetails(new WebAuthenticationDetailsSource().buildDetails(request));
@@ -80,6 +87,11 @@ public class JwtFilter extends OncePerRequestFilter {
         filterChain.doFilter(request, response);
     }
 
+    /** Claims verified by this filter for the current request, without parsing the token again. */
+    public static Optional<Claims> claims(HttpServletRequest request) {
+        return request.getAttribute(CLAIMS_ATTRIBUTE) instanceof Claims c ? Optional.of(c) : Optional.empty();
+    }
+
     @Override
     protected boolean shouldNotFilter(HttpServletRequest request) {
         String path = request.getServletPath();
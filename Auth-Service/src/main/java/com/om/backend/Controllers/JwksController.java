@@ -1,58 +1,119 @@
 package com.om.backend.Controllers;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.om.backend.Config.JwtConfig;
 import com.om.backend.Config.RsaKeys;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RestController;
 
 import java.math.BigInteger;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.security.interfaces.RSAPublicKey;
+import java.time.Duration;
 import java.util.*;
 import static java.util.Base64.getUrlEncoder;
 
+/**
+ * Publishes the signing keys. Keys only change with a rotation (a redeploy with a new kid), so the
+ * JWK set is encoded once at startup and served as the same bytes with a strong ETag; verifiers
+ * and proxies can revalidate with If-None-Match and get a 304 without a body.
+ */
 @RestController
 public class JwksController {
 
     private static final Logger log = LoggerFactory.getLogger(JwksController.class);
-    
-    private final RSAPublicKey current;
-    private final JwtConfig cfg;
 
-    public JwksController(@Qualifier("jwtCurrentPublicKey") RSAPublicKey current, JwtConfig cfg) {
-        this.current = current;
-        this.cfg = cfg;
-    }
+    private final byte[] body;
+    private final String etag;
+    private final CacheControl cacheControl;
 
-    @GetMapping("/.well-known/jwks.json")
-    public Map<String,Object> jwks() {
-        log.info("JWKS PUBLIC key modulus bits = {}", current.getModulus().bitLength());
+    public JwksController(@Qualifier("jwtCurrentPublicKey") RSAPublicKey current, JwtConfig cfg) {
         List<Map<String,Object>> keys = new ArrayList<>();
         keys.add(jwk(cfg.getKid(), current));
-
-        if (hasRotation()) {
+        if (hasRotation(cfg)) {
             var prev = RsaKeys.loadPublicPem(cfg.getPreviousPublicPem());
             keys.add(jwk(cfg.getPreviousKid(), prev));
         }
-        return Map.of("keys", keys);
+        try {
+            this.body = new ObjectMapper().writeValueAsBytes(Map.of("keys", keys));
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Failed to encode JWKS", e);
+        }
+        this.etag = "\"" + b64u(sha256(body)) + "\"";
+        this.cacheControl = CacheControl.maxAge(Duration.ofSeconds(maxAgeSec(cfg))).cachePublic();
+        log.info("JWKS PUBLIC key modulus bits = {}, keys = {}, etag = {}",
+                current.getModulus().bitLength(), keys.size(), etag);
+    }
+
+    @GetMapping("/.well-known/jwks.json")
+    public ResponseEntity<byte[]> jwks(
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        if (matches(ifNoneMatch, etag)) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED)
+                    .eTag(etag)
+                    .cacheControl(cacheControl)
+                    .build();
+        }
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_JSON)
+                .eTag(etag)
+                .cacheControl(cacheControl)
+                .body(body);
     }
 
-    private boolean hasRotation() {
+    /** Configured max-age, never longer than an access token lives (a rotated-in kid must show up within that). */
+    private static long maxAgeSec(JwtConfig cfg) {
+        long maxAge = Math.max(0, cfg.getJwksMaxAgeSec());
+        long accessTtlSec = cfg.getAccessTtlMin() * 60;
+        return accessTtlSec > 0 ? Math.min(maxAge, accessTtlSec) : maxAge;
+    }
+
+    /** If-None-Match uses weak comparison: a W/ prefix on the client's tag still matches. */
+    private static boolean matches(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null || ifNoneMatch.isBlank()) return false;
+        for (String tag : ifNoneMatch.split(",")) {
+            String t = tag.trim();
+            if (t.equals("*")) return true;
+            if (t.startsWith("W/")) t = t.substring(2);
+            if (t.equals(etag)) return true;
+        }
+        return false;
+    }
+
+    private static boolean hasRotation(JwtConfig cfg) {
         return cfg.getPreviousKid() != null && !cfg.getPreviousKid().isBlank()
                 && cfg.getPreviousPublicPem() != null && !cfg.getPreviousPublicPem().isBlank();
     }
 
     private static Map<String,Object> jwk(String kid, RSAPublicKey pub) {
-        return Map.of(
-                "kty", "RSA",
-                "use", "sig",
-                "alg", "RS256",
-                "kid", kid,
-                "n", b64u(unsigned(pub.getModulus())),
-                "e", b64u(unsigned(pub.getPublicExponent()))
-        );
+        // insertion order keeps the encoded bytes, and so the ETag, identical on every pod
+        Map<String,Object> jwk = new LinkedHashMap<>();
+        jwk.put("kty", "RSA");
+        jwk.put("use", "sig");
+        jwk.put("alg", "RS256");
+        jwk.put("kid", kid);
+        jwk.put("n", b64u(unsigned(pub.getModulus())));
+        jwk.put("e", b64u(unsigned(pub.getPublicExponent())));
+        return jwk;
+    }
+
+    private static byte[] sha256(byte[] bytes) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(bytes);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
     }
 
     private static byte[] unsigned(BigInteger bi) {
@@ -63,4 +124,3 @@ public class JwksController {
         return getUrlEncoder().withoutPadding().encodeToString(bytes);
     }
 }
-
@@ -4,6 +4,7 @@ package com.om.backend.services;
 import com.om.backend.Config.JwtConfig;
 import io.jsonwebtoken.Claims;
 import io.jsonwebtoken.JwtBuilder;
+import io.jsonwebtoken.JwtParser;
 import io.jsonwebtoken.Jwts;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -26,7 +27,6 @@ import java.util.Base64;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Optional;
-import java.util.function.Function;
 
 @Service
 public class JWTService implements OtpService.JwtSigner {
@@ -37,6 +37,9 @@ public class JWTService implements OtpService.JwtSigner {
     private final RSAPrivateKey privateKey;
     private final RSAPublicKey currentPublic;
     private final @org.springframework.lang.Nullable RSAPublicKey previousPublicOrNull; // optional
+    // parsers are immutable and thread-safe; build one per verification key up front
+    private final JwtParser currentParser;
+    private final @org.springframework.lang.Nullable JwtParser previousParserOrNull;
 
     public JWTService(JwtConfig cfg,
                       RSAPrivateKey privateKey,
@@ -46,6 +49,18 @@ public class JWTService implements OtpService.JwtSigner {
         this.privateKey = privateKey;
         this.currentPublic = jwtCurrentPublicKey;
         this.previousPublicOrNull = jwtPreviousPublicKey;
+        this.currentParser = buildParser(jwtCurrentPublicKey);
+        this.previousParserOrNull = jwtPreviousPublicKey == null ? null : buildParser(jwtPreviousPublicKey);
+    }
+
+    private JwtParser buildParser(RSAPublicKey key) {
+        var parser = Jwts.parser()
+                .verifyWith(key)
+                .requireIssuer(cfg.getIssuer());
+        if (cfg.getAudience() != null && !cfg.getAudience().isBlank()) {
+            parser.requireAudience(cfg.getAudience());
+        }
+        return parser.build();
     }
 
     private JwtBuilder baseBuilder(Instant now, Instant exp) {
@@ -94,7 +109,12 @@ public class JWTService implements OtpService.JwtSigner {
 
     public String extractPhonenumber(String token) {
         // subject = your phone/username
-        return extractClaim(token, Claims::getSubject);
+        return extractPhonenumber(extractAllClaims(token));
+    }
+
+    /** Subject of claims that were already verified (e.g. by {@link com.om.backend.Config.JwtFilter}). */
+    public String extractPhonenumber(Claims claims) {
+        return claims.getSubject();
     }
 
     /** Convenience alias if other code expects "username" */
@@ -114,48 +134,30 @@ public class JWTService implements OtpService.JwtSigner {
 
 
     public boolean validToken(String token, UserDetails userDetails) {
-        final String subject = extractPhonenumber(token);
-        return subject.equals(userDetails.getUsername()) && !isTokenExpired(token);
+        final Claims claims = extractAllClaims(token);
+        return claims.getSubject().equals(userDetails.getUsername()) && !isTokenExpired(claims);
     }
 
     public boolean isTokenExpired(String token) {
-        return extractExpiration(token).before(new Date());
+        return isTokenExpired(extractAllClaims(token));
     }
 
-    private Date extractExpiration(String token) {
-        return extractClaim(token, Claims::getExpiration);
-    }
-
-    private <T> T extractClaim(String token, Function<Claims, T> claimResolver) {
-        final Claims claims = extractAllClaims(token);
-        return claimResolver.apply(claims);
+    public boolean isTokenExpired(Claims claims) {
+        Date exp = claims.getExpiration();
+        return exp == null || exp.before(new Date());
     }
 
     /** Verify signature (current key), require issuer, then parse claims.
      *  If signature fails and a previous key is configured, try that (smooth rotation).
+     *  Each call is one signature check against a prebuilt parser; callers that need several
+     *  claims should keep the returned {@link Claims} rather than call back with the token.
      */
     public Claims extractAllClaims(String token) {
         try {
-            var parser = Jwts.parser()
-                    .verifyWith(currentPublic)
-                    .requireIssuer(cfg.getIssuer());
-            if (cfg.getAudience() != null && !cfg.getAudience().isBlank()) {
-                parser.requireAudience(cfg.getAudience());
-            }
-            return parser.build()
-                    .parseSignedClaims(token)
-                    .getPayload();
+            return currentParser.parseSignedClaims(token).getPayload();
         } catch (SignatureException e) {
-            if (previousPublicOrNull == null) throw e;
-            var parser = Jwts.parser()
-                    .verifyWith(previousPublicOrNull)
-                    .requireIssuer(cfg.getIssuer());
-            if (cfg.getAudience() != null && !cfg.getAudience().isBlank()) {
-                parser.requireAudience(cfg.getAudience());
-            }
-            return parser.build()
-                    .parseSignedClaims(token)
-                    .getPayload();
+            if (previousParserOrNull == null) throw e;
+            return previousParserOrNull.parseSignedClaims(token).getPayload();
         }
     }
 
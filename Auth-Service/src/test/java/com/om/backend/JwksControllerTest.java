@@ -0,0 +1,74 @@
+package com.om.backend;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.om.backend.Config.JwtConfig;
+import com.om.backend.Controllers.JwksController;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+
+import java.security.KeyPairGenerator;
+import java.security.interfaces.RSAPublicKey;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class JwksControllerTest {
+
+    @Test
+    public void servesSameBytesWithStrongEtagAndCacheControl() throws Exception {
+        RSAPublicKey pub = newKey();
+        JwksController controller = new JwksController(pub, config(59, 300));
+
+        ResponseEntity<byte[]> first = controller.jwks(null);
+        ResponseEntity<byte[]> second = controller.jwks(null);
+
+        assertEquals(HttpStatus.OK, first.getStatusCode());
+        assertSame(first.getBody(), second.getBody());
+        String etag = first.getHeaders().getETag();
+        assertNotNull(etag);
+        assertFalse(etag.startsWith("W/"));
+        assertEquals("max-age=300, public", first.getHeaders().getCacheControl());
+
+        Map<?, ?> jwks = new ObjectMapper().readValue(first.getBody(), Map.class);
+        Map<?, ?> key = (Map<?, ?>) ((List<?>) jwks.get("keys")).get(0);
+        assertEquals("test-kid", key.get("kid"));
+        assertEquals("RS256", key.get("alg"));
+    }
+
+    @Test
+    public void matchingIfNoneMatchReturnsNotModified() throws Exception {
+        JwksController controller = new JwksController(newKey(), config(59, 300));
+        String etag = controller.jwks(null).getHeaders().getETag();
+
+        ResponseEntity<byte[]> notModified = controller.jwks("\"other\", " + etag);
+        assertEquals(HttpStatus.NOT_MODIFIED, notModified.getStatusCode());
+        assertNull(notModified.getBody());
+        assertEquals(etag, notModified.getHeaders().getETag());
+
+        assertEquals(HttpStatus.NOT_MODIFIED, controller.jwks("W/" + etag).getStatusCode());
+        assertEquals(HttpStatus.OK, controller.jwks("\"stale\"").getStatusCode());
+    }
+
+    @Test
+    public void maxAgeNeverExceedsAccessTokenLifetime() throws Exception {
+        JwksController controller = new JwksController(newKey(), config(2, 3600));
+        assertEquals("max-age=120, public", controller.jwks(null).getHeaders().getCacheControl());
+    }
+
+    private static JwtConfig config(long accessTtlMin, long jwksMaxAgeSec) {
+        JwtConfig cfg = new JwtConfig();
+        cfg.setKid("test-kid");
+        cfg.setIssuer("test-issuer");
+        cfg.setAccessTtlMin(accessTtlMin);
+        cfg.setJwksMaxAgeSec(jwksMaxAgeSec);
+        return cfg;
+    }
+
+    private static RSAPublicKey newKey() throws Exception {
+        KeyPairGenerator kpg = KeyPairGenerator.getInstance("RSA");
+        kpg.initialize(2048);
+        return (RSAPublicKey) kpg.generateKeyPair().getPublic();
+    }
+}
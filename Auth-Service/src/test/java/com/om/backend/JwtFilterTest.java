@@ -0,0 +1,115 @@
+package com.om.backend;
+
+import com.om.backend.Config.JwtConfig;
+import com.om.backend.Config.JwtFilter;
+import com.om.backend.services.JWTService;
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.Jwts;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.interfaces.RSAPrivateKey;
+import java.security.interfaces.RSAPublicKey;
+import java.util.Date;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+public class JwtFilterTest {
+
+    @AfterEach
+    void clearContext() {
+        SecurityContextHolder.clearContext();
+    }
+
+    @Test
+    public void verifiesOnceAndExposesClaims() throws Exception {
+        KeyPair kp = newKeyPair();
+        JWTService jwtService = spy(new JWTService(config(), (RSAPrivateKey) kp.getPrivate(),
+                (RSAPublicKey) kp.getPublic(), null));
+        String token = jwtService.signAccessToken(42L, "sid-1");
+
+        MockHttpServletRequest request = request(token);
+        filter(jwtService).doFilter(request, new MockHttpServletResponse(), new MockFilterChain());
+
+        verify(jwtService, times(1)).extractAllClaims(anyString());
+        Claims claims = JwtFilter.claims(request).orElseThrow();
+        assertEquals("42", claims.getSubject());
+        assertEquals("sid-1", claims.get("sid"));
+        assertEquals("42", SecurityContextHolder.getContext().getAuthentication().getPrincipal());
+    }
+
+    @Test
+    public void acceptsTokensSignedWithPreviousKey() throws Exception {
+        KeyPair current = newKeyPair();
+        KeyPair previous = newKeyPair();
+        JWTService jwtService = new JWTService(config(), (RSAPrivateKey) current.getPrivate(),
+                (RSAPublicKey) current.getPublic(), (RSAPublicKey) previous.getPublic());
+        String token = Jwts.builder()
+                .issuer("test-issuer")
+                .subject("7")
+                .expiration(new Date(System.currentTimeMillis() + 60_000))
+                .signWith(previous.getPrivate(), Jwts.SIG.RS256)
+                .compact();
+
+        MockHttpServletRequest request = request(token);
+        filter(jwtService).doFilter(request, new MockHttpServletResponse(), new MockFilterChain());
+
+        assertEquals("7", JwtFilter.claims(request).map(Claims::getSubject).orElse(null));
+    }
+
+    @Test
+    public void invalidTokenLeavesRequestUnauthenticated() throws Exception {
+        KeyPair kp = newKeyPair();
+        JWTService jwtService = new JWTService(config(), (RSAPrivateKey) kp.getPrivate(),
+                (RSAPublicKey) kp.getPublic(), null);
+        String token = Jwts.builder()
+                .issuer("test-issuer")
+                .subject("9")
+                .expiration(new Date(System.currentTimeMillis() + 60_000))
+                .signWith(newKeyPair().getPrivate(), Jwts.SIG.RS256)
+                .compact();
+
+        MockHttpServletRequest request = request(token);
+        filter(jwtService).doFilter(request, new MockHttpServletResponse(), new MockFilterChain());
+
+        assertTrue(JwtFilter.claims(request).isEmpty());
+        assertNull(SecurityContextHolder.getContext().getAuthentication());
+    }
+
+    private static JwtFilter filter(JWTService jwtService) {
+        JwtFilter filter = new JwtFilter();
+        ReflectionTestUtils.setField(filter, "jwtService", jwtService);
+        return filter;
+    }
+
+    private static MockHttpServletRequest request(String token) {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/user/me");
+        request.setServletPath("/user/me");
+        request.addHeader("Authorization", "Bearer " + token);
+        return request;
+    }
+
+    private static JwtConfig config() {
+        JwtConfig cfg = new JwtConfig();
+        cfg.setKid("test-kid");
+        cfg.setIssuer("test-issuer");
+        cfg.setAccessTtlMin(5);
+        cfg.setRefreshTtlDays(7);
+        return cfg;
+    }
+
+    private static KeyPair newKeyPair() throws Exception {
+        KeyPairGenerator kpg = KeyPairGenerator.getInstance("RSA");
+        kpg.initialize(2048);
+        return kpg.generateKeyPair();
+    }
+}
@@ -0,0 +1,49 @@
+package com.om.Real_Time_Communication.bench;
+
+import java.lang.reflect.Proxy;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Map-backed stand-ins for Spring Data repository interfaces.
+ * Only the methods a benchmark registers are implemented; anything else fails loudly so a
+ * new query on the hot path shows up as an error instead of as a silently free call.
+ */
+final class InMemoryRepositories {
+
+    static <T> Builder<T> of(Class<T> type) {
+        return new Builder<>(type);
+    }
+
+    static final class Builder<T> {
+        private final Class<T> type;
+        private final Map<String, Function<Object[], Object>> handlers = new HashMap<>();
+
+        private Builder(Class<T> type) { this.type = type; }
+
+        Builder<T> on(String method, Function<Object[], Object> handler) {
+            handlers.put(method, handler);
+            return this;
+        }
+
+        T build() {
+            Object proxy = Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type}, (self, m, args) -> {
+                switch (m.getName()) {
+                    case "toString": return "InMemory" + type.getSimpleName();
+                    case "hashCode": return System.identityHashCode(self);
+                    case "equals": return self == args[0];
+                    default:
+                }
+                Function<Object[], Object> h = handlers.get(m.getName());
+                if (h == null) {
+                    throw new UnsupportedOperationException(type.getSimpleName() + "." + m.getName() + " is not stubbed");
+                }
+                return h.apply(args);
+            });
+            return type.cast(proxy);
+        }
+    }
+
+    private InMemoryRepositories() {}
+}
@@ -0,0 +1,47 @@
+package com.om.Real_Time_Communication.bench;
+
+import com.om.Real_Time_Communication.config.InboundSizeAndRateInterceptor;
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Inbound size guard on a String payload: encoding it just to read the length versus counting
+ * the UTF-8 length in place. Payloads look like JSON SEND frames (mostly base64 ciphertext).
+ * Run with -prof gc; the counting path should report ~0 B/op.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class InboundSizeCheckBenchmark {
+
+    private static final int CAP = 64 * 1024;
+
+    @Param({"1024", "32768", "65536"})
+    public int frameBytes;
+
+    private String payload;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        String head = "{\"messageId\":\"m-1\",\"type\":\"TEXT\",\"e2ee\":true,\"ciphertext\":\"";
+        char[] body = new char[frameBytes - head.length() - 2];
+        Arrays.fill(body, 'A');
+        payload = head + new String(body) + "\"}";
+    }
+
+    @Benchmark
+    public int encodeToMeasure() {
+        return payload.getBytes(StandardCharsets.UTF_8).length;
+    }
+
+    @Benchmark
+    public int countInPlace() {
+        return InboundSizeAndRateInterceptor.payloadSize(payload, CAP);
+    }
+}
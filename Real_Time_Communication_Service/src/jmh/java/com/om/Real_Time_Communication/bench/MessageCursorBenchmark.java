@@ -0,0 +1,39 @@
+package com.om.Real_Time_Communication.bench;
+
+import com.om.Real_Time_Communication.utility.MessageCursor;
+import org.openjdk.jmh.annotations.*;
+
+import java.time.Instant;
+import java.util.AbstractMap;
+import java.util.concurrent.TimeUnit;
+
+/** Cursor encode/decode runs once per history page request. */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MessageCursorBenchmark {
+
+    private Instant ts;
+    private Long id;
+    private String token;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        ts = Instant.parse("2025-01-01T12:00:00Z");
+        id = 123_456_789L;
+        token = MessageCursor.encode(ts, id);
+    }
+
+    @Benchmark
+    public String encode() {
+        return MessageCursor.encode(ts, id);
+    }
+
+    @Benchmark
+    public AbstractMap.SimpleEntry<Instant, Long> decode() {
+        return MessageCursor.decode(token);
+    }
+}
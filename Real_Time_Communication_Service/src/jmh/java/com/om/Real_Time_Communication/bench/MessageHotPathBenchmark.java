@@ -0,0 +1,186 @@
+package com.om.Real_Time_Communication.bench;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.om.Real_Time_Communication.Repository.ChatMessageRepository;
+import com.om.Real_Time_Communication.Repository.ChatRoomParticipantRepository;
+import com.om.Real_Time_Communication.Repository.ChatRoomRepository;
+import com.om.Real_Time_Communication.Repository.MessageDeliveryRepository;
+import com.om.Real_Time_Communication.Repository.OutboxEventRepository;
+import com.om.Real_Time_Communication.dto.ChatSendDto;
+import com.om.Real_Time_Communication.models.ChatMessage;
+import com.om.Real_Time_Communication.models.ChatRoom;
+import com.om.Real_Time_Communication.models.MessageType;
+import com.om.Real_Time_Communication.presence.PresenceRegistry;
+import com.om.Real_Time_Communication.service.DeliveryRecorder;
+import com.om.Real_Time_Communication.service.EventPublisher;
+import com.om.Real_Time_Communication.service.InboxDeliveryService;
+import com.om.Real_Time_Communication.service.MessageService;
+import com.om.Real_Time_Communication.service.RoomMembershipService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.converter.MappingJackson2MessageConverter;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * saveInbound end to end (idempotency lookup, persist, outbox, push fan-out, inbox fan-out)
+ * and the room event shape it broadcasts. Repositories are maps, Redis is absent (local-only
+ * mode of RoomMembershipService/PresenceRegistry) and the messaging template serializes to a
+ * channel that drops frames, so the numbers are pure CPU and allocation of our own code.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MessageHotPathBenchmark {
+
+    private static final Long ROOM_ID = 42L;
+    private static final Long SENDER_ID = 1L;
+
+    @Param({"2", "50"})
+    public int roomSize;
+
+    private MessageService messageService;
+    private DeliveryRecorder deliveryRecorder;
+    private ChatMessage sample;
+    private ChatSendDto template;
+    private final AtomicLong seq = new AtomicLong();
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        ObjectMapper objectMapper = new ObjectMapper().findAndRegisterModules();
+
+        List<Long> members = new ArrayList<>(roomSize);
+        for (long u = 1; u <= roomSize; u++) members.add(u);
+
+        Map<String, ChatMessage> messages = new ConcurrentHashMap<>();
+        ChatMessageRepository chatMessages = InMemoryRepositories.of(ChatMessageRepository.class)
+                .on("findByRoomIdAndMessageId", a -> Optional.ofNullable(messages.get(a[0] + ":" + a[1])))
+                .on("save", a -> {
+                    ChatMessage m = (ChatMessage) a[0];
+                    // only the idempotency fixture is retained, so the heap stays flat across iterations
+                    if (m.getMessageId().startsWith("dup-")) messages.put(m.getRoomId() + ":" + m.getMessageId(), m);
+                    return m;
+                })
+                .build();
+
+        ChatRoom room = ChatRoom.builder().id(ROOM_ID).roomId("room-" + ROOM_ID).name("bench").group(roomSize != 2).build();
+        ChatRoomRepository rooms = InMemoryRepositories.of(ChatRoomRepository.class)
+                .on("findById", a -> ROOM_ID.equals(a[0]) ? Optional.of(room) : Optional.empty())
+                .build();
+
+        ChatRoomParticipantRepository participants = InMemoryRepositories.of(ChatRoomParticipantRepository.class)
+                .on("findUserIdsByRoomId", a -> members)
+                .build();
+
+        OutboxEventRepository outbox = InMemoryRepositories.of(OutboxEventRepository.class)
+                .on("save", a -> a[0])
+                .build();
+
+        SimpleMeterRegistry meters = new SimpleMeterRegistry();
+        RoomMembershipService membership = new RoomMembershipService(participants, null, meters);
+
+        // every other member is online; half of those are looking at the room
+        PresenceRegistry presence = new PresenceRegistry();
+        for (Long u : members) {
+            if (u % 2 == 0) presence.touch(u, "d" + u, u % 4 == 0 ? ROOM_ID : null);
+        }
+
+        MessageChannel dropFrames = (message, timeout) -> true;
+        SimpMessagingTemplate messaging = new SimpMessagingTemplate(dropFrames);
+        MappingJackson2MessageConverter converter = new MappingJackson2MessageConverter();
+        converter.setObjectMapper(objectMapper);
+        messaging.setMessageConverter(converter);
+
+        JdbcTemplate jdbc = new JdbcTemplate() {
+            @Override
+            public int[] batchUpdate(String sql, List<Object[]> batchArgs) {
+                return new int[batchArgs.size()];
+            }
+        };
+        deliveryRecorder = new DeliveryRecorder(jdbc);
+
+        InboxDeliveryService inbox = new InboxDeliveryService(
+                InMemoryRepositories.of(MessageDeliveryRepository.class).build(),
+                rooms, membership, messaging, deliveryRecorder, objectMapper, meters);
+
+        RabbitTemplate rabbit = new RabbitTemplate() {
+            @Override
+            public void convertAndSend(String exchange, String routingKey, Object object) {
+                // broker I/O is not what we measure
+            }
+        };
+
+        messageService = new MessageService();
+        ReflectionTestUtils.setField(messageService, "outboxRepo", outbox);
+        ReflectionTestUtils.setField(messageService, "objectMapper", objectMapper);
+        ReflectionTestUtils.setField(messageService, "messagingTemplate", messaging);
+        ReflectionTestUtils.setField(messageService, "chatMessageRepository", chatMessages);
+        ReflectionTestUtils.setField(messageService, "chatRoomRepository", rooms);
+        ReflectionTestUtils.setField(messageService, "membership", membership);
+        ReflectionTestUtils.setField(messageService, "eventPublisher", new EventPublisher(rabbit));
+        ReflectionTestUtils.setField(messageService, "presenceRegistry", presence);
+        ReflectionTestUtils.setField(messageService, "inboxDeliveryService", inbox);
+
+        template = new ChatSendDto();
+        template.setType(MessageType.TEXT);
+        template.setE2ee(true);
+        template.setAlgo("AES-GCM");
+        template.setKeyRef("session:dev-1:v1");
+        template.setIv(new byte[12]);
+        template.setCiphertext(new byte[256]);
+
+        template.setMessageId("dup-1");
+        messageService.saveInbound(ROOM_ID, SENDER_ID, template);
+        deliveryRecorder.flush();
+
+        sample = new ChatMessage();
+        sample.setRoomId(ROOM_ID);
+        sample.setSenderId(SENDER_ID);
+        sample.setMessageId("m-sample");
+        sample.setType(MessageType.TEXT);
+        sample.setServerTs(Instant.now());
+        sample.setE2ee(true);
+        sample.setAlgo("AES-GCM");
+        sample.setKeyRef("session:dev-1:v1");
+        sample.setIv(new byte[12]);
+        sample.setCiphertext(new byte[256]);
+    }
+
+    @Benchmark
+    public ChatMessage saveInbound() {
+        long n = seq.incrementAndGet();
+        template.setMessageId("m-" + n);
+        ChatMessage saved = messageService.saveInbound(ROOM_ID, SENDER_ID, template);
+        // production flushes SENT_TO_WS transitions every 200ms; keep the queue in steady state
+        if ((n & 1023) == 0) deliveryRecorder.flush();
+        return saved;
+    }
+
+    @Benchmark
+    public ChatMessage saveInboundDuplicate() {
+        // idempotent retry: the message already exists and is returned without side effects
+        template.setMessageId("dup-1");
+        return messageService.saveInbound(ROOM_ID, SENDER_ID, template);
+    }
+
+    @Benchmark
+    public void toRoomEvent(Blackhole bh) {
+        bh.consume(messageService.toRoomEvent(sample));
+    }
+}
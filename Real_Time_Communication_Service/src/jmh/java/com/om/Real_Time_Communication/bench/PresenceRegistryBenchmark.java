@@ -0,0 +1,51 @@
+package com.om.Real_Time_Communication.bench;
+
+import com.om.Real_Time_Communication.presence.PresenceRegistry;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Presence lookups done per recipient on every message (MessageService.shouldPush) and the
+ * heartbeat write path, at small and large registry sizes.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PresenceRegistryBenchmark {
+
+    private static final int DEVICES_PER_USER = 2;
+
+    @Param({"1000", "100000"})
+    public int devices;
+
+    private PresenceRegistry registry;
+    private int users;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        registry = new PresenceRegistry();
+        users = devices / DEVICES_PER_USER;
+        for (long u = 0; u < users; u++) {
+            for (int d = 0; d < DEVICES_PER_USER; d++) {
+                registry.touch(u, "dev-" + d, u % 50);
+            }
+        }
+    }
+
+    @Benchmark
+    public boolean shouldPush() {
+        long userId = ThreadLocalRandom.current().nextInt(users);
+        return !registry.isOnline(userId) || !registry.isViewingRoom(userId, 7L);
+    }
+
+    @Benchmark
+    public PresenceRegistry.Presence heartbeat() {
+        long userId = ThreadLocalRandom.current().nextInt(users);
+        return registry.touch(userId, "dev-0", userId % 50);
+    }
+}
@@ -0,0 +1,141 @@
+package com.om.Real_Time_Communication.bench;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.om.Real_Time_Communication.Repository.ChatRoomParticipantRepository;
+import com.om.Real_Time_Communication.presence.ReadModelUpdater;
+import com.om.Real_Time_Communication.service.RoomMembershipService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sustained read-model throughput: a broker stand-in hands the updater consecutive batches from a
+ * ring of message-created deliveries spread over 100 rooms, and a Redis stand-in applies the
+ * pipelined SET and unread-script calls to maps after spinning for one round-trip per pipeline.
+ * The stand-in treats every event as unseen, since the ring wraps and repeats ids.
+ * {@code events} is reported in events per second; batchSize=1 is the one-delivery-at-a-time
+ * listener the batched consumer replaced.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ReadModelUpdaterBenchmark {
+
+    private static final int ROOMS = 100;
+    private static final int RING = 10_000;
+
+    @Param({"1", "50", "200"})
+    public int batchSize;
+
+    @Param({"10"})
+    public int roomSize;
+
+    @Param({"0", "200"})
+    public int rttMicros;
+
+    private ReadModelUpdater updater;
+    private final List<Message> ring = new ArrayList<>(RING);
+    private int cursor;
+
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    @State(Scope.Thread)
+    public static class Events {
+        public long events;
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        ObjectMapper om = new ObjectMapper().findAndRegisterModules();
+
+        ChatRoomParticipantRepository participants = InMemoryRepositories.of(ChatRoomParticipantRepository.class)
+                .on("findUserIdsByRoomId", a -> {
+                    long room = (Long) a[0];
+                    List<Long> ids = new ArrayList<>(roomSize);
+                    for (long u = 0; u < roomSize; u++) ids.add(room * 1000 + u);
+                    return ids;
+                })
+                .build();
+        SimpleMeterRegistry meters = new SimpleMeterRegistry();
+        RoomMembershipService membership = new RoomMembershipService(participants, null, meters);
+
+        updater = new ReadModelUpdater(new PipelineOnlyRedis(rttMicros), om, membership, meters);
+
+        Instant t0 = Instant.parse("2024-01-01T00:00:00Z");
+        for (int i = 0; i < RING; i++) {
+            long room = i % ROOMS;
+            String json = "{\"roomId\":" + room + ",\"messageId\":\"m-" + i + "\",\"senderId\":" + (room * 1000 + i % roomSize)
+                    + ",\"type\":\"TEXT\",\"e2ee\":false,\"serverTs\":\"" + t0.plusMillis(i)
+                    + "\",\"body\":\"hello there, this is message " + i + "\"}";
+            ring.add(new Message(json.getBytes(StandardCharsets.UTF_8), new MessageProperties()));
+        }
+    }
+
+    @Benchmark
+    public void consume(Events counter) {
+        List<Message> batch = new ArrayList<>(batchSize);
+        for (int i = 0; i < batchSize; i++) {
+            batch.add(ring.get(cursor));
+            cursor = (cursor + 1) % RING;
+        }
+        updater.onMessageCreated(batch);
+        counter.events += batchSize;
+    }
+
+    /** Only executePipelined is supported: the updater must not issue anything outside a pipeline. */
+    static final class PipelineOnlyRedis extends StringRedisTemplate {
+        final Map<String, String> values = new HashMap<>();
+        final Map<String, Map<String, Long>> hashes = new HashMap<>();
+        private final long rttNanos;
+        private final StringRedisConnection connection;
+
+        PipelineOnlyRedis(int rttMicros) {
+            this.rttNanos = TimeUnit.MICROSECONDS.toNanos(rttMicros);
+            this.connection = (StringRedisConnection) Proxy.newProxyInstance(
+                    StringRedisConnection.class.getClassLoader(), new Class<?>[]{StringRedisConnection.class},
+                    (self, m, args) -> switch (m.getName()) {
+                        case "set" -> { values.put((String) args[0], (String) args[1]); yield Boolean.TRUE; }
+                        case "eval" -> unreadScript((int) args[2], (String[]) args[3]);
+                        default -> throw new UnsupportedOperationException(m.getName());
+                    });
+        }
+
+        /** What ReadModelUpdater.UNREAD_SCRIPT does on the server for messages it has not seen. */
+        private Long unreadScript(int numKeys, String[] keysAndArgs) {
+            Map<String, Long> hash = hashes.computeIfAbsent(keysAndArgs[0], k -> new HashMap<>());
+            long applied = 0;
+            for (int i = 1; i < numKeys; i++) {
+                applied++;
+                String members = keysAndArgs[numKeys + i];
+                if (members.isEmpty()) continue;
+                for (String uid : members.split(" ")) hash.merge(uid, 1L, Long::sum);
+            }
+            return applied;
+        }
+
+        @Override
+        public List<Object> executePipelined(RedisCallback<?> action) {
+            action.doInRedis(connection);
+            long until = System.nanoTime() + rttNanos;
+            while (System.nanoTime() < until) {
+                Thread.onSpinWait();
+            }
+            return List.of();
+        }
+    }
+}
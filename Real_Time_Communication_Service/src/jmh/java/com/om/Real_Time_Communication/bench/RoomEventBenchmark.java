@@ -0,0 +1,112 @@
+package com.om.Real_Time_Communication.bench;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.om.Real_Time_Communication.dto.RoomEvent;
+import com.om.Real_Time_Communication.models.ChatMessage;
+import com.om.Real_Time_Communication.models.ChatRoom;
+import com.om.Real_Time_Communication.models.MessageType;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Bytes produced for one message: the room topic frame, one /queue/inbox frame per recipient and
+ * the outbox payload. {@code perDestination} is the old shape (a map per destination, each run
+ * through Jackson, ciphertext base64-encoded every time); {@code encodedOnce} is {@link RoomEvent}.
+ * Run with -prof gc and compare gc.alloc.rate.norm.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RoomEventBenchmark {
+
+    @Param({"2", "50"})
+    public int roomSize;
+
+    @Param({"256", "4096"})
+    public int ciphertextBytes;
+
+    private final ObjectMapper om = new ObjectMapper().findAndRegisterModules();
+    private ChatMessage message;
+    private ChatRoom room;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        room = ChatRoom.builder().id(42L).roomId("room-42").name("bench").group(roomSize != 2).build();
+
+        message = new ChatMessage();
+        message.setRoomId(42L);
+        message.setSenderId(1L);
+        message.setMessageId("m-bench");
+        message.setType(MessageType.TEXT);
+        message.setServerTs(Instant.now());
+        message.setE2ee(true);
+        message.setAlgo("AES-GCM");
+        message.setKeyRef("session:dev-1:v1");
+        message.setIv(new byte[12]);
+        message.setCiphertext(new byte[ciphertextBytes]);
+    }
+
+    @Benchmark
+    public void perDestination(Blackhole bh) throws Exception {
+        bh.consume(om.writeValueAsBytes(legacyRoomEvent()));          // /topic/room.*
+        bh.consume(om.writeValueAsString(legacyRoomEvent()));         // outbox payload
+        for (long u = 2; u <= roomSize; u++) {
+            Map<String, Object> inbox = legacyRoomEvent();
+            inbox.put("type", "message");
+            inbox.put("roomKey", room.getRoomId());
+            inbox.put("roomName", room.getName());
+            inbox.put("roomImage", room.getImageUrl());
+            inbox.put("roomDbId", room.getId());
+            inbox.put("msgId", message.getMessageId());
+            inbox.put("createdAt", message.getServerTs());
+            if (roomSize == 2) inbox.put("peerId", 1L);
+            bh.consume(om.writeValueAsBytes(inbox));
+        }
+    }
+
+    @Benchmark
+    public void encodedOnce(Blackhole bh) {
+        RoomEvent event = RoomEvent.of(message, om);
+        bh.consume(event.roomFrame());
+        bh.consume(event.roomFrame());
+        byte[] shared = null;
+        for (long u = 2; u <= roomSize; u++) {
+            if (roomSize == 2) {
+                bh.consume(event.inboxFrame(room, 1L));
+            } else {
+                if (shared == null) shared = event.inboxFrame(room, null);
+                bh.consume(shared);
+            }
+        }
+    }
+
+    private Map<String, Object> legacyRoomEvent() {
+        Map<String, Object> e = new HashMap<>();
+        e.put("roomId", message.getRoomId());
+        e.put("messageId", message.getMessageId());
+        e.put("senderId", message.getSenderId());
+        e.put("type", message.getType().name());
+        e.put("serverTs", message.getServerTs());
+        e.put("e2ee", message.isE2ee());
+        e.put("deletedBySender", message.isDeletedBySender());
+        e.put("deletedByReceiver", message.isDeletedByReceiver());
+        e.put("deletedForEveryone", message.isDeletedForEveryone());
+        e.put("systemMessage", message.isSystemMessage());
+        e.put("e2eeVer", message.getE2eeVer());
+        e.put("algo", message.getAlgo());
+        e.put("aad", message.getAad());
+        e.put("iv", message.getIv());
+        e.put("ciphertext", message.getCiphertext());
+        e.put("keyRef", message.getKeyRef());
+        e.put("senderDeviceId", message.getSenderDeviceId());
+        return e;
+    }
+}
@@ -0,0 +1,65 @@
+package com.om.Real_Time_Communication.bench;
+
+import com.om.Real_Time_Communication.config.JwksCache;
+import com.om.Real_Time_Communication.config.RsJwtVerifier;
+import com.om.Real_Time_Communication.config.RtcJwtConfig;
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.Jwts;
+import org.openjdk.jmh.annotations.*;
+
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.interfaces.RSAPublicKey;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of accepting an access token that was already seen (reconnect, repeated REST call)
+ * versus a full RS256 verification of the same token.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RsJwtVerifierBenchmark {
+
+    private RsJwtVerifier verifier;
+    private String token;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        KeyPairGenerator gen = KeyPairGenerator.getInstance("RSA");
+        gen.initialize(2048);
+        KeyPair keys = gen.generateKeyPair();
+
+        RtcJwtConfig cfg = new RtcJwtConfig("bench-iss", "http://jwks.invalid", null, null);
+        JwksCache jwks = new JwksCache(cfg, null) {
+            @Override
+            public RSAPublicKey getKey(String kid) {
+                return "k1".equals(kid) ? (RSAPublicKey) keys.getPublic() : null;
+            }
+        };
+        verifier = new RsJwtVerifier(cfg, jwks);
+        token = Jwts.builder()
+                .header().keyId("k1").and()
+                .issuer("bench-iss")
+                .claim("userId", 42L)
+                .claim("roles", java.util.List.of("USER"))
+                .expiration(new Date(System.currentTimeMillis() + TimeUnit.HOURS.toMillis(1)))
+                .signWith(keys.getPrivate(), Jwts.SIG.RS256)
+                .compact();
+        verifier.validate(token);
+    }
+
+    @Benchmark
+    public Claims repeatedToken() {
+        return verifier.validate(token);
+    }
+
+    @Benchmark
+    public Claims fullVerification() {
+        return verifier.verify(token);
+    }
+}
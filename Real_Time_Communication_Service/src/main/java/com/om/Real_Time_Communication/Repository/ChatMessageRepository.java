@@ -116,4 +116,35 @@ public interface ChatMessageRepository extends JpaRepository<ChatMessage, Long>
             @Param("beforeId") Long beforeId,
             org.springframework.data.domain.Pageable pageable
     );
+
+    /** Plaintext messages across all rooms after a (serverTs, id) cursor; feeds the local search backfill. */
+    @Query("""
+      select m from ChatMessage m
+      where m.e2ee = false
+        and m.body is not null
+        and (m.serverTs > :afterTs or (m.serverTs = :afterTs and m.id > :afterId))
+      order by m.serverTs asc, m.id asc
+    """)
+    List<ChatMessage> plaintextAfter(
+            @Param("afterTs") Instant afterTs,
+            @Param("afterId") Long afterId,
+            org.springframework.data.domain.Pageable pageable
+    );
+
+    /**
+     * Plaintext messages deleted for everyone after a (deletedAt, id) cursor, whatever their age;
+     * lets the local search backfill drop documents whose delete event it missed.
+     */
+    @Query("""
+      select m from ChatMessage m
+      where m.e2ee = false
+        and m.deletedForEveryone = true
+        and (m.deletedAt > :afterTs or (m.deletedAt = :afterTs and m.id > :afterId))
+      order by m.deletedAt asc, m.id asc
+    """)
+    List<ChatMessage> plaintextDeletedAfter(
+            @Param("afterTs") Instant afterTs,
+            @Param("afterId") Long afterId,
+            org.springframework.data.domain.Pageable pageable
+    );
 }
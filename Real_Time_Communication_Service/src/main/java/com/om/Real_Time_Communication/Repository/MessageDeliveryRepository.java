@@ -1,9 +1,15 @@
 package com.om.Real_Time_Communication.Repository;
 
+import com.om.Real_Time_Communication.dto.PendingReplayRow;
 import com.om.Real_Time_Communication.models.MessageDelivery;
 import com.om.Real_Time_Communication.models.MessageDeliveryStatus;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.time.Instant;
 import java.util.Collection;
@@ -14,7 +20,32 @@ import java.util.Optional;
 public interface MessageDeliveryRepository extends JpaRepository<MessageDelivery, Long> {
     Optional<MessageDelivery> findByMsgIdAndUserId(String msgId, Long userId);
 
-    List<MessageDelivery> findByUserIdAndStatusInOrderByCreatedAtAsc(Long userId, Collection<MessageDeliveryStatus> statuses);
+    /** Keyset page of a user's undelivered messages with message and room fetched in the same read. */
+    @Query("""
+      select new com.om.Real_Time_Communication.dto.PendingReplayRow(d.id, d.createdAt, m, r)
+      from MessageDelivery d, ChatMessage m, ChatRoom r
+      where d.userId = :userId
+        and d.status in :statuses
+        and m.roomId = d.roomId and m.messageId = d.msgId
+        and r.id = d.roomId
+        and (d.createdAt > :cursorTs or (d.createdAt = :cursorTs and d.id > :cursorId))
+      order by d.createdAt asc, d.id asc
+    """)
+    List<PendingReplayRow> pendingReplayPage(@Param("userId") Long userId,
+                                             @Param("statuses") Collection<MessageDeliveryStatus> statuses,
+                                             @Param("cursorTs") Instant cursorTs,
+                                             @Param("cursorId") Long cursorId,
+                                             Pageable pageable);
 
-    List<MessageDelivery> findByUserIdAndStatusInAndCreatedAtAfterOrderByCreatedAtAsc(Long userId, Collection<MessageDeliveryStatus> statuses, Instant after);
+    @Modifying
+    @Transactional
+    @Query("""
+      update MessageDelivery d
+         set d.status = :to, d.updatedAt = :now
+       where d.id in :ids and d.status = :from
+    """)
+    int transitionStatus(@Param("ids") Collection<Long> ids,
+                         @Param("from") MessageDeliveryStatus from,
+                         @Param("to") MessageDeliveryStatus to,
+                         @Param("now") Instant now);
 }
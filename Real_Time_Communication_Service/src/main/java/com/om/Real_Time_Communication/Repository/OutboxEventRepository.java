@@ -6,16 +6,50 @@ import org.springframework.data.jpa.repository.*;
 import org.springframework.data.repository.query.Param;
 
 import java.time.Instant;
+import java.util.Collection;
 import java.util.List;
 
 public interface OutboxEventRepository extends JpaRepository<OutboxEvent, Long> {
 
+    /**
+     * Claims due events for the current transaction. Rows locked by another publisher are skipped,
+     * so concurrent pods take disjoint batches; the locks are released when the caller commits,
+     * which is why the caller {@link #lease leases} the rows before committing.
+     */
     @Query(value = """
         SELECT * FROM outbox_event
          WHERE status = 'PENDING'
-           AND occurred_at <= :cutoff
+           AND COALESCE(next_attempt_at, occurred_at) <= :cutoff
          ORDER BY id
          LIMIT :limit
+         FOR UPDATE SKIP LOCKED
         """, nativeQuery = true)
-    List<OutboxEvent> fetchBatch(@Param("cutoff") Instant cutoff, @Param("limit") int limit);
-}
\ No newline at end of file
+    List<OutboxEvent> claimBatch(@Param("cutoff") Instant cutoff, @Param("limit") int limit);
+
+    /** Keeps claimed rows from coming due again while they are published outside the claim transaction. */
+    @Modifying
+    @Query("""
+        update OutboxEvent e
+           set e.nextAttemptAt = :until
+         where e.id in :ids
+        """)
+    int lease(@Param("ids") Collection<Long> ids, @Param("until") Instant until);
+
+    @Modifying
+    @Query("""
+        update OutboxEvent e
+           set e.status = 'SENT', e.publishedAt = :now, e.attempts = e.attempts + 1
+         where e.id in :ids
+        """)
+    int markSent(@Param("ids") Collection<Long> ids, @Param("now") Instant now);
+
+    @Modifying
+    @Query("""
+        update OutboxEvent e
+           set e.status = :status, e.nextAttemptAt = :nextAttemptAt, e.attempts = e.attempts + 1
+         where e.id in :ids
+        """)
+    int markFailed(@Param("ids") Collection<Long> ids,
+                   @Param("status") String status,
+                   @Param("nextAttemptAt") Instant nextAttemptAt);
+}
@@ -0,0 +1,193 @@
+package com.om.Real_Time_Communication.config;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.dataformat.cbor.databind.CBORMapper;
+import com.om.Real_Time_Communication.dto.RoomEvent;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.converter.MappingJackson2MessageConverter;
+import org.springframework.messaging.converter.MessageConverter;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.ChannelInterceptor;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.stereotype.Component;
+import org.springframework.util.MimeType;
+import org.springframework.util.MimeTypeUtils;
+import org.springframework.web.socket.messaging.SessionDisconnectEvent;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+import java.util.regex.Pattern;
+
+/**
+ * Opt-in CBOR envelope for chat frames.
+ * A client sends {@code rtc-encoding:cbor} on CONNECT; from then on the session's
+ * /topic/room.{key} and /user/queue/inbox frames are CBOR with aad/iv/ciphertext as raw byte
+ * strings instead of base64 text, and go out as binary WebSocket frames (content-type
+ * application/octet-stream, {@code rtc-encoding:cbor}). Nothing is transcoded per frame:
+ * {@link RoomEvent} encodes each CBOR body once and this interceptor only picks the form.
+ * <ul>
+ *   <li>Room topics are published twice, JSON to /topic/room.{key} and CBOR to
+ *       /topic/room.{key}.cbor, and a CBOR session's SUBSCRIBE is pointed at the latter.</li>
+ *   <li>Inbox messages carry a lazy CBOR body in {@link RoomEvent#CBOR_BODY_HEADER}; on the
+ *       broker channel, where /user destinations have been resolved to one session each, a CBOR
+ *       session's copy gets that body instead of the JSON.</li>
+ * </ul>
+ * Inbound SEND frames from such a session may be CBOR as well; see {@link #cborConverter()}.
+ */
+@Component
+public class BinaryEnvelopeInterceptor implements ChannelInterceptor {
+
+    public static final String ENCODING_HEADER = "rtc-encoding";
+    public static final String CBOR = "cbor";
+    public static final MimeType APPLICATION_CBOR = new MimeType("application", "cbor");
+    /** Suffix of the room topic that carries the CBOR form of each room frame. */
+    public static final String CBOR_TOPIC_SUFFIX = ".cbor";
+
+    // the chat topic itself, not its .typing/.presence siblings (room keys end at the first dot)
+    private static final Pattern ROOM_TOPIC = Pattern.compile("^/topic/room\\.[^./]+$");
+    private static final String USER_SESSION_SUFFIX = "-user";   // DefaultUserDestinationResolver
+
+    private final boolean enabled;
+    private final Set<String> cborSessions = ConcurrentHashMap.newKeySet();
+
+    public BinaryEnvelopeInterceptor(@Value("${rtc.ws.cbor.enabled:true}") boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    /**
+     * Decodes {@code application/cbor} SEND payloads straight into DTO byte[] fields.
+     * Strict content-type matching keeps it off untyped messages: without it, this converter
+     * (registered ahead of the defaults) would claim every JSON SEND and every
+     * {@code convertAndSend} object payload.
+     */
+    public static MessageConverter cborConverter() {
+        MappingJackson2MessageConverter converter = new MappingJackson2MessageConverter(APPLICATION_CBOR);
+        converter.setObjectMapper(cborMapper());
+        converter.setStrictContentTypeMatch(true);
+        return converter;
+    }
+
+    public boolean isCbor(String sessionId) {
+        return sessionId != null && cborSessions.contains(sessionId);
+    }
+
+    @Override
+    public Message<?> preSend(Message<?> msg, MessageChannel ch) {
+        if (msg.getHeaders().get(RoomEvent.CBOR_BODY_HEADER) instanceof Supplier<?> cborBody) {
+            return pickInboxBody(msg, cborBody);
+        }
+        StompHeaderAccessor acc = StompHeaderAccessor.wrap(msg);
+        StompCommand cmd = acc.getCommand();
+        if (cmd == null) return msg;
+
+        switch (cmd) {
+            case CONNECT, STOMP -> {
+                if (enabled && CBOR.equalsIgnoreCase(acc.getFirstNativeHeader(ENCODING_HEADER))
+                        && acc.getSessionId() != null) {
+                    cborSessions.add(acc.getSessionId());
+                }
+                return msg;
+            }
+            case SUBSCRIBE -> {
+                return isCbor(acc.getSessionId()) ? subscribeCbor(msg, acc) : msg;
+            }
+            case DISCONNECT -> {
+                if (acc.getSessionId() != null) cborSessions.remove(acc.getSessionId());
+                return msg;
+            }
+            case SEND -> {
+                return isCbor(acc.getSessionId()) ? labelInbound(msg, acc) : msg;
+            }
+            case MESSAGE -> {
+                return isCbor(acc.getSessionId()) ? labelOutbound(msg, acc) : msg;
+            }
+            default -> {
+                return msg;
+            }
+        }
+    }
+
+    @EventListener
+    public void onDisconnect(SessionDisconnectEvent event) {
+        cborSessions.remove(event.getSessionId());
+    }
+
+    /** Binary frames arrive as octet-stream (or untyped); tell the converters they are CBOR. */
+    private Message<?> labelInbound(Message<?> msg, StompHeaderAccessor acc) {
+        MimeType type = acc.getContentType();
+        if (type != null && !MimeTypeUtils.APPLICATION_OCTET_STREAM.equalsTypeAndSubtype(type)) {
+            return msg;
+        }
+        acc.setContentType(APPLICATION_CBOR);
+        acc.setNativeHeader(StompHeaderAccessor.STOMP_CONTENT_TYPE_HEADER, APPLICATION_CBOR.toString());
+        return MessageBuilder.createMessage(msg.getPayload(), acc.getMessageHeaders());
+    }
+
+    /** Point a CBOR session's room subscription at the topic that already carries CBOR. */
+    private Message<?> subscribeCbor(Message<?> msg, StompHeaderAccessor acc) {
+        String dest = acc.getDestination();
+        if (dest == null || !ROOM_TOPIC.matcher(dest).matches()) {
+            return msg;
+        }
+        acc.setDestination(dest + CBOR_TOPIC_SUFFIX);
+        return MessageBuilder.createMessage(msg.getPayload(), acc.getMessageHeaders());
+    }
+
+    /**
+     * Broker channel: a /user message resolved to /queue/inbox-user{sessionId}. The session is
+     * local to this node, so its encoding is known here; CBOR sessions get the pre-encoded body.
+     */
+    private Message<?> pickInboxBody(Message<?> msg, Supplier<?> cborBody) {
+        String dest = SimpMessageHeaderAccessor.getDestination(msg.getHeaders());
+        int at = dest == null ? -1 : dest.lastIndexOf(USER_SESSION_SUFFIX);
+        if (at < 0 || !isCbor(dest.substring(at + USER_SESSION_SUFFIX.length()))) {
+            return msg;
+        }
+        SimpMessageHeaderAccessor acc = SimpMessageHeaderAccessor.wrap(msg);
+        acc.removeHeader(RoomEvent.CBOR_BODY_HEADER);
+        acc.setContentType(MimeTypeUtils.APPLICATION_OCTET_STREAM);
+        return MessageBuilder.createMessage(cborBody.get(), acc.getMessageHeaders());
+    }
+
+    /**
+     * Frames for a CBOR session already carry CBOR when they are octet-stream on a chat
+     * destination; only headers change here. The room topic's .cbor suffix is taken off again
+     * so the client sees the destination it subscribed to.
+     */
+    private Message<?> labelOutbound(Message<?> msg, StompHeaderAccessor acc) {
+        MimeType type = acc.getContentType();
+        if (type == null || !MimeTypeUtils.APPLICATION_OCTET_STREAM.equalsTypeAndSubtype(type)
+                || !isChatDestination(acc)) {
+            return msg;
+        }
+        String dest = acc.getDestination();
+        if (dest != null && dest.endsWith(CBOR_TOPIC_SUFFIX)) {
+            acc.setDestination(dest.substring(0, dest.length() - CBOR_TOPIC_SUFFIX.length()));
+        }
+        acc.setNativeHeader(ENCODING_HEADER, CBOR);
+        return MessageBuilder.createMessage(msg.getPayload(), acc.getMessageHeaders());
+    }
+
+    private static boolean isChatDestination(StompHeaderAccessor acc) {
+        // user destinations come back from the relay as /queue/inbox-user{sid} with the original kept aside
+        String orig = acc.getFirstNativeHeader(SimpMessageHeaderAccessor.ORIGINAL_DESTINATION);
+        String dest = orig != null ? orig : acc.getDestination();
+        return dest != null && (dest.startsWith("/topic/room.")
+                || dest.startsWith("/user/queue/inbox")
+                || dest.startsWith("/queue/inbox"));
+    }
+
+    private static CBORMapper cborMapper() {
+        CBORMapper mapper = CBORMapper.builder()
+                .disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES)
+                .build();
+        mapper.findAndRegisterModules();
+        return mapper;
+    }
+}
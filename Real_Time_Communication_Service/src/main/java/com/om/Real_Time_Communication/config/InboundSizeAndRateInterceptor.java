@@ -8,9 +8,11 @@ import org.springframework.messaging.MessageChannel;
 import org.springframework.messaging.simp.stomp.StompCommand;
 import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
 import org.springframework.messaging.support.ChannelInterceptor;
+import org.springframework.messaging.support.MessageHeaderAccessor;
 import org.springframework.stereotype.Component;
 
-import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /** Caps inbound payload size and applies simple sliding-window rate limits. */
 @Component
@@ -18,21 +20,27 @@ import java.nio.charset.StandardCharsets;
 public class InboundSizeAndRateInterceptor implements ChannelInterceptor {
     private static final Logger log = LoggerFactory.getLogger(InboundSizeAndRateInterceptor.class);
     private static final int MAX_PAYLOAD_BYTES = 64 * 1024; // 64KB cap
+    // CBOR carries ciphertext raw rather than base64, so the same message is ~3/4 the size;
+    // cap it accordingly so switching encodings does not buy a bigger message
+    private static final int MAX_BINARY_PAYLOAD_BYTES = MAX_PAYLOAD_BYTES / 4 * 3;
+    private static final String RATE_KEYS_ATTR = InboundSizeAndRateInterceptor.class.getName() + ".keys";
 
     private final SlidingWindowRateLimiter limiter;
 
     @Override
     public Message<?> preSend(Message<?> msg, MessageChannel ch) {
-        StompHeaderAccessor acc = StompHeaderAccessor.wrap(msg);
-        if (acc == null || acc.getCommand() == null) return msg;
+        // read-only use: reuse the frame's own accessor instead of copying its headers
+        StompHeaderAccessor acc = MessageHeaderAccessor.getAccessor(msg, StompHeaderAccessor.class);
+        if (acc == null) acc = StompHeaderAccessor.wrap(msg);
+        if (acc.getCommand() == null) return msg;
 
-        // 1) Size cap
-        Object payload = msg.getPayload();
-        int size = 0;
-        if (payload instanceof byte[]) size = ((byte[]) payload).length;
-        else if (payload instanceof String) size = ((String) payload).getBytes(StandardCharsets.UTF_8).length;
-        if (size > MAX_PAYLOAD_BYTES) {
-            throw new IllegalArgumentException("Payload too large: " + size + " bytes");
+        // 1) Size cap, before anything converts the payload
+        int cap = BinaryEnvelopeInterceptor.APPLICATION_CBOR.equalsTypeAndSubtype(acc.getContentType())
+                ? MAX_BINARY_PAYLOAD_BYTES
+                : MAX_PAYLOAD_BYTES;
+        int size = payloadSize(msg.getPayload(), cap);
+        if (size > cap) {
+            throw new IllegalArgumentException("Payload too large: over " + cap + " bytes");
         }
 
         // 2) Rate limits
@@ -48,13 +56,14 @@ public class InboundSizeAndRateInterceptor implements ChannelInterceptor {
         } else if (StompCommand.SUBSCRIBE.equals(cmd)) {
             String dest = acc.getDestination();
             String sid = acc.getSessionId() != null ? acc.getSessionId() : "nosid";
+            RateKeys keys = rateKeys(acc, user, sid);
             try {
                 // Burst protection for any subscribe attempts in this socket session.
-                limiter.checkOrThrow("s:" + sid + ":sub", 50, 10_000);
+                limiter.checkOrThrow(keys.subscribe, 50, 10_000);
 
                 // User-specific room subscribe limits should apply only to room-like topics.
                 if (isRoomTopicSubscription(dest)) {
-                    limiter.checkOrThrow("u:" + user + ":room-subs", 50, 10_000);
+                    limiter.checkOrThrow(keys.roomSubs, 50, 10_000);
                 }
             } catch (IllegalArgumentException e) {
                 log.warn("[WS-RATE] user={} sid={} cmd=SUBSCRIBE dest={} err={}",
@@ -63,14 +72,91 @@ public class InboundSizeAndRateInterceptor implements ChannelInterceptor {
             }
         } else if (StompCommand.SEND.equals(cmd)) {
             // 50 msgs / 5s per (user, room) + 200 msgs / 5s global per user
-            String dest = acc.getDestination();        // e.g., /app/room/123/send
-            String roomId = parseRoomId(dest);
-            limiter.checkOrThrow("u:" + user + ":r:" + roomId + ":send", 50, 5_000);
-            limiter.checkOrThrow("u:" + user + ":send", 200, 5_000);
+            String sid = acc.getSessionId() != null ? acc.getSessionId() : "nosid";
+            RateKeys keys = rateKeys(acc, user, sid);
+            limiter.checkOrThrow(keys.roomSend(acc.getDestination()), 50, 5_000); // dest e.g. /app/room/123/send
+            limiter.checkOrThrow(keys.send, 200, 5_000);
         }
         return msg;
     }
 
+    /**
+     * UTF-8 size of a frame payload without encoding it. Counting stops once {@code cap} is
+     * exceeded, so the result is exact up to cap and only "> cap" beyond it.
+     */
+    public static int payloadSize(Object payload, int cap) {
+        if (payload instanceof byte[] bytes) return bytes.length;
+        if (!(payload instanceof CharSequence s)) return 0;
+
+        int n = s.length();
+        if (n > cap) return n;                 // every char is at least one byte
+        int size = 0;
+        for (int i = 0; i < n && size <= cap; i++) {
+            char c = s.charAt(i);
+            if (c < 0x80) {
+                size++;
+            } else if (c < 0x800) {
+                size += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < n && Character.isLowSurrogate(s.charAt(i + 1))) {
+                size += 4;
+                i++;
+            } else if (Character.isSurrogate(c)) {
+                size++;                        // unpaired: String.getBytes writes '?'
+            } else {
+                size += 3;
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Rate-limit keys of one socket session. They are built on the session's first SUBSCRIBE or
+     * SEND and kept in its attributes, so later frames look them up instead of concatenating.
+     */
+    private static final class RateKeys {
+        private static final int MAX_ROOMS = 256;
+
+        final String user;
+        final String subscribe;
+        final String roomSubs;
+        final String send;
+        private final String noRoomSend;
+        private final Map<String, String> roomSendByDest = new ConcurrentHashMap<>();
+
+        RateKeys(String user, String sid) {
+            this.user = user;
+            this.subscribe = "s:" + sid + ":sub";
+            this.roomSubs = "u:" + user + ":room-subs";
+            this.send = "u:" + user + ":send";
+            this.noRoomSend = roomSendKey(user, "-1");
+        }
+
+        String roomSend(String dest) {
+            if (dest == null) return noRoomSend;
+            String key = roomSendByDest.get(dest);
+            if (key == null) {
+                // a session cycling through more rooms than this is not worth remembering
+                if (roomSendByDest.size() >= MAX_ROOMS) roomSendByDest.clear();
+                key = roomSendKey(user, parseRoomId(dest));
+                roomSendByDest.put(dest, key);
+            }
+            return key;
+        }
+
+        private static String roomSendKey(String user, String roomId) {
+            return "u:" + user + ":r:" + roomId + ":send";
+        }
+    }
+
+    private static RateKeys rateKeys(StompHeaderAccessor acc, String user, String sid) {
+        Map<String, Object> attrs = acc.getSessionAttributes();
+        if (attrs == null) return new RateKeys(user, sid);
+        if (attrs.get(RATE_KEYS_ATTR) instanceof RateKeys keys && keys.user.equals(user)) return keys;
+        RateKeys keys = new RateKeys(user, sid);
+        attrs.put(RATE_KEYS_ATTR, keys);
+        return keys;
+    }
+
     private static String resolveClientIp(StompHeaderAccessor acc) {
         if (acc.getSessionAttributes() == null) return "unknown";
         Object clientIp = acc.getSessionAttributes().get("clientIp");
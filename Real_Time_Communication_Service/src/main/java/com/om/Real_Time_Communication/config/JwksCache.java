@@ -1,5 +1,10 @@
 package com.om.Real_Time_Communication.config;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Component;
 
@@ -9,65 +14,162 @@ import reactor.core.publisher.Mono;
 import java.security.interfaces.RSAPublicKey;
 import java.time.Duration;
 import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.LongSupplier;
 
+/**
+ * RS256 verification keys from the auth service's JWKS.
+ * Callers never fetch on their own: at most one refresh is in flight and everyone who needs it
+ * waits on that one. Keys are refreshed ahead of max-age in the background while the current set
+ * keeps being served; only a cold cache or an unseen kid waits. Unknown kids are remembered and
+ * can force a refetch at most once per {@link #MIN_REFETCH_MS}, so tokens with forged kids
+ * cannot turn into a fetch each.
+ */
 @Component
 public class JwksCache {
+    private static final Logger log = LoggerFactory.getLogger(JwksCache.class);
+
+    private static final long DEFAULT_TTL_MS = 10 * 60 * 1000L;
+    private static final long MIN_REFETCH_MS = 30_000;      // unknown kid -> refetch floor
+    private static final long RETRY_AFTER_FAILURE_MS = 5_000;
+    private static final Duration FETCH_TIMEOUT = Duration.ofSeconds(3);
+
+    private record Snapshot(Map<String, RSAPublicKey> byKid, long refreshAtMs) {
+        static final Snapshot EMPTY = new Snapshot(Map.of(), 0);
+    }
+
     private final RtcJwtConfig cfg;
     private final RsaKeyUtil rsaUtil;
     private final WebClient web;
-    private final ConcurrentHashMap<String, RSAPublicKey> byKid = new ConcurrentHashMap<>();
-    private volatile long expiresAtMs = 0;
+    private final LongSupplier clock;
 
+    private volatile Snapshot keys = Snapshot.EMPTY;
+    private volatile long lastFetchStartMs = -MIN_REFETCH_MS;
+    private final AtomicReference<CompletableFuture<Snapshot>> inflight = new AtomicReference<>();
+    private final Cache<String, Boolean> unknownKids = Caffeine.newBuilder()
+            .maximumSize(10_000)
+            .expireAfterWrite(Duration.ofMillis(MIN_REFETCH_MS))
+            .build();
+
+    @Autowired
     public JwksCache(RtcJwtConfig cfg, RsaKeyUtil rsaUtil) {
-        this.cfg = cfg; this.rsaUtil = rsaUtil;
+        this(cfg, rsaUtil, System::currentTimeMillis);
+    }
+
+    public JwksCache(RtcJwtConfig cfg, RsaKeyUtil rsaUtil, LongSupplier clock) {
+        this.cfg = cfg; this.rsaUtil = rsaUtil; this.clock = clock;
         this.web = WebClient.builder().build();
     }
 
     public RSAPublicKey getKey(String kid) {
-        if (System.currentTimeMillis() > expiresAtMs) {
-            refresh(); // best-effort sync refresh
+        long now = clock.getAsLong();
+        Snapshot snap = keys;
+        if (now >= snap.refreshAtMs()) {
+            refreshAsync(); // refresh-ahead; keep serving what we have
+        }
+        if (snap.byKid().isEmpty()) {
+            snap = await(refreshAsync()); // cold start: nothing to serve yet
+        }
+        if (kid == null) return null;
+        RSAPublicKey k = snap.byKid().get(kid);
+        if (k != null || unknownKids.getIfPresent(kid) != null) return k;
+
+        // unseen kid: maybe a rotation; share one fetch, and not more often than the floor
+        CompletableFuture<Snapshot> running = inflight.get();
+        if (running != null || now - lastFetchStartMs >= MIN_REFETCH_MS) {
+            snap = await(running != null ? running : refreshAsync());
+            k = snap.byKid().get(kid);
+        }
+        if (k == null && !snap.byKid().isEmpty()) {
+            unknownKids.put(kid, Boolean.TRUE);
         }
-        RSAPublicKey k = byKid.get(kid);
-        if (k == null) { refresh(); k = byKid.get(kid); }
         return k;
     }
 
-    @SuppressWarnings("unchecked")
-    private void refresh() {
-        try {
-            ResponseEntity<Map> resp = web.get().uri(cfg.getJwksUri())
-                    .retrieve().toEntity(Map.class)
-                    .timeout(Duration.ofSeconds(3))
-                    .block();
-
-            Object keysObj = resp != null && resp.getBody()!=null ? resp.getBody().get("keys") : null;
-            if (!(keysObj instanceof List<?> keys)) return;
-
-            Map<String, RSAPublicKey> tmp = new HashMap<>();
-            for (Object o : keys) {
-                if (!(o instanceof Map<?,?> jwk)) continue;
-                String kty = String.valueOf(jwk.get("kty"));
-                String use = String.valueOf(jwk.get("use"));
-                String alg = String.valueOf(jwk.get("alg"));
-                String kid = String.valueOf(jwk.get("kid"));
-                if (!"RSA".equals(kty) || !"sig".equals(use) || !"RS256".equals(alg)) continue;
-                String n = String.valueOf(jwk.get("n"));
-                String e = String.valueOf(jwk.get("e"));
-                tmp.put(kid, rsaUtil.fromJwk(n, e));
+    /** Raw JWKS response; overridden in tests. */
+    @SuppressWarnings("rawtypes")
+    protected Mono<ResponseEntity<Map>> fetch() {
+        return web.get().uri(cfg.getJwksUri())
+                .retrieve().toEntity(Map.class);
+    }
+
+    private CompletableFuture<Snapshot> refreshAsync() {
+        while (true) {
+            CompletableFuture<Snapshot> running = inflight.get();
+            if (running != null) return running;
+            long now = clock.getAsLong();
+            if (now - lastFetchStartMs < RETRY_AFTER_FAILURE_MS) {
+                return CompletableFuture.completedFuture(keys);
             }
-            byKid.clear(); byKid.putAll(tmp);
-
-            long ttlMs = 10 * 60 * 1000L;
-            for (String h : resp.getHeaders().getOrEmpty("Cache-Control")) {
-                for (String part : h.split(",")) {
-                    part = part.trim();
-                    if (part.startsWith("max-age=")) {
-                        try { ttlMs = Long.parseLong(part.substring(8)) * 1000L; } catch (Exception ignore) {}
-                    }
+            CompletableFuture<Snapshot> mine = new CompletableFuture<>();
+            if (!inflight.compareAndSet(null, mine)) continue;
+
+            lastFetchStartMs = now;
+            Mono.defer(this::fetch)
+                    .timeout(FETCH_TIMEOUT)
+                    .map(this::toSnapshot)
+                    .toFuture()
+                    .whenComplete((fresh, err) -> {
+                        if (fresh != null) {
+                            keys = fresh;
+                        } else {
+                            log.warn("[JWKS] refresh failed, keeping {} cached keys: {}", keys.byKid().size(),
+                                    err == null ? "empty response" : err.toString());
+                            keys = new Snapshot(keys.byKid(), clock.getAsLong() + RETRY_AFTER_FAILURE_MS);
+                        }
+                        inflight.set(null);
+                        mine.complete(keys);
+                    });
+            return mine;
+        }
+    }
+
+    private Snapshot await(CompletableFuture<Snapshot> f) {
+        try {
+            return f.get(FETCH_TIMEOUT.toMillis() + 500, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            return keys;
+        } catch (Exception ex) {
+            return keys;
+        }
+    }
+
+    @SuppressWarnings("rawtypes")
+    private Snapshot toSnapshot(ResponseEntity<Map> resp) {
+        Object keysObj = resp.getBody() != null ? resp.getBody().get("keys") : null;
+        if (!(keysObj instanceof List<?> list)) {
+            throw new IllegalStateException("JWKS response has no keys");
+        }
+
+        Map<String, RSAPublicKey> tmp = new HashMap<>();
+        for (Object o : list) {
+            if (!(o instanceof Map<?,?> jwk)) continue;
+            String kty = String.valueOf(jwk.get("kty"));
+            String use = String.valueOf(jwk.get("use"));
+            String alg = String.valueOf(jwk.get("alg"));
+            String kid = String.valueOf(jwk.get("kid"));
+            if (!"RSA".equals(kty) || !"sig".equals(use) || !"RS256".equals(alg)) continue;
+            String n = String.valueOf(jwk.get("n"));
+            String e = String.valueOf(jwk.get("e"));
+            tmp.put(kid, rsaUtil.fromJwk(n, e));
+        }
+        if (tmp.isEmpty()) {
+            throw new IllegalStateException("JWKS response has no RS256 signing keys");
+        }
+
+        long ttlMs = DEFAULT_TTL_MS;
+        for (String h : resp.getHeaders().getOrEmpty("Cache-Control")) {
+            for (String part : h.split(",")) {
+                part = part.trim();
+                if (part.startsWith("max-age=")) {
+                    try { ttlMs = Long.parseLong(part.substring(8)) * 1000L; } catch (Exception ignore) {}
                 }
             }
-            expiresAtMs = System.currentTimeMillis() + ttlMs;
-        } catch (Exception ignore) { /* keep previous keys */ }
+        }
+        // refresh at 80% of max-age so the set is replaced before anyone sees it expire
+        return new Snapshot(Map.copyOf(tmp), clock.getAsLong() + ttlMs * 4 / 5);
     }
 }
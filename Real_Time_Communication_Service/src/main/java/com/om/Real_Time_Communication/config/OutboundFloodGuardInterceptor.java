@@ -1,61 +1,147 @@
 package com.om.Real_Time_Communication.config;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.event.EventListener;
 import org.springframework.messaging.Message;
 import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.MessageHeaders;
 import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
 import org.springframework.messaging.support.ChannelInterceptor;
-import org.springframework.messaging.support.MessageBuilder;
 import org.springframework.stereotype.Component;
+import org.springframework.web.socket.messaging.SessionDisconnectEvent;
 
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentMap;
+import java.time.Duration;
 import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
 import java.util.regex.Pattern;
 
-/** Per-session outbound backpressure guard with low-priority drop. */
+/**
+ * Per-session outbound backpressure guard with low-priority drop.
+ * A frame that passes preSend holds one permit until afterSendCompletion, which the channel
+ * calls for every interceptor whose preSend returned a message, so no marker header is needed.
+ * Session state is dropped on {@link SessionDisconnectEvent}. Frames can still reach a session
+ * after its disconnect event and bring its gate back, so gates also expire once a session has
+ * been idle for {@link #IDLE_EXPIRY}.
+ */
 @Component
 public class OutboundFloodGuardInterceptor implements ChannelInterceptor {
     private static final int MAX_INFLIGHT = 1000; // permits per session (tune 200–2000)
     private static final Pattern LOW_PRIORITY =
             Pattern.compile("^/topic/(typing|presence|heartbeat)(\\.|/).*");
+    static final Duration IDLE_EXPIRY = Duration.ofMinutes(2);
 
-    private final ConcurrentMap<String, Semaphore> permits = new ConcurrentHashMap<>();
+    private static final class SessionGate {
+        final Semaphore permits = new Semaphore(MAX_INFLIGHT);
+        final AtomicLong dropped = new AtomicLong();
+        int inflight() { return MAX_INFLIGHT - permits.availablePermits(); }
+    }
+
+    private final Cache<String, SessionGate> sessions;
+
+    // destinations repeat (room topics, per-session user queues); classify each once
+    private final Cache<String, Boolean> lowPriority = Caffeine.newBuilder()
+            .maximumSize(50_000)
+            .build();
+
+    private final Counter droppedLow;
+    private final Counter droppedNormal;
+
+    @Autowired
+    public OutboundFloodGuardInterceptor(MeterRegistry meterRegistry) {
+        this(meterRegistry, System::currentTimeMillis);
+    }
+
+    public OutboundFloodGuardInterceptor(MeterRegistry meterRegistry, LongSupplier clock) {
+        sessions = Caffeine.newBuilder()
+                .expireAfterAccess(IDLE_EXPIRY)
+                .ticker(() -> TimeUnit.MILLISECONDS.toNanos(clock.getAsLong()))
+                .build();
+        Gauge.builder("rtc.ws.outbound.sessions", sessions, c -> {
+                    c.cleanUp(); // count expired gates out, not just evicted ones
+                    return c.estimatedSize();
+                })
+                .description("Sessions tracked by the outbound flood guard")
+                .register(meterRegistry);
+        Gauge.builder("rtc.ws.outbound.inflight", this, g -> g.inflightTotal())
+                .tag("stat", "total")
+                .description("Outbound frames handed to sessions and not yet completed")
+                .register(meterRegistry);
+        Gauge.builder("rtc.ws.outbound.inflight", this, g -> g.inflightMax())
+                .tag("stat", "max")
+                .description("In-flight outbound frames of the most congested session")
+                .register(meterRegistry);
+        droppedLow = Counter.builder("rtc.ws.outbound.dropped").tag("priority", "low").register(meterRegistry);
+        droppedNormal = Counter.builder("rtc.ws.outbound.dropped").tag("priority", "normal").register(meterRegistry);
+    }
 
     @Override
     public Message<?> preSend(Message<?> msg, MessageChannel ch) {
-        SimpMessageHeaderAccessor acc = SimpMessageHeaderAccessor.wrap(msg);
-        if (acc == null) return msg;
-        String sessionId = acc.getSessionId();
+        MessageHeaders headers = msg.getHeaders();
+        String sessionId = SimpMessageHeaderAccessor.getSessionId(headers);
         if (sessionId == null) return msg;
 
-        String dest = acc.getDestination();
-        Semaphore sem = permits.computeIfAbsent(sessionId, k -> new Semaphore(MAX_INFLIGHT));
-
-        boolean acquired = sem.tryAcquire();
-        if (!acquired) {
-            // Session congested
-            if (dest != null && LOW_PRIORITY.matcher(dest).matches()) {
-                return null; // drop low-priority frames
-            } else {
-                try { acquired = sem.tryAcquire(25, TimeUnit.MILLISECONDS); } catch (InterruptedException ignored) {}
-                if (!acquired) return null; // still congested → drop to protect server
+        SessionGate gate = sessions.get(sessionId, k -> new SessionGate());
+        if (gate.permits.tryAcquire()) return msg;
+
+        // Session congested
+        boolean low = isLowPriority(SimpMessageHeaderAccessor.getDestination(headers));
+        if (!low) {
+            try {
+                if (gate.permits.tryAcquire(25, TimeUnit.MILLISECONDS)) return msg;
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
             }
         }
-        // Mark so we can release after broker send completes
-        return MessageBuilder.fromMessage(msg).setHeader("x-release-permit", Boolean.TRUE).build();
+        // drop low-priority frames at once, others when still congested, to protect the server
+        gate.dropped.incrementAndGet();
+        (low ? droppedLow : droppedNormal).increment();
+        return null;
     }
 
     @Override
     public void afterSendCompletion(Message<?> message, MessageChannel channel, boolean sent, Exception ex) {
-        SimpMessageHeaderAccessor acc = SimpMessageHeaderAccessor.wrap(message);
-        if (acc == null) return;
-        String sessionId = acc.getSessionId();
+        String sessionId = SimpMessageHeaderAccessor.getSessionId(message.getHeaders());
         if (sessionId == null) return;
-        Object marker = acc.getHeader("x-release-permit");
-        if (Boolean.TRUE.equals(marker)) {
-            Semaphore sem = permits.get(sessionId);
-            if (sem != null) sem.release();
-        }
+        SessionGate gate = sessions.getIfPresent(sessionId);
+        if (gate != null) gate.permits.release();
+    }
+
+    @EventListener
+    public void onDisconnect(SessionDisconnectEvent event) {
+        sessions.invalidate(event.getSessionId());
+    }
+
+    public int inflight(String sessionId) {
+        SessionGate gate = sessions.getIfPresent(sessionId);
+        return gate == null ? 0 : gate.inflight();
+    }
+
+    public long dropped(String sessionId) {
+        SessionGate gate = sessions.getIfPresent(sessionId);
+        return gate == null ? 0 : gate.dropped.get();
+    }
+
+    private boolean isLowPriority(String dest) {
+        if (dest == null) return false;
+        return lowPriority.get(dest, d -> LOW_PRIORITY.matcher(d).matches());
+    }
+
+    private long inflightTotal() {
+        long total = 0;
+        for (SessionGate g : sessions.asMap().values()) total += g.inflight();
+        return total;
+    }
+
+    private long inflightMax() {
+        long max = 0;
+        for (SessionGate g : sessions.asMap().values()) max = Math.max(max, g.inflight());
+        return max;
     }
 }
@@ -1,6 +1,8 @@
 package com.om.Real_Time_Communication.config;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.amqp.core.AnonymousQueue;
+import org.springframework.amqp.core.Base64UrlNamingStrategy;
 import org.springframework.amqp.core.Binding;
 import org.springframework.amqp.core.BindingBuilder;
 import org.springframework.amqp.core.ExchangeBuilder;
@@ -25,12 +27,23 @@ public class RabbitConfig {
     // Read-model queue (consumer updates Redis)
     public static final String Q_READMODEL_MSG_CREATED = "rtc.readmodel.message.created";
 
+    // Unread counters / last message read model (own queue: the one above is consumed by the search indexer)
+    public static final String Q_READMODEL_UNREAD = "rtc.readmodel.unread";
+
     // Optional DLQ & retry queue (recommended)
     public static final String Q_READMODEL_MSG_CREATED_DLQ = "rtc.readmodel.message.created.dlq";
     public static final String Q_READMODEL_MSG_CREATED_RETRY = "rtc.readmodel.message.created.retry";
 
+    // Per-pod queue feeding the local in-room search index (every pod needs every message)
+    public static final String Q_SEARCH_LOCAL_PREFIX = "rtc.search.local.";
+
+    // Listener container that hands consumers a List of deliveries
+    public static final String BATCH_LISTENER_FACTORY = "batchRabbitListenerContainerFactory";
+    static final int LISTENER_BATCH_SIZE = 200;
+
     // Routing keys
     public static final String RK_MESSAGE_CREATED_PATTERN = "room.*.message.created";
+    public static final String RK_MESSAGE_DELETED_PATTERN = "room.*.message.deleted";
 
     @Bean
     public TopicExchange rtcEventsExchange() {
@@ -52,6 +65,27 @@ public class RabbitConfig {
                 .with(RK_MESSAGE_CREATED_PATTERN);
     }
 
+    /** Exclusive, auto-delete queue per pod; unlike the shared read-model queue it is not load-balanced. */
+    @Bean
+    public Queue localSearchQueue() {
+        return new AnonymousQueue(new Base64UrlNamingStrategy(Q_SEARCH_LOCAL_PREFIX));
+    }
+
+    @Bean
+    public Binding localSearchBinding(Queue localSearchQueue, TopicExchange rtcEventsExchange) {
+        return BindingBuilder.bind(localSearchQueue)
+                .to(rtcEventsExchange)
+                .with(RK_MESSAGE_CREATED_PATTERN);
+    }
+
+    /** Deletes go to the local index only; the shared read models keep consuming creates alone. */
+    @Bean
+    public Binding localSearchDeletedBinding(Queue localSearchQueue, TopicExchange rtcEventsExchange) {
+        return BindingBuilder.bind(localSearchQueue)
+                .to(rtcEventsExchange)
+                .with(RK_MESSAGE_DELETED_PATTERN);
+    }
+
     /* -------------------- Optional: DLQ + retry wiring --------------------
     // Enable this section if you want dead-letter handling and time-based retry.
     @Bean
@@ -103,6 +137,22 @@ public class RabbitConfig {
         factory.setMessageConverter(rabbitMessageConverter);
         return factory;
     }
-}
-
 
+    /**
+     * Batches up to {@link #LISTENER_BATCH_SIZE} deliveries, waiting at most 50ms to fill one, so a
+     * burst is handled in a few round-trips while a quiet queue still sees low latency.
+     */
+    @Bean(name = BATCH_LISTENER_FACTORY)
+    public SimpleRabbitListenerContainerFactory batchRabbitListenerContainerFactory(
+            SimpleRabbitListenerContainerFactoryConfigurer configurer,
+            ConnectionFactory connectionFactory) {
+        SimpleRabbitListenerContainerFactory factory = new SimpleRabbitListenerContainerFactory();
+        configurer.configure(factory, connectionFactory);
+        factory.setBatchListener(true);
+        factory.setConsumerBatchEnabled(true);
+        factory.setBatchSize(LISTENER_BATCH_SIZE);
+        factory.setReceiveTimeout(50L);
+        factory.setPrefetchCount(LISTENER_BATCH_SIZE * 2);
+        return factory;
+    }
+}
@@ -7,15 +7,16 @@ import org.springframework.context.annotation.Configuration;
 @Configuration
 public class ReadModelQueueConfig {
 
+    /** Consumed by ReadModelUpdater; a queue of its own so it sees every message-created event. */
     @Bean
-    public Queue readmodelQueue() {
-        return QueueBuilder.durable("rtc.readmodel.message.created").build();
+    public Queue unreadQueue() {
+        return QueueBuilder.durable(RabbitConfig.Q_READMODEL_UNREAD).build();
     }
 
     @Bean
-    public Binding readmodelBinding(Queue readmodelQueue, TopicExchange rtcEventsExchange) {
-        return BindingBuilder.bind(readmodelQueue)
+    public Binding unreadBinding(Queue unreadQueue, TopicExchange rtcEventsExchange) {
+        return BindingBuilder.bind(unreadQueue)
                 .to(rtcEventsExchange)
-                .with("room.*.message.created");
+                .with(RabbitConfig.RK_MESSAGE_CREATED_PATTERN);
     }
 }
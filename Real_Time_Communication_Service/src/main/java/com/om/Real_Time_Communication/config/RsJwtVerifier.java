@@ -1,21 +1,57 @@
 package com.om.Real_Time_Communication.config;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
 import io.jsonwebtoken.Claims;
-import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.JwsHeader;
 import io.jsonwebtoken.JwtException;
+import io.jsonwebtoken.JwtParser;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.LocatorAdapter;
 
 import org.springframework.stereotype.Component;
 
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
+import java.security.Key;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.security.interfaces.RSAPublicKey;
-import java.util.Base64;
 import java.util.Date;
+import java.util.concurrent.TimeUnit;
 
+/**
+ * RS256 access-token verification against the auth service's JWKS.
+ * One parser is built on first use and finds the key through the token's kid header. Tokens that
+ * verified are cached by SHA-256 digest until their exp (at most {@link #MAX_CACHE_MS}), so a
+ * reconnect or repeated HTTP call with the same token skips the RSA check.
+ */
 @Component
 public class RsJwtVerifier {
 
+    private static final long MAX_CACHE_MS = 5 * 60 * 1000L; // bounds staleness after a key is pulled
+
     private final RtcJwtConfig cfg;
     private final JwksCache jwks;
+    private volatile JwtParser parser;
+
+    private final Cache<ByteBuffer, Claims> verified = Caffeine.newBuilder()
+            .maximumSize(50_000)
+            .expireAfter(new Expiry<ByteBuffer, Claims>() {
+                @Override public long expireAfterCreate(ByteBuffer k, Claims c, long now) { return untilExp(c); }
+                @Override public long expireAfterUpdate(ByteBuffer k, Claims c, long now, long cur) { return untilExp(c); }
+                @Override public long expireAfterRead(ByteBuffer k, Claims c, long now, long cur) { return cur; }
+            })
+            .build();
+
+    private static final ThreadLocal<MessageDigest> SHA256 = ThreadLocal.withInitial(() -> {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    });
 
     public RsJwtVerifier(RtcJwtConfig cfg, JwksCache jwks) {
         this.cfg = cfg;
@@ -24,49 +60,70 @@ public class RsJwtVerifier {
 
     /** Public entrypoint used by JwtService (and indirectly by JwtHandshakeInterceptor). */
     public Claims validate(String token) {
-        return extractAllClaims(token);
+        ByteBuffer key = digest(token);
+        Claims c = verified.getIfPresent(key);
+        if (c != null && !isExpired(c)) {
+            return c;
+        }
+        c = verify(token);
+        verified.put(key, c);
+        return c;
     }
 
-    private RSAPublicKey keyForToken(String token) {
-        String kid = headerKid(token);
-        if (kid == null || kid.isBlank()) {
-            throw new IllegalArgumentException("JWT missing kid");
-        }
-        RSAPublicKey pub = jwks.getKey(kid);
-        if (pub == null) {
-            throw new IllegalStateException("Unknown kid: " + kid);
+    /** Full signature and claim check, bypassing the cache. */
+    public Claims verify(String token) {
+        Claims c = parser().parseSignedClaims(token).getPayload();
+        if (isExpired(c)) {
+            throw new JwtException("Expired");
         }
-        return pub;
+        return c;
     }
 
-    private Claims extractAllClaims(String token) {
-        RSAPublicKey pub = keyForToken(token);
-        var parser = Jwts.parser()
-                .verifyWith(pub)
-                .requireIssuer(cfg.getIssuer());
-        if (cfg.getAudience() != null && !cfg.getAudience().isBlank()) {
-            parser.requireAudience(cfg.getAudience());
+    private JwtParser parser() {
+        JwtParser p = parser;
+        if (p != null) return p;
+        synchronized (this) {
+            if (parser == null) {
+                // resolving the JWKS URI first fills in an issuer discovered from OIDC metadata
+                cfg.getJwksUri();
+                var builder = Jwts.parser()
+                        .keyLocator(new LocatorAdapter<Key>() {
+                            @Override
+                            protected Key locate(JwsHeader header) {
+                                String kid = header.getKeyId();
+                                if (kid == null || kid.isBlank()) {
+                                    throw new IllegalArgumentException("JWT missing kid");
+                                }
+                                RSAPublicKey pub = jwks.getKey(kid);
+                                if (pub == null) {
+                                    throw new IllegalStateException("Unknown kid: " + kid);
+                                }
+                                return pub;
+                            }
+                        })
+                        .requireIssuer(cfg.getIssuer());
+                if (cfg.getAudience() != null && !cfg.getAudience().isBlank()) {
+                    builder.requireAudience(cfg.getAudience());
+                }
+                parser = builder.build();
+            }
+            return parser;
         }
-        Claims c = parser.build()
-                .parseSignedClaims(token)
-                .getPayload();
+    }
 
+    private static boolean isExpired(Claims c) {
         Date exp = c.getExpiration();
-        if (exp == null || exp.before(new Date())) {
-            throw new JwtException("Expired");
-        }
-        return c;
+        return exp == null || exp.before(new Date());
+    }
+
+    private static long untilExp(Claims c) {
+        long ms = c.getExpiration().getTime() - System.currentTimeMillis();
+        return TimeUnit.MILLISECONDS.toNanos(Math.max(0, Math.min(ms, MAX_CACHE_MS)));
     }
 
-    private static String headerKid(String jwt) {
-        String[] parts = jwt.split("\\.");
-        if (parts.length < 2) return null;
-        String json = new String(Base64.getUrlDecoder().decode(parts[0]), StandardCharsets.UTF_8);
-        int idx = json.indexOf("\"kid\"");
-        if (idx < 0) return null;
-        int colon = json.indexOf(':', idx);
-        int q1 = json.indexOf('"', colon + 1);
-        int q2 = json.indexOf('"', q1 + 1);
-        return (q1 > 0 && q2 > q1) ? json.substring(q1 + 1, q2) : null;
+    private static ByteBuffer digest(String token) {
+        MessageDigest md = SHA256.get();
+        md.reset();
+        return ByteBuffer.wrap(md.digest(token.getBytes(StandardCharsets.US_ASCII)));
     }
-}
\ No newline at end of file
+}
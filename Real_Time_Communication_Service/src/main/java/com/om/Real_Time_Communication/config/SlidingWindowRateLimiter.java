@@ -1,33 +1,153 @@
 package com.om.Real_Time_Communication.config;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import io.micrometer.common.lang.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
 import org.springframework.stereotype.Component;
 
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentMap;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.LongSupplier;
 
-/** Simple sliding-window limiter for single-node. Replace with Redis for cluster. */
+/**
+ * Sliding-window limiter (two-window counter approximation).
+ * The previous fixed window is weighted by how much of it still overlaps the sliding window, so
+ * a burst at a window edge cannot get 2x the budget. Each key holds two counters; local state
+ * expires two windows after last use and is capped in size.
+ * With {@code rtc.ratelimit.redis.enabled=true} the same check runs as one Lua script, so the
+ * budget is shared by every pod. The script reads the window position from Redis' own clock, so
+ * pods with skewed clocks still agree on which counter is current. If Redis is unreachable the pod falls back to its local window
+ * and leaves Redis alone for five seconds, so an outage does not cost a failed round trip on
+ * every frame.
+ */
 @Component
 public class SlidingWindowRateLimiter {
+
+    private static final Logger log = LoggerFactory.getLogger(SlidingWindowRateLimiter.class);
+    static final long REDIS_RETRY_MS = 5_000;
+
+    /**
+     * KEYS: counter prefix {@code rl:{key}:windowMs:}; the hash tag puts every window index of a key
+     * in one cluster slot, so the script may append the index itself. ARGV: limit, windowMs.
+     */
+    public static final RedisScript<Long> SCRIPT = new DefaultRedisScript<>("""
+            local t = redis.call('TIME')
+            local now = tonumber(t[1]) * 1000 + math.floor(tonumber(t[2]) / 1000)
+            local window = tonumber(ARGV[2])
+            local index = math.floor(now / window)
+            local curKey = KEYS[1] .. string.format('%.0f', index)
+            local cur = tonumber(redis.call('GET', curKey) or '0')
+            local prev = tonumber(redis.call('GET', KEYS[1] .. string.format('%.0f', index - 1)) or '0')
+            if prev * (window - (now - index * window)) / window + cur + 1 > tonumber(ARGV[1]) then
+              return 0
+            end
+            if redis.call('INCR', curKey) == 1 then
+              redis.call('PEXPIRE', curKey, window * 2)
+            end
+            return 1
+            """, Long.class);
+
     private static final class Window {
         final long windowMs;
-        volatile long start;
-        final AtomicInteger count = new AtomicInteger(0);
-        Window(long now, long windowMs) { this.start = now; this.windowMs = windowMs; }
+        long index;      // now / windowMs of the current counter
+        int current;
+        int previous;
+        Window(long windowMs) { this.windowMs = windowMs; }
     }
 
-    private final ConcurrentMap<String, Window> buckets = new ConcurrentHashMap<>();
+    private final Cache<String, Window> windows = Caffeine.newBuilder()
+            .maximumSize(200_000)
+            .expireAfter(new Expiry<String, Window>() {
+                // a window unused for two lengths carries no weight any more
+                @Override public long expireAfterCreate(String k, Window w, long now) { return ttl(w); }
+                @Override public long expireAfterUpdate(String k, Window w, long now, long cur) { return ttl(w); }
+                @Override public long expireAfterRead(String k, Window w, long now, long cur) { return ttl(w); }
+                private long ttl(Window w) { return TimeUnit.MILLISECONDS.toNanos(w.windowMs * 2); }
+            })
+            .build();
+
+    private final LongSupplier clock;
+    private final AtomicBoolean redisDown = new AtomicBoolean(false);
+    private volatile long redisRetryAtMs;
+
+    @Autowired(required = false)
+    private @Nullable StringRedisTemplate redis;
+
+    @Value("${rtc.ratelimit.redis.enabled:false}")
+    private boolean redisEnabled;
 
-    /** Allow <= limit events per windowMs; else throw. */
+    public SlidingWindowRateLimiter() {
+        this(System::currentTimeMillis);
+    }
+
+    public SlidingWindowRateLimiter(LongSupplier clock) {
+        this.clock = clock;
+    }
+
+    /** Allow <= limit events in any windowMs span; else throw. Rejected events are not counted. */
     public void checkOrThrow(String key, int limit, long windowMs) {
-        long now = System.currentTimeMillis();
-        Window w = buckets.compute(key, (k, cur) -> (cur == null || now - cur.start >= windowMs)
-                ? new Window(now, windowMs) : cur);
-        if (now - w.start >= w.windowMs) {
-            w.start = now;
-            w.count.set(0);
+        if (!tryAcquire(key, limit, windowMs)) {
+            throw new IllegalArgumentException("Rate limit exceeded: " + key);
+        }
+    }
+
+    public boolean tryAcquire(String key, int limit, long windowMs) {
+        long now = clock.getAsLong();
+        if (redisEnabled && redis != null && now >= redisRetryAtMs) {
+            Boolean shared = tryAcquireShared(key, limit, windowMs, now);
+            if (shared != null) {
+                return shared;
+            }
+        }
+        return tryAcquireLocal(key, limit, windowMs, now);
+    }
+
+    /** Same rule the Lua script applies: weighted previous count + current + this event. */
+    private static boolean admits(int previous, int current, int limit, long windowMs, long elapsed) {
+        return (double) previous * (windowMs - elapsed) / windowMs + current + 1 <= limit;
+    }
+
+    private boolean tryAcquireLocal(String key, int limit, long windowMs, long now) {
+        Window w = windows.get(key, k -> new Window(windowMs));
+        long index = now / windowMs;
+        synchronized (w) {
+            if (index != w.index) {
+                w.previous = index == w.index + 1 ? w.current : 0;
+                w.current = 0;
+                w.index = index;
+            }
+            if (!admits(w.previous, w.current, limit, windowMs, now % windowMs)) {
+                return false;
+            }
+            w.current++;
+            return true;
+        }
+    }
+
+    private Boolean tryAcquireShared(String key, int limit, long windowMs, long now) {
+        // hash tag keeps both counters in one cluster slot
+        String prefix = "rl:{" + key + "}:" + windowMs + ":";
+        try {
+            Long allowed = redis.execute(SCRIPT, List.of(prefix), String.valueOf(limit), String.valueOf(windowMs));
+            if (redisDown.compareAndSet(true, false)) {
+                log.info("[RATE] Redis limiter reachable again");
+            }
+            return allowed != null && allowed == 1L;
+        } catch (RuntimeException ex) {
+            redisRetryAtMs = now + REDIS_RETRY_MS;
+            if (redisDown.compareAndSet(false, true)) {
+                log.warn("[RATE] Redis limiter unavailable, using per-pod windows: {}", ex.toString());
+            }
+            return null;
         }
-        int n = w.count.incrementAndGet();
-        if (n > limit) throw new IllegalArgumentException("Rate limit exceeded: " + key);
     }
 }
@@ -1,12 +1,12 @@
 package com.om.Real_Time_Communication.config;
 
-import com.om.Real_Time_Communication.Repository.ChatRoomParticipantRepository;
-import com.om.Real_Time_Communication.Repository.ChatRoomRepository;
-import com.om.Real_Time_Communication.models.ChatRoom;
 import com.om.Real_Time_Communication.service.BlockService;
+import com.om.Real_Time_Communication.service.RoomDescriptorCache;
+import com.om.Real_Time_Communication.service.RoomDescriptorCache.RoomDescriptor;
 import com.om.Real_Time_Communication.utility.AclService;
 import com.om.Real_Time_Communication.security.JwtService;
-import lombok.RequiredArgsConstructor;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import org.slf4j.MDC;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -20,16 +20,16 @@ import org.springframework.messaging.support.ChannelInterceptor;
 import org.springframework.stereotype.Component;
 
 
-import java.util.Optional;
 import java.security.Principal;
+import java.util.EnumMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Validates JWT in STOMP CONNECT (if handshake didn’t set a Principal),
  * and authorizes SUBSCRIBE / SEND per destination.
  */
 @Component
-@RequiredArgsConstructor
 public class StompSecurityInterceptor implements ChannelInterceptor {
 
     private static final Logger log = LoggerFactory.getLogger(StompSecurityInterceptor.class);
@@ -45,11 +45,19 @@ public class StompSecurityInterceptor implements ChannelInterceptor {
     private   AclService acl;
 
     @Autowired
-    private  ChatRoomParticipantRepository participantRepo;
+    private RoomDescriptorCache rooms;
 
-    @Autowired
-    private ChatRoomRepository chatRoomRepository;
+    // one authorization timer per room-scoped command, registered once
+    private final Map<StompCommand, Timer> authorizeTimers = new EnumMap<>(StompCommand.class);
 
+    public StompSecurityInterceptor(MeterRegistry meterRegistry) {
+        for (StompCommand cmd : List.of(StompCommand.SUBSCRIBE, StompCommand.SEND)) {
+            authorizeTimers.put(cmd, Timer.builder("rtc.stomp.authorize")
+                    .description("Time to authorize a room-scoped SUBSCRIBE/SEND frame")
+                    .tag("command", cmd.name())
+                    .register(meterRegistry));
+        }
+    }
 
     @Override
     public void afterSendCompletion(Message<?> message, MessageChannel channel, boolean sent, Exception ex) {
@@ -123,21 +131,24 @@ public class StompSecurityInterceptor implements ChannelInterceptor {
 
                     String roomKey = extractRoomKey(dest);
                     if (roomKey != null) {
-                        Long roomId = resolveRoomId(roomKey);
+                        long t0 = System.nanoTime();
+                        Long roomId = rooms.resolveRoomId(roomKey);
+                        RoomDescriptor room = rooms.describe(roomId);
 
-                        // 1) Room ACL (Redis-backed)
-                        if (!acl.canSubscribe(userId, roomId)) {
+                        // 1) Room ACL: cached member set first, Redis/DB-backed AclService only on a miss
+                        if (!room.isMember(userId) && !acl.canSubscribe(userId, roomId)) {
                             throw new IllegalArgumentException("Forbidden: not a member of room " + roomId);
                         }
 
                         // 2) Block check (receiver-side): if any member blocks this user, deny subscribe for DM/1:1
                         // For group rooms, you might only enforce peer block on direct @mentions or DMs; adjust policy.
-                        if (isDirectRoom(roomId)) {
-                            Long other = directPeer(roomId, userId);
+                        if (room.isDirect()) {
+                            Long other = room.peerOf(userId);
                             if (blockService.isBlocked(String.valueOf(userId), String.valueOf(other))) {
                                 throw new IllegalArgumentException("Forbidden: you are blocked");
                             }
                         }
+                        recordAuthorization(cmd, t0);
                     }
                     break;
                 }
@@ -152,20 +163,23 @@ public class StompSecurityInterceptor implements ChannelInterceptor {
                     String roomKey = extractRoomKey(dest);
 
                     if (roomKey != null) {
-                        Long roomId = resolveRoomId(roomKey);
+                        long t0 = System.nanoTime();
+                        Long roomId = rooms.resolveRoomId(roomKey);
+                        RoomDescriptor room = rooms.describe(roomId);
 
                         // 1) Room ACL
-                        if (!acl.canPublish(userId, roomId)) {
+                        if (!room.isMember(userId) && !acl.canPublish(userId, roomId)) {
                             throw new IllegalArgumentException("Forbidden: cannot publish to room " + roomId);
                         }
 
                         // 2) Block check (sender-side): for DMs, or for group if you enforce peer blocks globally
-                        if (isDirectRoom(roomId)) {
-                            Long other = directPeer(roomId, userId);
+                        if (room.isDirect()) {
+                            Long other = room.peerOf(userId);
                             if (blockService.isBlocked(String.valueOf(userId), String.valueOf(other))) {
                                 throw new IllegalArgumentException("Forbidden: user has blocked you");
                             }
                         }
+                        recordAuthorization(cmd, t0);
                     }
                     break;
                 }
@@ -182,35 +196,13 @@ public class StompSecurityInterceptor implements ChannelInterceptor {
         }
     }
 
-    private boolean isDirectRoom(Long roomId) {
-        return participantRepo.countByRoomId(roomId) == 2L;
-    }
-
-    /** Resolve a room key to the numeric primary key used internally. */
-    private Long resolveRoomId(String roomKey) {
-        // Prefer the public "roomId" stable identifier
-        Optional<Long> byExternalId = chatRoomRepository.findByRoomId(roomKey).map(ChatRoom::getId);
-        if (byExternalId.isPresent()) {
-            return byExternalId.get();
-        }
-
-        // Fallback: allow clients that still reference the numeric id directly
-        try {
-            Long numericId = Long.valueOf(roomKey);
-            return chatRoomRepository.findById(numericId)
-                    .map(ChatRoom::getId)
-                    .orElseThrow(() -> new IllegalArgumentException("Unknown room " + roomKey));
-        } catch (NumberFormatException ignore) {
-            throw new IllegalArgumentException("Unknown room " + roomKey);
+    private void recordAuthorization(StompCommand cmd, long startNanos) {
+        Timer timer = authorizeTimers.get(cmd);
+        if (timer != null) {
+            timer.record(System.nanoTime() - startNanos, java.util.concurrent.TimeUnit.NANOSECONDS);
         }
     }
-    
-    /** Return the other user in a 1:1 room (throws if not exactly two). */
-    private Long directPeer(Long roomId, Long userId) {
-        java.util.List<Long> users = participantRepo.findUserIdsByRoomId(roomId);
-        if (users.size() != 2) throw new IllegalArgumentException("Not a direct room: " + roomId);
-        return users.get(0).equals(userId) ? users.get(1) : users.get(0);
-    }
+
     private static String headerFirst(StompHeaderAccessor acc, String name) {
         List<String> v = acc.getNativeHeader(name);
         return (v == null || v.isEmpty()) ? null : v.get(0);
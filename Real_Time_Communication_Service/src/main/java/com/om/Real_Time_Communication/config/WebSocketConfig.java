@@ -8,6 +8,7 @@ import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Primary;
+import org.springframework.messaging.converter.MessageConverter;
 import org.springframework.messaging.simp.config.ChannelRegistration;
 import org.springframework.messaging.simp.config.MessageBrokerRegistry;
 import org.springframework.scheduling.TaskScheduler;
@@ -21,6 +22,7 @@ import org.springframework.web.socket.handler.WebSocketHandlerDecorator;
 import org.springframework.web.socket.handler.WebSocketHandlerDecoratorFactory;
 import org.springframework.context.annotation.Lazy;
 
+import java.util.List;
 import java.util.Map;
 
 @Configuration
@@ -33,6 +35,7 @@ public class WebSocketConfig implements WebSocketMessageBrokerConfigurer {
     private final StompSecurityInterceptor stompSecurityInterceptor;
     private final InboundSizeAndRateInterceptor inboundSizeAndRateInterceptor;
     private final OutboundFloodGuardInterceptor outboundFloodGuardInterceptor;
+    private final BinaryEnvelopeInterceptor binaryEnvelopeInterceptor;
     private final SessionRegistry sessionRegistry;
     private final PendingMessageService pendingMessages;
 
@@ -42,6 +45,7 @@ public class WebSocketConfig implements WebSocketMessageBrokerConfigurer {
                            StompLoggingInterceptor stompLoggingInterceptor,
                            InboundSizeAndRateInterceptor inboundSizeAndRateInterceptor,
                            OutboundFloodGuardInterceptor outboundFloodGuardInterceptor,
+                           BinaryEnvelopeInterceptor binaryEnvelopeInterceptor,
                            SessionRegistry sessionRegistry,
                            @Lazy PendingMessageService pendingMessages) {
         this.brokerTaskScheduler = brokerTaskScheduler;
@@ -50,6 +54,7 @@ public class WebSocketConfig implements WebSocketMessageBrokerConfigurer {
         this.stompLoggingInterceptor = stompLoggingInterceptor;
         this.inboundSizeAndRateInterceptor = inboundSizeAndRateInterceptor;
         this.outboundFloodGuardInterceptor = outboundFloodGuardInterceptor;
+        this.binaryEnvelopeInterceptor = binaryEnvelopeInterceptor;
         this.sessionRegistry = sessionRegistry;
         this.pendingMessages = pendingMessages;
     }
@@ -114,14 +119,23 @@ public class WebSocketConfig implements WebSocketMessageBrokerConfigurer {
 
     @Override
     public void configureClientInboundChannel(ChannelRegistration registration) {
-        // Security/ACLs first, then size/rate guard
-        registration.interceptors(stompLoggingInterceptor, stompSecurityInterceptor, inboundSizeAndRateInterceptor);
+        // Security/ACLs first, then encoding negotiation, then size/rate guard
+        registration.interceptors(stompLoggingInterceptor, stompSecurityInterceptor,
+                binaryEnvelopeInterceptor, inboundSizeAndRateInterceptor);
     }
 
     @Override
     public void configureClientOutboundChannel(ChannelRegistration registration) {
-        // Backpressure guard on outbound
-        registration.interceptors(stompLoggingInterceptor, outboundFloodGuardInterceptor);
+        // CBOR labeling (headers only) for sessions that asked for it, then backpressure guard
+        registration.interceptors(stompLoggingInterceptor, binaryEnvelopeInterceptor, outboundFloodGuardInterceptor);
+    }
+
+    @Override
+    public boolean configureMessageConverters(List<MessageConverter> messageConverters) {
+        // application/cbor SEND frames only (strict content type); untyped and JSON payloads fall
+        // through to the default String/byte[]/JSON converters registered after it
+        messageConverters.add(BinaryEnvelopeInterceptor.cborConverter());
+        return true;
     }
 
     @Override
@@ -170,6 +184,10 @@ public class WebSocketConfig implements WebSocketMessageBrokerConfigurer {
         relay.setSystemHeartbeatSendInterval(10000);
         relay.setSystemHeartbeatReceiveInterval(10000);
 
+        // /user messages reach the broker channel already resolved to one local session each;
+        // that is where a CBOR session's inbox copy gets its pre-encoded body
+        config.configureBrokerChannel().interceptors(binaryEnvelopeInterceptor);
+
         config.setApplicationDestinationPrefixes("/app");
         config.setUserDestinationPrefix("/user");
     }
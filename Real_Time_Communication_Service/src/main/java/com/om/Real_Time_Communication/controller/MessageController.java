@@ -61,9 +61,9 @@ public class MessageController {
                     corrId,
                     dto.getType(),
                     dto.getBody());
-            // Persist, ACK to sender and broadcast to room in FIFO order
+            // Persist, ACK to sender and broadcast to room in FIFO order (completes on the room's worker)
             orderedMessageService.saveAndBroadcastOrdered(roomId, senderId, dto);
-            log.info("[RTC][SEND][OK] roomId={} sender={} messageId={}", roomId, senderId, dto.getMessageId());
+            log.info("[RTC][SEND][QUEUED] roomId={} sender={} messageId={}", roomId, senderId, dto.getMessageId());
         } catch (Exception e) {
             log.error("[RTC][SEND][FAIL] roomId={} sender={} messageId={} err={}", roomId, senderId, dto.getMessageId(), e.getMessage(), e);
             throw new RuntimeException(e);
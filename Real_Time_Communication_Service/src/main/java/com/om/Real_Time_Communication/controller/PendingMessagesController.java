@@ -1,19 +1,24 @@
 package com.om.Real_Time_Communication.controller;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.om.Real_Time_Communication.service.InboxDeliveryService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.CrossOrigin;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.security.Principal;
 import java.time.Instant;
 import java.time.format.DateTimeParseException;
-import java.util.List;
 import java.util.Map;
 
 @RestController
@@ -23,13 +28,15 @@ public class PendingMessagesController {
 
     private static final Logger log = LoggerFactory.getLogger(PendingMessagesController.class);
     private final InboxDeliveryService inboxDeliveryService;
+    private final ObjectMapper objectMapper;
 
-    public PendingMessagesController(InboxDeliveryService inboxDeliveryService) {
+    public PendingMessagesController(InboxDeliveryService inboxDeliveryService, ObjectMapper objectMapper) {
         this.inboxDeliveryService = inboxDeliveryService;
+        this.objectMapper = objectMapper;
     }
 
     @GetMapping("/pending")
-    public ResponseEntity<List<Map<String, Object>>> pending(
+    public ResponseEntity<StreamingResponseBody> pending(
             Principal principal,
             @RequestParam(value = "since", required = false) String since
     ) {
@@ -46,7 +53,24 @@ public class PendingMessagesController {
         }
 
         Long userId = Long.valueOf(principal.getName());
-        List<Map<String, Object>> payloads = inboxDeliveryService.pendingMessages(userId, cutoff);
-        return ResponseEntity.ok(payloads);
+        Instant replayFrom = cutoff;
+        // Same JSON array as before, written page by page so a large backlog is never buffered whole
+        StreamingResponseBody body = out -> {
+            try (JsonGenerator gen = objectMapper.getFactory().createGenerator(out)) {
+                gen.writeStartArray();
+                inboxDeliveryService.replayPending(userId, replayFrom, page -> {
+                    try {
+                        for (Map<String, Object> payload : page) {
+                            objectMapper.writeValue(gen, payload);
+                        }
+                        gen.flush();
+                    } catch (IOException ex) {
+                        throw new UncheckedIOException(ex);
+                    }
+                });
+                gen.writeEndArray();
+            }
+        };
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON).body(body);
     }
 }
@@ -7,6 +7,7 @@ import lombok.RequiredArgsConstructor;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.messaging.handler.annotation.DestinationVariable;
 import org.springframework.messaging.handler.annotation.MessageMapping;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
 import org.springframework.messaging.simp.SimpMessagingTemplate;
 import org.springframework.stereotype.Controller;
 
@@ -77,9 +78,11 @@ public class PresenceController {
 
     /** Client SENDs to /app/room.{roomId}.ping every ~15s with {deviceId} */
     @MessageMapping("/room/{roomId}/ping")
-    public void ping(@DestinationVariable Long roomId, PingDto dto, Principal principal) {
+    public void ping(@DestinationVariable Long roomId, PingDto dto, Principal principal,
+                     SimpMessageHeaderAccessor headers) {
         Long userId = Long.valueOf(principal.getName());
         String deviceId = dto.getDeviceId() != null ? dto.getDeviceId() : "default";
+        rememberDevice(headers, deviceId);
         PresenceRegistry.Presence p = registry.touch(userId, deviceId, roomId);
 
         log.info("[RTC][PRESENCE] /room/{}/ping user={} deviceId={} online={} lastSeen={} ",
@@ -100,9 +103,11 @@ public class PresenceController {
     }
 
     @MessageMapping("/room/{roomId}/enter")
-    public void enterRoom(@DestinationVariable Long roomId, RoomPresenceDto dto, Principal principal) {
+    public void enterRoom(@DestinationVariable Long roomId, RoomPresenceDto dto, Principal principal,
+                          SimpMessageHeaderAccessor headers) {
         Long userId = Long.valueOf(principal.getName());
         String deviceId = dto != null && dto.getDeviceId() != null ? dto.getDeviceId() : "default";
+        rememberDevice(headers, deviceId);
         registry.setActiveRoom(userId, deviceId, roomId);
         log.info("[RTC][PRESENCE] user={} deviceId={} entered room={}", userId, deviceId, roomId);
     }
@@ -145,4 +150,12 @@ public class PresenceController {
                 deviceId,
                 dto.isTyping());
     }
+
+    /** Lets PresenceRegistry remove this device from the shared store when the session disconnects. */
+    private static void rememberDevice(SimpMessageHeaderAccessor headers, String deviceId) {
+        Map<String, Object> attrs = headers.getSessionAttributes();
+        if (attrs != null) {
+            attrs.put(PresenceRegistry.DEVICE_ATTR, deviceId);
+        }
+    }
 }
@@ -0,0 +1,14 @@
+package com.om.Real_Time_Communication.dto;
+
+/** A message was deleted for everyone; consumers drop it from their indexes. */
+public class MessageDeleted {
+    public Long roomId;
+    public String messageId;
+
+    public MessageDeleted() {}
+
+    public MessageDeleted(Long roomId, String messageId) {
+        this.roomId = roomId;
+        this.messageId = messageId;
+    }
+}
@@ -0,0 +1,22 @@
+package com.om.Real_Time_Communication.dto;
+
+import com.om.Real_Time_Communication.models.ChatMessage;
+import com.om.Real_Time_Communication.models.ChatRoom;
+
+import java.time.Instant;
+
+/** One pending delivery joined with its message and room; createdAt/deliveryId form the replay cursor. */
+public class PendingReplayRow {
+    private final Long deliveryId;
+    private final Instant createdAt;
+    private final ChatMessage message;
+    private final ChatRoom room;
+
+    public PendingReplayRow(Long deliveryId, Instant createdAt, ChatMessage message, ChatRoom room) {
+        this.deliveryId = deliveryId; this.createdAt = createdAt; this.message = message; this.room = room;
+    }
+    public Long getDeliveryId() { return deliveryId; }
+    public Instant getCreatedAt() { return createdAt; }
+    public ChatMessage getMessage() { return message; }
+    public ChatRoom getRoom() { return room; }
+}
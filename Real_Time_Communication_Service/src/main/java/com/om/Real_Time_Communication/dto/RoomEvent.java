@@ -0,0 +1,233 @@
+package com.om.Real_Time_Communication.dto;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.databind.CBORMapper;
+import com.om.Real_Time_Communication.models.ChatMessage;
+import com.om.Real_Time_Communication.models.ChatRoom;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.util.MimeTypeUtils;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * Wire form of a chat message, serialized once.
+ * The message members (ids, timestamps, E2EE envelope) are encoded to JSON a single time; the room
+ * topic frame, every /queue/inbox frame and the outbox payload are built by splicing their own few
+ * header fields in front of those bytes, so the ciphertext is never base64-encoded twice.
+ * The CBOR forms for sessions that negotiated {@code rtc-encoding:cbor} are built from the same
+ * fields, at most once per frame shape, with aad/iv/ciphertext as raw byte strings.
+ */
+public final class RoomEvent {
+
+    /**
+     * In-JVM header on an inbox message: a {@code Supplier<byte[]>} of the frame's CBOR form.
+     * Only native headers reach the broker, so the bytes never travel unless a session picks them.
+     */
+    public static final String CBOR_BODY_HEADER = "rtcCborBody";
+
+    private static final CBORMapper CBOR = new CBORMapper();
+
+    private final ObjectMapper om;
+    private final String type;
+    private final Long senderId;
+    private final String messageId;
+    private final Object serverTs;
+    private final Map<String, Object> fields;  // everything except "type", in wire order
+    private final byte[] members;              // JSON of `fields` without the surrounding braces
+    private final byte[] roomFrame;
+    private volatile byte[] cborRoomFrame;
+
+    private RoomEvent(ObjectMapper om, ChatMessage m) {
+        this.om = om;
+        this.type = m.getType() == null ? null : m.getType().name();
+        this.senderId = m.getSenderId();
+        this.messageId = m.getMessageId();
+        this.serverTs = m.getServerTs();
+
+        Map<String, Object> e = new LinkedHashMap<>();
+        e.put("roomId", m.getRoomId());
+        e.put("messageId", m.getMessageId());
+        e.put("senderId", m.getSenderId());
+        e.put("serverTs", m.getServerTs());
+        e.put("e2ee", m.isE2ee());
+        e.put("deletedBySender", m.isDeletedBySender());
+        e.put("deletedByReceiver", m.isDeletedByReceiver());
+        e.put("deletedForEveryone", m.isDeletedForEveryone());
+        e.put("systemMessage", m.isSystemMessage());
+        if (m.isE2ee()) {
+            e.put("e2eeVer", m.getE2eeVer());
+            e.put("algo", m.getAlgo());
+            e.put("aad", m.getAad());
+            e.put("iv", m.getIv());
+            e.put("ciphertext", m.getCiphertext());
+            e.put("keyRef", m.getKeyRef());
+            e.put("senderDeviceId", m.getSenderDeviceId());
+        } else {
+            e.put("body", m.getBody());
+        }
+        this.fields = Collections.unmodifiableMap(e);
+        this.members = innerMembers(write(fields));
+
+        Map<String, Object> head = new LinkedHashMap<>();
+        head.put("type", type);
+        this.roomFrame = splice(write(head), members);
+    }
+
+    public static RoomEvent of(ChatMessage message, ObjectMapper om) {
+        return new RoomEvent(om, message);
+    }
+
+    public String getMessageId() { return messageId; }
+
+    /** Payload for /topic/room.{key} and the MessageCreated outbox event. */
+    public byte[] roomFrame() { return roomFrame; }
+
+    /** Payload for one recipient's /queue/inbox; identical for every member of a group room. */
+    public byte[] inboxFrame(ChatRoom room, Long peerId) {
+        return splice(write(inboxHead(room, peerId)), members);
+    }
+
+    /** CBOR form of {@link #roomFrame()}, for /topic/room.{key}.cbor; encoded on first use. */
+    public byte[] cborRoomFrame() {
+        byte[] frame = cborRoomFrame;
+        if (frame == null) {
+            Map<String, Object> e = new LinkedHashMap<>();
+            e.put("type", type);
+            e.putAll(fields);
+            cborRoomFrame = frame = toCbor(e);
+        }
+        return frame;
+    }
+
+    /** CBOR form of {@link #inboxFrame}; encoded on the first get(), so JSON-only recipients never pay for it. */
+    public Supplier<byte[]> cborInboxFrame(ChatRoom room, Long peerId) {
+        return new Supplier<>() {
+            private byte[] frame;
+
+            @Override
+            public synchronized byte[] get() {
+                if (frame == null) {
+                    Map<String, Object> e = inboxHead(room, peerId);
+                    e.putAll(fields);
+                    frame = toCbor(e);
+                }
+                return frame;
+            }
+        };
+    }
+
+    /** Room event as a map, for callers that still compose their own payloads. */
+    public Map<String, Object> toMap() {
+        Map<String, Object> e = new HashMap<>(fields);
+        e.put("type", type);
+        return e;
+    }
+
+    /** Inbox payload as a map (pending replay streams these through its own generator). */
+    public Map<String, Object> inboxPayload(ChatRoom room, Long peerId) {
+        Map<String, Object> e = new HashMap<>(fields);
+        e.putAll(inboxHead(room, peerId));
+        return e;
+    }
+
+    /** Wrap pre-serialized JSON so SimpMessagingTemplate.send passes the bytes through unconverted. */
+    public static Message<byte[]> jsonMessage(byte[] payload) {
+        SimpMessageHeaderAccessor acc = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+        acc.setContentType(MimeTypeUtils.APPLICATION_JSON);
+        acc.setLeaveMutable(true);
+        return MessageBuilder.createMessage(payload, acc.getMessageHeaders());
+    }
+
+    /** Same as {@link #jsonMessage(byte[])}, carrying the CBOR form for sessions that negotiated it. */
+    public static Message<byte[]> jsonMessage(byte[] payload, Supplier<byte[]> cbor) {
+        SimpMessageHeaderAccessor acc = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+        acc.setContentType(MimeTypeUtils.APPLICATION_JSON);
+        acc.setHeader(CBOR_BODY_HEADER, cbor);
+        acc.setLeaveMutable(true);
+        return MessageBuilder.createMessage(payload, acc.getMessageHeaders());
+    }
+
+    /** Pre-encoded CBOR; octet-stream is what StompSubProtocolHandler writes as a binary WebSocket frame. */
+    public static Message<byte[]> cborMessage(byte[] payload) {
+        SimpMessageHeaderAccessor acc = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+        acc.setContentType(MimeTypeUtils.APPLICATION_OCTET_STREAM);
+        acc.setLeaveMutable(true);
+        return MessageBuilder.createMessage(payload, acc.getMessageHeaders());
+    }
+
+    private Map<String, Object> inboxHead(ChatRoom room, Long peerId) {
+        Map<String, Object> head = new LinkedHashMap<>();
+        head.put("type", "message");
+        head.put("roomKey", room.getRoomId());
+        head.put("roomName", room.getName());
+        head.put("roomImage", room.getImageUrl());
+        head.put("roomDbId", room.getId());
+        head.put("msgId", messageId);
+        head.put("createdAt", serverTs);
+        if (peerId != null) {
+            head.put("peerId", peerId);
+        }
+        return head;
+    }
+
+    private byte[] write(Map<String, Object> value) {
+        try {
+            return om.writeValueAsBytes(value);
+        } catch (JsonProcessingException ex) {
+            throw new IllegalStateException("Cannot serialize room event " + messageId, ex);
+        }
+    }
+
+    /**
+     * Same serializers as the JSON form (timestamps etc.); the byte[] envelope fields stay binary
+     * in the tree, so CBOR writes them as byte strings where JSON had base64 text.
+     */
+    private byte[] toCbor(Map<String, Object> value) {
+        try {
+            return CBOR.writeValueAsBytes(om.valueToTree(value));
+        } catch (JsonProcessingException ex) {
+            throw new IllegalStateException("Cannot encode room event " + messageId + " as CBOR", ex);
+        }
+    }
+
+    /** {"a":1,"b":2} -> "a":1,"b":2 */
+    private static byte[] innerMembers(byte[] object) {
+        int start = indexOf(object, (byte) '{') + 1;
+        int end = lastIndexOf(object, (byte) '}');
+        byte[] out = new byte[end - start];
+        System.arraycopy(object, start, out, 0, out.length);
+        return out;
+    }
+
+    /** {"h":1} + "a":1 -> {"h":1,"a":1} */
+    private static byte[] splice(byte[] head, byte[] members) {
+        int close = lastIndexOf(head, (byte) '}');
+        ByteArrayOutputStream out = new ByteArrayOutputStream(close + members.length + 2);
+        out.write(head, 0, close);
+        if (members.length > 0) {
+            out.write(',');
+            out.write(members, 0, members.length);
+        }
+        out.write('}');
+        return out.toByteArray();
+    }
+
+    private static int indexOf(byte[] b, byte c) {
+        for (int i = 0; i < b.length; i++) if (b[i] == c) return i;
+        throw new IllegalStateException("not a JSON object");
+    }
+
+    private static int lastIndexOf(byte[] b, byte c) {
+        for (int i = b.length - 1; i >= 0; i--) if (b[i] == c) return i;
+        throw new IllegalStateException("not a JSON object");
+    }
+}
@@ -9,7 +9,8 @@ import java.time.Instant;
 @Entity
 @Table(name = "chat_message",
         uniqueConstraints = @UniqueConstraint(name = "uq_room_message",
-                columnNames = {"room_id","message_id"}))
+                columnNames = {"room_id","message_id"}),
+        indexes = @Index(name = "idx_chat_message_deleted_at", columnList = "deleted_at"))
 public class ChatMessage {
 
     @Id
@@ -73,6 +74,10 @@ public class ChatMessage {
     @Column(name = "deleted_for_everyone", nullable = false)
     private boolean deletedForEveryone = false;
 
+    // when deletedForEveryone was set; a restarted pod's search index replays deletes from here
+    @Column(name = "deleted_at")
+    private Instant deletedAt;
+
     @Column(name = "system_message", nullable = false)
     private boolean systemMessage = false;
 
@@ -130,6 +135,9 @@ public class ChatMessage {
     public boolean isDeletedForEveryone() { return deletedForEveryone; }
     public void setDeletedForEveryone(boolean deletedForEveryone) { this.deletedForEveryone = deletedForEveryone; }
 
+    public Instant getDeletedAt() { return deletedAt; }
+    public void setDeletedAt(Instant deletedAt) { this.deletedAt = deletedAt; }
+
     public boolean isSystemMessage() { return systemMessage; }
     public void setSystemMessage(boolean systemMessage) { this.systemMessage = systemMessage; }
 }
@@ -29,6 +29,10 @@ public class OutboxEvent {
     @Column(name="published_at")
     private Instant publishedAt;
 
+    // earliest time a failed event may be retried; null until the first failure
+    @Column(name="next_attempt_at")
+    private Instant nextAttemptAt;
+
     @Column(name="status", nullable=false, length=20)
     private String status = "PENDING"; // PENDING|SENT|FAILED
 
@@ -49,6 +53,8 @@ public class OutboxEvent {
     public void setOccurredAt(Instant occurredAt) { this.occurredAt = occurredAt; }
     public Instant getPublishedAt() { return publishedAt; }
     public void setPublishedAt(Instant publishedAt) { this.publishedAt = publishedAt; }
+    public Instant getNextAttemptAt() { return nextAttemptAt; }
+    public void setNextAttemptAt(Instant nextAttemptAt) { this.nextAttemptAt = nextAttemptAt; }
     public String getStatus() { return status; }
     public void setStatus(String status) { this.status = status; }
     public int getAttempts() { return attempts; }
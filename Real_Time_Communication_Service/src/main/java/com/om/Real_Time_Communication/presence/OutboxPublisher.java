@@ -5,67 +5,183 @@ import com.om.Real_Time_Communication.Repository.OutboxEventRepository;
 import com.om.Real_Time_Communication.config.RabbitConfig;
 import com.om.Real_Time_Communication.models.OutboxEvent;
 import org.slf4j.Logger; import org.slf4j.LoggerFactory;
+import org.springframework.amqp.rabbit.connection.CorrelationData;
 import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
-import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import java.time.Duration;
 import java.time.Instant;
-import java.util.List;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
 
+/**
+ * Drains outbox_event to RabbitMQ.
+ * Each round claims a batch with FOR UPDATE SKIP LOCKED and leases it by pushing next_attempt_at
+ * past the confirm timeout, then commits, so no row lock or connection is held while publishing.
+ * The batch is published and its confirms awaited outside any transaction, then settled with bulk
+ * updates in a second short one. Several pods can pump in parallel without publishing the same row
+ * twice; a pod that dies mid-batch leaves rows that become due again when the lease runs out.
+ * Failed rows are retried with exponential backoff.
+ */
 @Component
 public class OutboxPublisher {
     private static final Logger log = LoggerFactory.getLogger(OutboxPublisher.class);
 
+    private static final int MAX_ROUNDS_PER_TICK = 50;     // let the scheduler thread breathe under sustained load
+    private static final Duration BASE_BACKOFF = Duration.ofSeconds(1);
+    private static final Duration MAX_BACKOFF = Duration.ofMinutes(5);
+    private static final Duration LEASE_SLACK = Duration.ofSeconds(30);   // on top of the confirm timeout
+
     private final OutboxEventRepository repo;
     private final RabbitTemplate rabbit;
+    private final TransactionTemplate tx;
+
+    @Value("${outbox.publish.batch-size:200}")
+    private int batchSize = 200;
+
+    @Value("${outbox.publish.confirm-timeout-ms:5000}")
+    private long confirmTimeoutMs = 5000;
+
+    @Value("${outbox.publish.max-attempts:12}")
+    private int maxAttempts = 12;
 
-    public OutboxPublisher(OutboxEventRepository repo, RabbitTemplate rabbit) {
-        this.repo = repo; this.rabbit = rabbit;
+    public OutboxPublisher(OutboxEventRepository repo, RabbitTemplate rabbit, TransactionTemplate tx) {
+        this.repo = repo; this.rabbit = rabbit; this.tx = tx;
     }
 
-    @Scheduled(fixedDelayString = "${outbox.publish.delay:4000}")
+    @Scheduled(fixedDelayString = "${outbox.publish.delay:200}")
     public void pump() {
-        List<OutboxEvent> batch = repo.fetchBatch(Instant.now(), 200);
+        // keep draining while batches come back full; an idle table costs one query per tick
+        for (int round = 0; round < MAX_ROUNDS_PER_TICK; round++) {
+            int claimed = publishBatch();
+            if (claimed < batchSize) {
+                return;
+            }
+        }
+    }
+
+    private int publishBatch() {
+        List<OutboxEvent> batch = tx.execute(status -> claim(Instant.now()));
+        if (batch == null || batch.isEmpty()) {
+            return 0;
+        }
+
+        Map<OutboxEvent, CorrelationData> inFlight = new LinkedHashMap<>();
+        List<OutboxEvent> failed = new ArrayList<>();
         for (OutboxEvent ev : batch) {
+            CorrelationData cd = new CorrelationData("obx-" + ev.getId());
             try {
-                publish(ev);
-                markSent(ev.getId());
+                publish(ev, cd);
+                inFlight.put(ev, cd);
             } catch (Exception ex) {
                 log.warn("Outbox publish failed id={}, attempt={}, err={}", ev.getId(), ev.getAttempts(), ex.toString());
-                markFailed(ev.getId());
+                failed.add(ev);
+            }
+        }
+
+        List<Long> sent = new ArrayList<>(inFlight.size());
+        boolean confirms = rabbit.getConnectionFactory().isPublisherConfirms();
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(confirmTimeoutMs);
+        for (Map.Entry<OutboxEvent, CorrelationData> e : inFlight.entrySet()) {
+            OutboxEvent ev = e.getKey();
+            if (!confirms || awaitAck(ev, e.getValue(), deadline)) {
+                sent.add(ev.getId());
+            } else {
+                failed.add(ev);
             }
         }
+
+        Instant settledAt = Instant.now();
+        tx.execute(status -> {
+            if (!sent.isEmpty()) {
+                repo.markSent(sent, settledAt);
+            }
+            markFailed(failed, settledAt);
+            return null;
+        });
+        return batch.size();
     }
 
-    private void publish(OutboxEvent ev) {
+    /** Locks due rows and leases them to this pod; the locks go away when the caller commits. */
+    private List<OutboxEvent> claim(Instant now) {
+        List<OutboxEvent> batch = repo.claimBatch(now, batchSize);
+        if (!batch.isEmpty()) {
+            List<Long> ids = new ArrayList<>(batch.size());
+            for (OutboxEvent ev : batch) {
+                ids.add(ev.getId());
+            }
+            repo.lease(ids, now.plusMillis(confirmTimeoutMs).plus(LEASE_SLACK));
+        }
+        return batch;
+    }
+
+    private boolean awaitAck(OutboxEvent ev, CorrelationData cd, long deadlineNanos) {
+        try {
+            long waitNanos = Math.max(0, deadlineNanos - System.nanoTime());
+            CorrelationData.Confirm confirm = cd.getFuture().get(waitNanos, TimeUnit.NANOSECONDS);
+            if (!confirm.isAck()) {
+                log.warn("Outbox publish nacked id={}, reason={}", ev.getId(), confirm.getReason());
+                return false;
+            }
+            if (cd.getReturned() != null) {
+                log.warn("Outbox publish unroutable id={}, replyText={}", ev.getId(), cd.getReturned().getReplyText());
+                return false;
+            }
+            return true;
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            return false;
+        } catch (Exception ex) {
+            log.warn("Outbox confirm missing id={}, err={}", ev.getId(), ex.toString());
+            return false;
+        }
+    }
+
+    private void publish(OutboxEvent ev, CorrelationData cd) {
         String rk = routingKey(ev); // room.<roomId>.message.created
         rabbit.convertAndSend(RabbitConfig.EXCHANGE_EVENTS, rk, ev.getPayload(), msg -> {
             msg.getMessageProperties().setMessageId("obx-" + ev.getId());
             msg.getMessageProperties().setContentType("application/json");
             return msg;
-        });
+        }, cd);
     }
 
     private String routingKey(OutboxEvent ev) {
         if ("MessageCreated".equals(ev.getEventType())) {
             return "room." + ev.getAggregateId() + ".message.created";
         }
+        if ("MessageDeleted".equals(ev.getEventType())) {
+            return "room." + ev.getAggregateId() + ".message.deleted";
+        }
         return "unknown";
     }
 
-    @Transactional
-    protected void markSent(Long id) {
-        repo.findById(id).ifPresent(e -> {
-            e.setStatus("SENT"); e.setPublishedAt(Instant.now()); e.setAttempts(e.getAttempts()+1);
+    /** One bulk update per distinct attempt count, since that is what the backoff depends on. */
+    private void markFailed(List<OutboxEvent> failed, Instant now) {
+        if (failed.isEmpty()) {
+            return;
+        }
+        Map<Integer, List<Long>> byAttempts = new TreeMap<>();
+        for (OutboxEvent ev : failed) {
+            byAttempts.computeIfAbsent(ev.getAttempts(), k -> new ArrayList<>()).add(ev.getId());
+        }
+        byAttempts.forEach((attempts, ids) -> {
+            int next = attempts + 1;
+            String status = next >= maxAttempts ? "FAILED" : "PENDING";
+            repo.markFailed(ids, status, now.plus(backoff(next)));
+            if ("FAILED".equals(status)) {
+                log.error("Outbox giving up after {} attempts ids={}", next, ids);
+            }
         });
     }
 
-    @Transactional
-    protected void markFailed(Long id) {
-        repo.findById(id).ifPresent(e -> {
-            e.setStatus("PENDING"); // keep pending; backoff is simple here
-            e.setAttempts(e.getAttempts()+1);
-        });
+    /** Delay before the next try of an event that has failed {@code attempts} times: 1s doubling, capped at 5 min. */
+    public static Duration backoff(int attempts) {
+        int shift = Math.min(Math.max(attempts - 1, 0), 20);
+        Duration d = BASE_BACKOFF.multipliedBy(1L << shift);
+        return d.compareTo(MAX_BACKOFF) > 0 ? MAX_BACKOFF : d;
     }
 }
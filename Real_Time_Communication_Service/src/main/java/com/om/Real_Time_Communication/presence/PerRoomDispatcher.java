@@ -1,108 +1,149 @@
 package com.om.Real_Time_Communication.presence;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
 
-import java.time.Instant;
 import java.util.Map;
 import java.util.concurrent.*;
-import java.util.concurrent.atomic.AtomicLong;
-
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Strict per-room FIFO on a shared worker pool.
+ * Each room owns a mailbox; a mailbox occupies a worker only while it has pending work,
+ * so the number of active rooms is not bounded by the number of threads.
+ */
 @Component
 public class PerRoomDispatcher implements AutoCloseable {
+    private static final Logger log = LoggerFactory.getLogger(PerRoomDispatcher.class);
+
+    private static final int MAX_QUEUE_PER_ROOM = 2_000;   // backpressure per room
+    private static final int DRAIN_BATCH = 64;             // yield the worker after this many tasks
+    private static final long IDLE_MS = 60_000L;
+
+    private final ThreadPoolExecutor workers;
+    private final ConcurrentMap<Long, Mailbox> mailboxes = new ConcurrentHashMap<>();
 
-    // Shared worker pool; tasks are serialized per room via single-thread executors
-    private final ThreadPoolExecutor backingPool = new ThreadPoolExecutor(
-            8, 64, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(10_000),
-            r -> { Thread t = new Thread(r, "room-worker"); t.setDaemon(true); return t; }
-    );
+    public PerRoomDispatcher() {
+        this(Math.max(8, Runtime.getRuntime().availableProcessors() * 2));
+    }
 
-    private final ConcurrentMap<Long, RoomExecutor> executors = new ConcurrentHashMap<>();
+    public PerRoomDispatcher(int threads) {
+        AtomicInteger seq = new AtomicInteger();
+        // Unbounded queue holds at most one drain task per room with pending work.
+        this.workers = new ThreadPoolExecutor(
+                threads, threads, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+                r -> { Thread t = new Thread(r, "room-worker-" + seq.incrementAndGet()); t.setDaemon(true); return t; }
+        );
+    }
 
-    public <T> T executeAndWait(Long roomId, Callable<T> work) throws Exception {
-        RoomExecutor rx = executors.computeIfAbsent(roomId, id -> new RoomExecutor(backingPool));
-        // Enqueue and block the caller until the work is done (keeps strict FIFO)
-        return rx.submit(work).get();
+    /** Queue work behind everything already submitted for the room; never blocks the caller. */
+    public <T> CompletableFuture<T> submit(Long roomId, Callable<T> work) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        Runnable task = () -> {
+            if (result.isDone()) return; // cancelled by the caller
+            try {
+                result.complete(work.call());
+            } catch (Throwable t) {
+                result.completeExceptionally(t);
+            }
+        };
+        if (!enqueue(roomId, task)) {
+            result.completeExceptionally(new RejectedExecutionException("Room queue full"));
+        }
+        return result;
     }
 
     public void execute(Long roomId, Runnable work) {
-        RoomExecutor rx = executors.computeIfAbsent(roomId, id -> new RoomExecutor(backingPool));
-        rx.execute(work);
+        if (!enqueue(roomId, work)) throw new RejectedExecutionException("Room queue full");
     }
 
-    /** Periodic cleanup is optional; can be called from a @Scheduled sweeper */
+    /** Drop mailboxes that have been empty and unscheduled for longer than idleMs. */
     public void cleanupIdle(long idleMs) {
         long now = System.currentTimeMillis();
-        for (Map.Entry<Long, RoomExecutor> e : executors.entrySet()) {
-            if (now - e.getValue().lastTouch.get() > idleMs && e.getValue().queueSize() == 0) {
-                executors.remove(e.getKey());
-            }
+        for (Map.Entry<Long, Mailbox> e : mailboxes.entrySet()) {
+            // computeIfPresent serializes with enqueue(), so no task can land in a removed mailbox
+            mailboxes.computeIfPresent(e.getKey(), (id, mb) -> mb.isIdle(now, idleMs) ? null : mb);
         }
     }
 
-    @Override public void close() {
-        backingPool.shutdown();
+    @Scheduled(fixedDelay = 30_000L)
+    public void reclaimIdle() {
+        cleanupIdle(IDLE_MS);
     }
 
-    /** Serializes tasks for one room using a single-thread executor bound to the shared pool */
-    private static final class RoomExecutor {
-        private final ExecutorService single;
-        private final AtomicLong lastTouch = new AtomicLong(System.currentTimeMillis());
-        private final BlockingQueue<Runnable> q;
+    public int activeRooms() {
+        return mailboxes.size();
+    }
 
-        RoomExecutor(ThreadPoolExecutor backingPool) {
-            // single-thread executor that runs tasks on the shared pool
-            this.q = new LinkedBlockingQueue<Runnable>(2_000); // backpressure per room
-            this.single = new ThreadPerTaskExecutor(backingPool, q, lastTouch);
-        }
+    @Override public void close() {
+        workers.shutdown();
+    }
 
-        <T> Future<T> submit(Callable<T> work) {
-            lastTouch.set(System.currentTimeMillis());
-            FutureTask<T> ft = new FutureTask<>(work);
-            if (!q.offer(ft)) throw new RejectedExecutionException("Room queue full");
-            return ft;
-        }
+    private boolean enqueue(Long roomId, Runnable task) {
+        boolean[] accepted = new boolean[1];
+        Mailbox mb = mailboxes.compute(roomId, (id, cur) -> {
+            Mailbox m = cur != null ? cur : new Mailbox(id);
+            accepted[0] = m.offer(task);
+            return m;
+        });
+        if (accepted[0]) mb.scheduleIfIdle();
+        return accepted[0];
+    }
 
-        void execute(Runnable work) {
-            lastTouch.set(System.currentTimeMillis());
-            if (!q.offer(work)) throw new RejectedExecutionException("Room queue full");
-        }
+    /** Pending tasks of one room plus a flag saying whether a worker currently owns them. */
+    private final class Mailbox implements Runnable {
+        private final Long roomId;
+        private final ConcurrentLinkedQueue<Runnable> queue = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger size = new AtomicInteger();
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+        private volatile long lastTouch = System.currentTimeMillis();
 
-        int queueSize() { return q.size(); }
-    }
+        Mailbox(Long roomId) { this.roomId = roomId; }
 
-    /** Pipes queued tasks onto the shared pool, preserving order */
-    private static final class ThreadPerTaskExecutor extends AbstractExecutorService {
-        private final ThreadPoolExecutor pool;
-        private final BlockingQueue<Runnable> queue;
-        private final AtomicLong lastTouch;
-        private volatile boolean shutdown = false;
-
-        ThreadPerTaskExecutor(ThreadPoolExecutor pool, BlockingQueue<Runnable> queue, AtomicLong lastTouch) {
-            this.pool = pool; this.queue = queue; this.lastTouch = lastTouch;
-            // start a single consumer
-            pool.execute(this::drain);
+        boolean offer(Runnable task) {
+            if (size.incrementAndGet() > MAX_QUEUE_PER_ROOM) {
+                size.decrementAndGet();
+                return false;
+            }
+            queue.offer(task);
+            lastTouch = System.currentTimeMillis();
+            return true;
         }
 
-        private void drain() {
-            try {
-                while (!shutdown) {
-                    Runnable task = queue.take();
-                    lastTouch.set(System.currentTimeMillis());
-                    // run inline to preserve strict FIFO
-                    try { task.run(); } catch (Throwable ignore) {}
+        void scheduleIfIdle() {
+            if (scheduled.compareAndSet(false, true)) {
+                try {
+                    workers.execute(this);
+                } catch (RejectedExecutionException ex) {
+                    scheduled.set(false);
+                    throw ex;
                 }
-            } catch (InterruptedException ie) {
-                Thread.currentThread().interrupt();
             }
         }
 
-        @Override public void shutdown() { shutdown = true; }
-        @Override public java.util.List<Runnable> shutdownNow() { shutdown = true; return java.util.Collections.emptyList(); }
-        @Override public boolean isShutdown() { return shutdown; }
-        @Override public boolean isTerminated() { return shutdown && queue.isEmpty(); }
-        @Override public boolean awaitTermination(long timeout, TimeUnit unit) { return true; }
-        @Override public void execute(Runnable command) {
-            if (!queue.offer(command)) throw new RejectedExecutionException("Room queue full");
+        boolean isIdle(long now, long idleMs) {
+            return size.get() == 0 && !scheduled.get() && now - lastTouch > idleMs;
+        }
+
+        @Override
+        public void run() {
+            int n = 0;
+            Runnable task;
+            while (n < DRAIN_BATCH && (task = queue.poll()) != null) {
+                size.decrementAndGet();
+                // run inline to preserve strict FIFO
+                try { task.run(); } catch (Throwable t) {
+                    log.warn("room task failed room={} err={}", roomId, t.toString());
+                }
+                n++;
+            }
+            lastTouch = System.currentTimeMillis();
+            scheduled.set(false);
+            // a producer may have enqueued after our last poll but before the flag was cleared
+            if (!queue.isEmpty()) scheduleIfIdle();
         }
     }
 }
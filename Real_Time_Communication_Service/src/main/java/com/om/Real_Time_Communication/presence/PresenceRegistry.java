@@ -1,15 +1,27 @@
 package com.om.Real_Time_Communication.presence;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.common.lang.Nullable;
 import lombok.Data;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.event.EventListener;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
+import org.springframework.web.socket.messaging.SessionDisconnectEvent;
 
+import java.time.Duration;
 import java.time.Instant;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
 
 @Component
 public class PresenceRegistry {
+    private static final Logger log = LoggerFactory.getLogger(PresenceRegistry.class);
+
     @Data
     public static class Presence {
         private Long userId;
@@ -82,59 +94,128 @@ public class PresenceRegistry {
         }
     }
 
-    // key: userId:deviceId
-    private final Map<String, Presence> map = new ConcurrentHashMap<>();
+    // key: userId -> (deviceId -> presence); lookups by user touch only that user's devices
+    private final Map<Long, Map<String, Presence>> byUser = new ConcurrentHashMap<>();
     // heartbeat window (client sends every 15s, expire at 30s)
     private static final long EXPIRE_MS = 30_000L;
+    // how long another node's view of a user is trusted before asking the shared store again
+    private static final Duration NEAR_CACHE_TTL = Duration.ofSeconds(2);
+    // session attribute holding the deviceId a STOMP session reported, so disconnect can find it
+    public static final String DEVICE_ATTR = "rtc.presence.deviceId";
+
+    // optional cluster-wide backend; null keeps presence purely per-JVM
+    private final PresenceStore store;
+    private final Cache<Long, List<Presence>> remote;
+
+    public PresenceRegistry() {
+        this(null, NEAR_CACHE_TTL);
+    }
+
+    @Autowired
+    public PresenceRegistry(@Nullable PresenceStore store) {
+        this(store, NEAR_CACHE_TTL);
+    }
+
+    public PresenceRegistry(@Nullable PresenceStore store, Duration nearCacheTtl) {
+        this.store = store;
+        this.remote = Caffeine.newBuilder()
+                .expireAfterWrite(nearCacheTtl)
+                .maximumSize(100_000)
+                .build();
+    }
 
     public Presence touch(Long userId, String deviceId) {
         return touch(userId, deviceId, null);
     }
 
     public Presence touch(Long userId, String deviceId, Long activeRoomId) {
-        String key = userId + ":" + deviceId;
-        Presence p = map.get(key);
+        Map<String, Presence> devices = byUser.computeIfAbsent(userId, id -> new ConcurrentHashMap<>());
+        Presence p = devices.get(deviceId);
         if (p == null) {
             p = new Presence(userId, deviceId, Instant.now(), true, "FOREGROUND", activeRoomId);
-            map.put(key, p);
-        } else {
-            p.setLastSeen(Instant.now());
-            p.setOnline(true);
-            p.setAppState("FOREGROUND");
-            if (activeRoomId != null) {
-                p.setActiveRoomId(activeRoomId);
+            Presence raced = devices.putIfAbsent(deviceId, p);
+            if (raced == null) {
+                publish(p);
+                return p;
             }
+            p = raced;
+        }
+        p.setLastSeen(Instant.now());
+        p.setOnline(true);
+        p.setAppState("FOREGROUND");
+        if (activeRoomId != null) {
+            p.setActiveRoomId(activeRoomId);
         }
+        publish(p);
         return p;
     }
 
     public Presence markOffline(Long userId, String deviceId) {
-        String key = userId + ":" + deviceId;
-        Presence p = map.get(key);
+        Presence p = find(userId, deviceId);
         if (p != null) {
             p.setOnline(false);
             p.setAppState("BACKGROUND");
             p.setActiveRoomId(null);
+            publish(p);
         }
         return p;
     }
 
+    /** Drop the device locally and from the shared store once its session is gone. */
+    public void disconnect(Long userId, String deviceId) {
+        Map<String, Presence> devices = byUser.get(userId);
+        if (devices == null || devices.remove(deviceId) == null) {
+            return;
+        }
+        if (store == null) {
+            return;
+        }
+        remote.invalidate(userId);
+        try {
+            store.remove(userId, deviceId);
+        } catch (Exception ex) {
+            log.warn("[PRESENCE] store remove failed user={} device={} err={}", userId, deviceId, ex.toString());
+        }
+    }
+
+    @EventListener
+    public void onDisconnect(SessionDisconnectEvent event) {
+        Map<String, Object> attrs = SimpMessageHeaderAccessor.getSessionAttributes(event.getMessage().getHeaders());
+        Object deviceId = attrs == null ? null : attrs.get(DEVICE_ATTR);
+        if (deviceId == null || event.getUser() == null) {
+            return;
+        }
+        try {
+            disconnect(Long.valueOf(event.getUser().getName()), deviceId.toString());
+        } catch (NumberFormatException ex) {
+            log.warn("[PRESENCE] disconnect for non-numeric principal={}", event.getUser().getName());
+        }
+    }
+
     public void setActiveRoom(Long userId, String deviceId, Long roomId) {
         Presence p = touch(userId, deviceId, roomId);
         p.setActiveRoomId(roomId);
     }
 
     public void clearActiveRoom(Long userId, String deviceId, Long roomId) {
-        String key = userId + ":" + deviceId;
-        Presence p = map.get(key);
+        Presence p = find(userId, deviceId);
         if (p != null && java.util.Objects.equals(p.getActiveRoomId(), roomId)) {
             p.setActiveRoomId(null);
+            publish(p);
         }
     }
 
     public boolean isOnline(Long userId) {
-        for (Presence p : map.values()) {
-            if (userId.equals(p.getUserId()) && p.isOnline()) {
+        Map<String, Presence> devices = byUser.get(userId);
+        if (devices != null) {
+            for (Presence p : devices.values()) {
+                if (p.isOnline()) {
+                    return true;
+                }
+            }
+        }
+        for (Presence p : remoteDevices(userId)) {
+            if (isLive(p)) {
                 return true;
             }
         }
@@ -142,10 +223,16 @@ public class PresenceRegistry {
     }
 
     public boolean isViewingRoom(Long userId, Long roomId) {
-        for (Presence p : map.values()) {
-            if (userId.equals(p.getUserId())
-                    && p.isOnline()
-                    && java.util.Objects.equals(roomId, p.getActiveRoomId())) {
+        Map<String, Presence> devices = byUser.get(userId);
+        if (devices != null) {
+            for (Presence p : devices.values()) {
+                if (p.isOnline() && java.util.Objects.equals(roomId, p.getActiveRoomId())) {
+                    return true;
+                }
+            }
+        }
+        for (Presence p : remoteDevices(userId)) {
+            if (isLive(p) && java.util.Objects.equals(roomId, p.getActiveRoomId())) {
                 return true;
             }
         }
@@ -153,19 +240,60 @@ public class PresenceRegistry {
     }
     
     public List<Presence> snapshotForUser(Long userId) {
-        List<Presence> out = new ArrayList<Presence>();
-        for (Presence p : map.values()) if (p.getUserId().equals(userId)) out.add(p);
-        return out;
+        Map<String, Presence> devices = byUser.get(userId);
+        return devices == null ? new ArrayList<Presence>() : new ArrayList<Presence>(devices.values());
     }
 
     /** Sweep every 10s; mark offline if lastSeen is stale (> 2 * heartbeat). */
     @Scheduled(fixedDelay = 10_000L)
     public void sweep() {
         Instant now = Instant.now();
-        for (Presence p : map.values()) {
-            if (p.isOnline() && now.toEpochMilli() - p.getLastSeen().toEpochMilli() > EXPIRE_MS) {
-                p.setOnline(false);
+        for (Map<String, Presence> devices : byUser.values()) {
+            for (Presence p : devices.values()) {
+                if (p.isOnline() && now.toEpochMilli() - p.getLastSeen().toEpochMilli() > EXPIRE_MS) {
+                    p.setOnline(false);
+                    publish(p);
+                }
             }
         }
     }
+
+    private Presence find(Long userId, String deviceId) {
+        Map<String, Presence> devices = byUser.get(userId);
+        return devices == null ? null : devices.get(deviceId);
+    }
+
+    /** Devices of this user as seen by the shared store; served from the near-cache on the hot path. */
+    private List<Presence> remoteDevices(Long userId) {
+        if (store == null) {
+            return List.of();
+        }
+        return remote.get(userId, id -> {
+            try {
+                return store.devices(id);
+            } catch (Exception ex) {
+                log.warn("[PRESENCE] store read failed user={} err={}", id, ex.toString());
+                return List.of();
+            }
+        });
+    }
+
+    private void publish(Presence p) {
+        if (store == null) {
+            return;
+        }
+        remote.invalidate(p.getUserId());
+        try {
+            store.put(p);
+        } catch (Exception ex) {
+            log.warn("[PRESENCE] store write failed user={} device={} err={}",
+                    p.getUserId(), p.getDeviceId(), ex.toString());
+        }
+    }
+
+    private static boolean isLive(Presence p) {
+        return p.isOnline()
+                && p.getLastSeen() != null
+                && System.currentTimeMillis() - p.getLastSeen().toEpochMilli() <= EXPIRE_MS;
+    }
 }
@@ -0,0 +1,19 @@
+package com.om.Real_Time_Communication.presence;
+
+import java.util.List;
+
+/**
+ * Shared presence backend so every RTC node sees devices connected to its peers.
+ * PresenceRegistry writes local changes through and reads other nodes' devices via a near-cache.
+ */
+public interface PresenceStore {
+
+    /** Publish the current state of one device. */
+    void put(PresenceRegistry.Presence presence);
+
+    /** Forget a device that has disconnected. */
+    void remove(Long userId, String deviceId);
+
+    /** All devices known for the user across the cluster (may include devices that went offline recently). */
+    List<PresenceRegistry.Presence> devices(Long userId);
+}
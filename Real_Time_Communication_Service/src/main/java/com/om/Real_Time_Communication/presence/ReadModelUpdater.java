@@ -1,63 +1,171 @@
 package com.om.Real_Time_Communication.presence;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.om.Real_Time_Communication.config.RabbitConfig;
+import com.om.Real_Time_Communication.dto.MessageCreated;
+import com.om.Real_Time_Communication.service.RoomMembershipService;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.amqp.core.Message;
 import org.springframework.amqp.rabbit.annotation.RabbitListener;
-import org.springframework.amqp.support.AmqpHeaders;
+import org.springframework.data.redis.connection.ReturnType;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
 import org.springframework.data.redis.core.StringRedisTemplate;
-import org.springframework.messaging.handler.annotation.Header;
 import org.springframework.stereotype.Component;
 
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Keeps the room:last:{id} and room:unread:{id} read models that ReadModelController serves.
+ * Deliveries arrive in batches; per batch the newest event of each room becomes its last message
+ * and each room's unread increments go out as one {@link #UNREAD_SCRIPT} call, all in one Redis
+ * pipeline. Members come from {@link RoomMembershipService}'s cached member sets.
+ * Unread counts are applied at most once per message id: the outbox republishes an event under
+ * the same id, and a batch is redelivered whole even if part of its pipeline already ran.
+ */
 @Component
 public class ReadModelUpdater {
     private static final Logger log = LoggerFactory.getLogger(ReadModelUpdater.class);
+
+    /** Longer than any outbox retry schedule, so a republished event still finds its marker. */
+    static final Duration SEEN_TTL = Duration.ofDays(1);
+
+    /**
+     * KEYS[1] room:unread hash, KEYS[2..] one seen-marker per message. ARGV[1] marker TTL in
+     * seconds, ARGV[i] the space-separated members to increment for the message at KEYS[i].
+     * Messages whose marker already exists are skipped; the rest are summed per member and
+     * applied with one HINCRBY each. Returns the number of messages applied.
+     */
+    public static final String UNREAD_SCRIPT = """
+            local counts = {}
+            local applied = 0
+            for i = 2, #KEYS do
+              if redis.call('SET', KEYS[i], '1', 'NX', 'EX', ARGV[1]) then
+                applied = applied + 1
+                for uid in string.gmatch(ARGV[i], '%S+') do
+                  counts[uid] = (counts[uid] or 0) + 1
+                end
+              end
+            end
+            for uid, n in pairs(counts) do
+              redis.call('HINCRBY', KEYS[1], uid, n)
+            end
+            return applied
+            """;
+
     private final StringRedisTemplate redis;
+    private final ObjectMapper om;
+    private final RoomMembershipService membership;
+
+    private final DistributionSummary batchSize;
+    private final Counter increments;
 
-    public ReadModelUpdater(StringRedisTemplate redis) { this.redis = redis; }
+    public ReadModelUpdater(StringRedisTemplate redis, ObjectMapper om, RoomMembershipService membership,
+                            MeterRegistry meterRegistry) {
+        this.redis = redis;
+        this.om = om;
+        this.membership = membership;
+        this.batchSize = DistributionSummary.builder("rtc.readmodel.batch.size")
+                .description("Message-created events applied per read-model batch")
+                .register(meterRegistry);
+        this.increments = Counter.builder("rtc.readmodel.unread.increments")
+                .description("Unread counters touched per batch after merging; repeats of seen messages are skipped in Redis")
+                .register(meterRegistry);
+    }
+
+    private record Last(long ts, String payload) {}
 
-    // Bind this queue to exchange with routing key pattern "room.*.message.created"
-    // Queue declaration can be via config or infra-as-code; for demo, assume queue exists.
-//    @RabbitListener(queues = "rtc.readmodel.message.created")
-    public void onMessageCreated(String payload, String rk) {
-//                                 @Header(AmqpHeaders.RECEIVED_ROUTING_KEY) String rk) {
-        // payload is MessageCreated JSON from outbox; we’ll just set last and bump unread
+    /** Seen-marker keys and member lists of one room's messages in a batch, in script order. */
+    private static final class RoomUnread {
+        final List<String> seenKeys = new ArrayList<>();      // KEYS[2..]
+        final List<String> members = new ArrayList<>();       // ARGV[2..]
+        final Set<String> distinct = new HashSet<>();
+    }
+
+    @RabbitListener(queues = RabbitConfig.Q_READMODEL_UNREAD,
+            containerFactory = RabbitConfig.BATCH_LISTENER_FACTORY)
+    public void onMessageCreated(List<Message> deliveries) {
+        Map<Long, Last> last = new HashMap<>();
+        Map<Long, RoomUnread> unread = new HashMap<>();
+        int applied = 0;
+        for (Message m : deliveries) {
+            MessageCreated ev;
+            try {
+                ev = om.readValue(m.getBody(), MessageCreated.class);
+            } catch (IOException e) {
+                log.warn("readmodel skipping unreadable payload: {}", e.toString());
+                continue;
+            }
+            if (ev.roomId == null || ev.messageId == null) continue;
+            applied++;
+
+            // 1) last message (stored as the event JSON for quick API reads)
+            long ts = ev.serverTs == null ? Long.MIN_VALUE : ev.serverTs.toEpochMilli();
+            Last prev = last.get(ev.roomId);
+            if (prev == null || ts >= prev.ts()) {
+                last.put(ev.roomId, new Last(ts, new String(m.getBody(), StandardCharsets.UTF_8)));
+            }
+
+            // 2) unread counts: every member except the sender, once per message id
+            RoomUnread room = unread.computeIfAbsent(ev.roomId, k -> new RoomUnread());
+            StringBuilder members = new StringBuilder();
+            for (Long uid : membership.memberIds(ev.roomId)) {
+                if (uid.equals(ev.senderId)) continue;
+                String id = String.valueOf(uid);
+                if (!members.isEmpty()) members.append(' ');
+                members.append(id);
+                room.distinct.add(id);
+            }
+            room.seenKeys.add(seenKey(ev.roomId, ev.messageId));
+            room.members.add(members.toString());
+        }
+        if (applied == 0) return;
+
+        int hincrs = 0;
+        for (RoomUnread room : unread.values()) hincrs += room.distinct.size();
+        String ttl = String.valueOf(SEEN_TTL.toSeconds());
         try {
-            // Extract roomId from routing key: room.<roomId>.message.created
-            String[] parts = rk.split("\\.");
-            Long roomId = Long.valueOf(parts[1]);
-
-            // 1) last message (store as JSON string for quick API reads)
-            String lastKey = "room:last:" + roomId;
-            redis.opsForValue().set(lastKey, payload);
-
-            // 2) unread counts: increment for all members except sender
-            // If you have a membership set in Redis:
-            String membersKey = "room:members:" + roomId;
-            var members = redis.opsForSet().members(membersKey);
-            Long senderId = extractSenderId(payload); // tiny parse; see helper below
-            if (members != null) {
-                for (String uid : members) {
-                    if (uid.equals(String.valueOf(senderId))) continue;
-                    redis.opsForHash().increment("room:unread:"+roomId, uid, 1);
+            redis.executePipelined((RedisCallback<Object>) connection -> {
+                StringRedisConnection c = (StringRedisConnection) connection;
+                for (Map.Entry<Long, Last> e : last.entrySet()) {
+                    c.set("room:last:" + e.getKey(), e.getValue().payload());
                 }
-            }
-        } catch (Exception e) {
-            log.warn("readmodel update failed: {}", e.toString());
-            // Let RabbitMQ redeliver or configure DLQ; idempotent anyway
+                for (Map.Entry<Long, RoomUnread> e : unread.entrySet()) {
+                    RoomUnread room = e.getValue();
+                    int numKeys = 1 + room.seenKeys.size();
+                    String[] keysAndArgs = new String[numKeys + 1 + room.members.size()];
+                    keysAndArgs[0] = "room:unread:" + e.getKey();
+                    for (int i = 0; i < room.seenKeys.size(); i++) keysAndArgs[1 + i] = room.seenKeys.get(i);
+                    keysAndArgs[numKeys] = ttl;
+                    for (int i = 0; i < room.members.size(); i++) keysAndArgs[numKeys + 1 + i] = room.members.get(i);
+                    c.eval(UNREAD_SCRIPT, ReturnType.INTEGER, numKeys, keysAndArgs);
+                }
+                return null;
+            });
+        } catch (RuntimeException e) {
+            log.warn("readmodel update failed for {} events: {}", applied, e.toString());
+            // Let RabbitMQ redeliver the batch or configure DLQ
             throw e;
         }
+
+        batchSize.record(applied);
+        increments.increment(hincrs);
     }
 
-    private Long extractSenderId(String json) {
-        // naive fast path (avoid full JSON deserialize)
-        // expects: ..."senderId":123,...
-        int i = json.indexOf("\"senderId\"");
-        if (i < 0) return -1L;
-        int c = json.indexOf(":", i);
-        int j = c+1;
-        while (j < json.length() && Character.isWhitespace(json.charAt(j))) j++;
-        int k = j;
-        while (k < json.length() && Character.isDigit(json.charAt(k))) k++;
-        return Long.parseLong(json.substring(j, k));
+    /** Hash-tagged with the room:unread key so both sit in one cluster slot, as a script needs. */
+    static String seenKey(long roomId, String messageId) {
+        return "readmodel:seen:{room:unread:" + roomId + "}:" + messageId;
     }
 }
@@ -0,0 +1,105 @@
+package com.om.Real_Time_Communication.presence;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Redis hash per user: presence:u:{userId} -> { deviceId: "online|appState|activeRoomId|lastSeenMs" }.
+ * The hash TTL is refreshed on every write so users whose nodes died disappear on their own.
+ * A device's field is removed when it disconnects; fields whose lastSeen is older than the TTL
+ * (devices on a node that died while the user stayed active elsewhere) are dropped on read.
+ */
+@Component
+@ConditionalOnProperty(name = "rtc.presence.store", havingValue = "redis")
+public class RedisPresenceStore implements PresenceStore {
+    private static final Logger log = LoggerFactory.getLogger(RedisPresenceStore.class);
+
+    private final StringRedisTemplate redis;
+    private final Duration ttl;
+
+    public RedisPresenceStore(StringRedisTemplate redis,
+                              @Value("${rtc.presence.ttl-ms:60000}") long ttlMs) {
+        this.redis = redis;
+        this.ttl = Duration.ofMillis(ttlMs);
+    }
+
+    private static String kUser(Long userId) { return "presence:u:" + userId; }
+
+    @Override
+    public void put(PresenceRegistry.Presence p) {
+        String key = kUser(p.getUserId());
+        String value = encode(p);
+        // HSET and PEXPIRE in one round trip
+        redis.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection c = (StringRedisConnection) connection;
+            c.hSet(key, p.getDeviceId(), value);
+            c.pExpire(key, ttl.toMillis());
+            return null;
+        });
+    }
+
+    @Override
+    public void remove(Long userId, String deviceId) {
+        redis.opsForHash().delete(kUser(userId), deviceId);
+    }
+
+    @Override
+    public List<PresenceRegistry.Presence> devices(Long userId) {
+        Map<Object, Object> raw = redis.opsForHash().entries(kUser(userId));
+        if (raw == null || raw.isEmpty()) {
+            return List.of();
+        }
+        long staleBefore = System.currentTimeMillis() - ttl.toMillis();
+        List<PresenceRegistry.Presence> out = new ArrayList<>(raw.size());
+        List<Object> stale = new ArrayList<>();
+        for (Map.Entry<Object, Object> e : raw.entrySet()) {
+            PresenceRegistry.Presence p = decode(userId, String.valueOf(e.getKey()), String.valueOf(e.getValue()));
+            if (p == null) continue;
+            if (p.getLastSeen().toEpochMilli() < staleBefore) {
+                stale.add(e.getKey());
+            } else {
+                out.add(p);
+            }
+        }
+        if (!stale.isEmpty()) {
+            redis.opsForHash().delete(kUser(userId), stale.toArray());
+        }
+        return out;
+    }
+
+    static String encode(PresenceRegistry.Presence p) {
+        return (p.isOnline() ? "1" : "0") + "|"
+                + (p.getAppState() == null ? "" : p.getAppState()) + "|"
+                + (p.getActiveRoomId() == null ? "" : p.getActiveRoomId()) + "|"
+                + p.getLastSeen().toEpochMilli();
+    }
+
+    static PresenceRegistry.Presence decode(Long userId, String deviceId, String value) {
+        String[] parts = value.split("\\|", -1);
+        if (parts.length != 4) {
+            log.warn("[PRESENCE] ignoring malformed entry user={} device={} value={}", userId, deviceId, value);
+            return null;
+        }
+        try {
+            Long roomId = parts[2].isEmpty() ? null : Long.valueOf(parts[2]);
+            Instant lastSeen = Instant.ofEpochMilli(Long.parseLong(parts[3]));
+            String appState = parts[1].isEmpty() ? null : parts[1];
+            return new PresenceRegistry.Presence(userId, deviceId, lastSeen, "1".equals(parts[0]), appState, roomId);
+        } catch (NumberFormatException ex) {
+            log.warn("[PRESENCE] ignoring malformed entry user={} device={} value={}", userId, deviceId, value);
+            return null;
+        }
+    }
+}
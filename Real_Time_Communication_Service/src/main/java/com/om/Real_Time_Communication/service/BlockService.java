@@ -1,23 +1,65 @@
 package com.om.Real_Time_Communication.service;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
 import com.om.Real_Time_Communication.Repository.UserBlockRepository;
 import com.om.Real_Time_Communication.models.BlockStatus;
 import com.om.Real_Time_Communication.models.UserBlock;
+import io.micrometer.common.lang.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.stereotype.Service;
 
+import java.time.Duration;
 import java.util.List;
 import java.util.Optional;
 
 @Service
 public class BlockService {
 
+    private static final Logger log = LoggerFactory.getLogger(BlockService.class);
+
     @Autowired
     private UserBlockRepository blockRepo;
 
+    @Autowired
+    private @Nullable StringRedisTemplate redis;
+
+    // Block state per unordered pair; consulted on every direct-room STOMP frame.
+    // Entries are validated against block:v:{pair}, which blockUser/unblockUser bump on whichever
+    // node made the change, the same way room member sets follow room:v:{id}. Without Redis there
+    // is no version to check, so entries only live for a short TTL.
+    private static final Duration PAIRS_TTL = Duration.ofMinutes(10);
+    private static final Duration PAIRS_TTL_UNVERSIONED = Duration.ofSeconds(5);
+    // outlives every local entry, so an expired counter can never make a stale entry look current
+    private static final Duration VERSION_TTL = Duration.ofDays(1);
+
+    private final Cache<String, Pair> blockedPairs = Caffeine.newBuilder()
+            .maximumSize(100_000)
+            .expireAfterWrite(PAIRS_TTL)
+            .build();
+
+    private record Pair(String version, long loadedAtMs, boolean blocked) {}
+
     public boolean isBlocked(String senderId, String receiverId) {
+        String key = pairKey(senderId, receiverId);
+        String version = currentVersion(key);
+        Pair cached = blockedPairs.getIfPresent(key);
+        if (cached != null) {
+            if (version != null && version.equals(cached.version())) {
+                return cached.blocked();
+            }
+            if (version == null && cached.version() == null
+                    && System.currentTimeMillis() - cached.loadedAtMs() < PAIRS_TTL_UNVERSIONED.toMillis()) {
+                return cached.blocked();
+            }
+        }
         List<UserBlock> block = blockRepo.findActiveBlockBetween(senderId, receiverId);
-        return !block.isEmpty(); // If any active block exists → blocked
+        boolean blocked = !block.isEmpty(); // If any active block exists → blocked
+        blockedPairs.put(key, new Pair(version, System.currentTimeMillis(), blocked));
+        return blocked;
     }
 
     public void blockUser(String blockerId, String blockedId) {
@@ -26,6 +68,7 @@ public class BlockService {
         if (existing.isPresent()) {
             UserBlock userBlock = existing.get();
             userBlock.setStatus(BlockStatus.BLOCKED);
+            blockRepo.save(userBlock);
         } else {
             UserBlock userBlock = new UserBlock();
             userBlock.setBlockerId(blockerId);
@@ -33,6 +76,7 @@ public class BlockService {
             userBlock.setStatus(BlockStatus.BLOCKED);
             blockRepo.save(userBlock);
         }
+        onBlockChanged(pairKey(blockerId, blockedId));
     }
 
     public void unblockUser(String blockerId, String blockedId) {
@@ -40,6 +84,44 @@ public class BlockService {
             block.setStatus(BlockStatus.UNBLOCKED);
             blockRepo.save(block);
         });
+        onBlockChanged(pairKey(blockerId, blockedId));
+    }
+
+    /** Drop this node's entry at once; other nodes see the bumped version on their next check. */
+    private void onBlockChanged(String key) {
+        blockedPairs.invalidate(key);
+        if (redis == null) {
+            return;
+        }
+        try {
+            String vKey = kBlockVersion(key);
+            redis.opsForValue().increment(vKey);
+            redis.expire(vKey, VERSION_TTL);
+        } catch (Exception ex) {
+            log.warn("block version bump failed pair={} err={}", key, ex.toString());
+        }
+    }
+
+    private String currentVersion(String key) {
+        if (redis == null) {
+            return null;
+        }
+        try {
+            String v = redis.opsForValue().get(kBlockVersion(key));
+            // a pair that never changed has no counter yet; treat it as version 0
+            return v == null ? "0" : v;
+        } catch (Exception ex) {
+            log.warn("block version lookup failed pair={} err={}", key, ex.toString());
+            return null;
+        }
+    }
+
+    private static String kBlockVersion(String key) { return "block:v:" + key; }
+
+    // findActiveBlockBetween is symmetric, so (a,b) and (b,a) share one entry
+    private static String pairKey(String a, String b) {
+        String x = String.valueOf(a), y = String.valueOf(b);
+        return x.compareTo(y) <= 0 ? x + ":" + y : y + ":" + x;
     }
 
 }
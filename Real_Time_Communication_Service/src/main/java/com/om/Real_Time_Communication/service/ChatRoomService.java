@@ -4,6 +4,9 @@ import com.om.Real_Time_Communication.Repository.ChatRoomParticipantRepository;
 import com.om.Real_Time_Communication.client.UserServiceClient;
 import com.om.Real_Time_Communication.dto.*;
 import com.om.Real_Time_Communication.models.*;
+import com.om.Real_Time_Communication.utility.AclService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 import com.om.Real_Time_Communication.Repository.ChatRoomRepository;
@@ -21,6 +24,8 @@ import java.util.*;
 @Service
 public class ChatRoomService {
 
+    private static final Logger log = LoggerFactory.getLogger(ChatRoomService.class);
+
     @Autowired
     private ChatRoomRepository chatRoomRepository;
 
@@ -30,6 +35,12 @@ public class ChatRoomService {
     @Autowired
     private UserServiceClient userServiceClient;
 
+    @Autowired(required = false)
+    private AclService aclService;
+
+    @Autowired(required = false)
+    private RoomMembershipService membershipService;
+
     @PersistenceContext
     private EntityManager entityManager;
 
@@ -87,6 +98,7 @@ public class ChatRoomService {
 
         }
 
+        membershipChanged(savedRoom.getId());
         return savedRoom;
     }
 
@@ -137,6 +149,7 @@ public class ChatRoomService {
         p2.setRole(Role.MEMBER);
 
         participantRepository.saveAll(List.of(p1, p2));
+        membershipChanged(saved.getId());
         return saved;
     }
     
@@ -196,6 +209,7 @@ public class ChatRoomService {
 
     public void leaveGroup(Long userId, Long roomId) {
         participantRepository.deleteByUserIdAndChatRoom(userId, roomId);
+        membershipChanged(roomId);
     }
 
     public void removeMember(String userId, Long userIdToRemove, Long roomId) throws AccessDeniedException {
@@ -214,6 +228,7 @@ public class ChatRoomService {
 
         // Same admin check logic
         participantRepository.deleteByUserIdAndChatRoom(userIdToRemove, roomId);
+        membershipChanged(roomId);
     }
 
     public void addParticipantToGroup(String userId, Long userToAdd, Long chatRoomId) throws AccessDeniedException {
@@ -239,6 +254,7 @@ public class ChatRoomService {
         participant.setJoinedAt(LocalDateTime.now());
         participant.setRole(Role.MEMBER);
         participantRepository.save(participant);
+        membershipChanged(chatRoomId);
     }
 
     public void toggleAllowMemberstoAdd(String adminId, Long roomId, boolean allow) throws AccessDeniedException {
@@ -259,6 +275,25 @@ public class ChatRoomService {
 
 
 
+    /** Bump room:v:{id} so every node drops its cached ACL and member set for the room. */
+    private void membershipChanged(Long roomId) {
+        if (roomId == null) {
+            return;
+        }
+        if (membershipService != null) {
+            // this node stops serving the old member set (and the STOMP room descriptor built on it) at once
+            membershipService.invalidateMembers(roomId);
+        }
+        if (aclService == null) {
+            return;
+        }
+        try {
+            aclService.onMembershipChanged(roomId);
+        } catch (Exception ex) {
+            log.warn("membership version bump failed room={} err={}", roomId, ex.toString());
+        }
+    }
+
     public boolean canPublish(Long userId, Long roomId) {
         // basic membership check; extend with roles/mute/ban as needed
         return participantRepository.existsByRoomIdAndUserId(roomId, userId);
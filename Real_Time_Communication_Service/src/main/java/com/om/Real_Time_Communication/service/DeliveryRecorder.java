@@ -0,0 +1,116 @@
+package com.om.Real_Time_Communication.service;
+
+import com.om.Real_Time_Communication.models.MessageDeliveryStatus;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Set-based writes for message_delivery rows.
+ * PENDING rows for all recipients of a message go out as one JDBC batch that relies on
+ * uq_message_delivery_msg_user instead of a pre-read; SENT_TO_WS transitions are queued
+ * and flushed in coalesced batches off the send path.
+ */
+@Component
+public class DeliveryRecorder {
+    private static final Logger log = LoggerFactory.getLogger(DeliveryRecorder.class);
+
+    private static final int FLUSH_BATCH = 500;
+    // SENT_TO_WS is advisory (replay treats it like PENDING), so under a DB outage we shed instead of growing
+    private static final int MAX_QUEUED_TRANSITIONS = 50_000;
+
+    private static final String INSERT_PENDING = """
+            INSERT INTO message_delivery (msg_id, user_id, room_id, status, created_at, updated_at)
+            VALUES (?, ?, ?, ?, ?, ?)
+            ON CONFLICT (msg_id, user_id) DO NOTHING
+            """;
+
+    private static final String MARK_SENT = """
+            UPDATE message_delivery
+               SET status = ?, updated_at = ?
+             WHERE msg_id = ? AND user_id = ? AND status = ?
+            """;
+
+    private final JdbcTemplate jdbc;
+    private final ConcurrentLinkedQueue<SentTransition> pendingSent = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger queued = new AtomicInteger();
+
+    private record SentTransition(String msgId, Long userId) {}
+
+    public DeliveryRecorder(JdbcTemplate jdbc) {
+        this.jdbc = jdbc;
+    }
+
+    /** Insert a PENDING row per recipient in one round-trip; existing rows are left untouched. */
+    public void recordPending(String msgId, Long roomId, Collection<Long> recipients) {
+        if (msgId == null || recipients == null || recipients.isEmpty()) {
+            return;
+        }
+        Timestamp now = Timestamp.from(Instant.now());
+        List<Object[]> rows = new ArrayList<>(recipients.size());
+        for (Long userId : recipients) {
+            if (userId == null) continue;
+            rows.add(new Object[]{msgId, userId, roomId, MessageDeliveryStatus.PENDING.name(), now, now});
+        }
+        if (!rows.isEmpty()) {
+            jdbc.batchUpdate(INSERT_PENDING, rows);
+        }
+    }
+
+    /** Queue PENDING -> SENT_TO_WS for the given recipients; applied by {@link #flush()}. */
+    public void markSent(String msgId, Collection<Long> userIds) {
+        if (msgId == null || userIds == null) {
+            return;
+        }
+        for (Long userId : userIds) {
+            if (userId == null) continue;
+            if (queued.incrementAndGet() > MAX_QUEUED_TRANSITIONS) {
+                queued.decrementAndGet();
+                log.warn("[DELIVERY] transition queue full; dropping SENT_TO_WS msgId={} user={}", msgId, userId);
+                continue;
+            }
+            pendingSent.offer(new SentTransition(msgId, userId));
+        }
+    }
+
+    @Scheduled(fixedDelay = 200L)
+    public void flush() {
+        while (!pendingSent.isEmpty()) {
+            List<Object[]> batch = new ArrayList<>(FLUSH_BATCH);
+            Timestamp now = Timestamp.from(Instant.now());
+            SentTransition t;
+            while (batch.size() < FLUSH_BATCH && (t = pendingSent.poll()) != null) {
+                queued.decrementAndGet();
+                batch.add(new Object[]{
+                        MessageDeliveryStatus.SENT_TO_WS.name(), now, t.msgId(), t.userId(),
+                        MessageDeliveryStatus.PENDING.name()
+                });
+            }
+            if (batch.isEmpty()) {
+                return;
+            }
+            try {
+                jdbc.batchUpdate(MARK_SENT, batch);
+            } catch (Exception ex) {
+                log.warn("[DELIVERY] SENT_TO_WS flush failed size={} err={}", batch.size(), ex.toString());
+                return;
+            }
+        }
+    }
+
+    @PreDestroy
+    public void drainOnShutdown() {
+        flush();
+    }
+}
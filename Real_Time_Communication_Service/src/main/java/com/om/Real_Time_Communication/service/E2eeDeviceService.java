@@ -222,7 +222,9 @@ public class E2eeDeviceService {
         if (redis == null) {
             return;
         }
-        redis.delete("user:rooms:" + userId + ":" + deviceId);
+        // keys are generation-scoped, see RoomMembershipService.kUserRooms
+        String gen = redis.opsForValue().get("user:rooms:gen:" + userId);
+        redis.delete("user:rooms:" + userId + ":" + (gen == null ? "0" : gen) + ":" + deviceId);
     }
     
     private static void require(boolean cond, String msg) {
@@ -1,134 +1,177 @@
 package com.om.Real_Time_Communication.service;
 
-import com.om.Real_Time_Communication.Repository.ChatMessageRepository;
 import com.om.Real_Time_Communication.Repository.ChatRoomRepository;
 import com.om.Real_Time_Communication.Repository.MessageDeliveryRepository;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.om.Real_Time_Communication.dto.PendingReplayRow;
+import com.om.Real_Time_Communication.dto.RoomEvent;
 import com.om.Real_Time_Communication.models.ChatMessage;
 import com.om.Real_Time_Communication.models.ChatRoom;
-import com.om.Real_Time_Communication.models.MessageDelivery;
 import com.om.Real_Time_Communication.models.MessageDeliveryStatus;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.messaging.simp.SimpMessagingTemplate;
 import org.springframework.stereotype.Service;
 
 import java.time.Instant;
 import java.util.*;
-import java.util.stream.Collectors;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 
 @Service
 public class InboxDeliveryService {
 
     private static final Logger log = LoggerFactory.getLogger(InboxDeliveryService.class);
 
+    private static final int REPLAY_PAGE_SIZE = 200;
+    private static final Set<MessageDeliveryStatus> REPLAY_STATUSES = EnumSet.of(
+            MessageDeliveryStatus.PENDING,
+            MessageDeliveryStatus.SENT_TO_WS
+    );
+
     private final MessageDeliveryRepository deliveryRepository;
     private final ChatRoomRepository chatRoomRepository;
-    private final ChatMessageRepository chatMessageRepository;
     private final RoomMembershipService membershipService;
     private final SimpMessagingTemplate messagingTemplate;
+    private final DeliveryRecorder deliveryRecorder;
+    private final ObjectMapper objectMapper;
 
+    private final DistributionSummary framesPerMessage;
 
     public InboxDeliveryService(
             MessageDeliveryRepository deliveryRepository,
             ChatRoomRepository chatRoomRepository,
-            ChatMessageRepository chatMessageRepository,
             RoomMembershipService membershipService,
-            SimpMessagingTemplate messagingTemplate
+            SimpMessagingTemplate messagingTemplate,
+            DeliveryRecorder deliveryRecorder,
+            ObjectMapper objectMapper,
+            MeterRegistry meterRegistry
     ) {
         this.deliveryRepository = deliveryRepository;
         this.chatRoomRepository = chatRoomRepository;
-        this.chatMessageRepository = chatMessageRepository;
         this.membershipService = membershipService;
         this.messagingTemplate = messagingTemplate;
-
+        this.deliveryRecorder = deliveryRecorder;
+        this.objectMapper = objectMapper;
+        this.framesPerMessage = DistributionSummary.builder("rtc.inbox.frames.per.message")
+                .description("/queue/inbox frames produced by the fan-out of one message")
+                .register(meterRegistry);
     }
 
-    public void recordAndDispatch(ChatRoom room, ChatMessage saved, Map<String, Object> baseEvent, List<Long> members) {
+    /**
+     * The one fan-out for a newly persisted message: the recipient set is computed once,
+     * PENDING rows go out as one batch and every recipient gets exactly one /queue/inbox frame.
+     * Frames are spliced from the already-serialized {@link RoomEvent}; in a group room every
+     * recipient shares the same bytes.
+     *
+     * @return number of frames handed to the broker
+     */
+    public int deliver(ChatRoom room, ChatMessage saved, List<Long> members, RoomEvent event) {
         if (room == null || saved == null || members == null) {
-            return;
+            return 0;
         }
 
+        List<Long> recipients = new ArrayList<>(members.size());
         for (Long memberId : members) {
             if (memberId == null || memberId.equals(saved.getSenderId())) {
                 continue; // skip author
             }
+            recipients.add(memberId);
+        }
+        if (recipients.isEmpty()) {
+            return 0;
+        }
 
-            Long peerId = resolvePeerId(room, members, memberId);
-            Map<String, Object> inboxPayload = buildInboxPayload(room, saved, baseEvent, peerId);
-
-            MessageDelivery delivery = deliveryRepository.findByMsgIdAndUserId(saved.getMessageId(), memberId)
-                    .orElseGet(() -> createPending(saved, room, memberId));
+        // One batch for every recipient's PENDING row; duplicates are absorbed by the unique key
+        deliveryRecorder.recordPending(saved.getMessageId(), room.getId(), recipients);
 
-            boolean liveSent = sendIfOnline(memberId, inboxPayload);
-            if (liveSent) {
-                delivery.setStatus(MessageDeliveryStatus.SENT_TO_WS);
-                deliveryRepository.save(delivery);
+        RoomEvent ev = event != null ? event : RoomEvent.of(saved, objectMapper);
+        byte[] sharedFrame = null;
+        Supplier<byte[]> sharedCbor = null;
+        List<Long> sent = new ArrayList<>(recipients.size());
+        for (Long memberId : recipients) {
+            Long peerId = resolvePeerId(room, members, memberId);
+            byte[] frame;
+            Supplier<byte[]> cbor;
+            if (peerId == null) {
+                if (sharedFrame == null) {
+                    sharedFrame = ev.inboxFrame(room, null);
+                    sharedCbor = ev.cborInboxFrame(room, null);
+                }
+                frame = sharedFrame;
+                cbor = sharedCbor;
+            } else {
+                frame = ev.inboxFrame(room, peerId);
+                cbor = ev.cborInboxFrame(room, peerId);
+            }
+            if (sendIfOnline(memberId, frame, cbor, saved.getMessageId(), room.getRoomId())) {
+                sent.add(memberId);
             }
         }
+        deliveryRecorder.markSent(saved.getMessageId(), sent);
+        framesPerMessage.record(sent.size());
+        return sent.size();
     }
 
-    private MessageDelivery createPending(ChatMessage saved, ChatRoom room, Long memberId) {
-        MessageDelivery delivery = new MessageDelivery();
-        delivery.setMsgId(saved.getMessageId());
-        delivery.setUserId(memberId);
-        delivery.setRoomId(room.getId());
-        delivery.setStatus(MessageDeliveryStatus.PENDING);
-        return deliveryRepository.save(delivery);
-    }
-
-    private boolean sendIfOnline(Long memberId, Map<String, Object> payload) {
+    private boolean sendIfOnline(Long memberId, byte[] frame, Supplier<byte[]> cbor, String msgId, String roomKey) {
         try {
-            log.info("[INBOX] send to user={} dest=/queue/inbox msgId={} roomKey={}",
-                    memberId, payload.get("msgId"), payload.get("roomKey"));
-            messagingTemplate.convertAndSendToUser(
-                    String.valueOf(memberId),
-                    "/queue/inbox",
-                    payload
+            log.info("[INBOX] send to user={} dest=/queue/inbox msgId={} roomKey={}", memberId, msgId, roomKey);
+            messagingTemplate.send(
+                    messagingTemplate.getUserDestinationPrefix() + memberId + "/queue/inbox",
+                    RoomEvent.jsonMessage(frame, cbor)
             );
             return true;
         } catch (Exception ex) {
-            log.error("[INBOX][ERROR] failed to send to user={} msgId={} err={}",
-                    memberId, payload.get("msgId"), ex.toString());
+            log.error("[INBOX][ERROR] failed to send to user={} msgId={} err={}", memberId, msgId, ex.toString());
             return false;
         }
     }
 
-    public List<Map<String, Object>> pendingMessages(Long userId, Instant since) {
-        Collection<MessageDeliveryStatus> statuses = EnumSet.of(
-                MessageDeliveryStatus.PENDING,
-                MessageDeliveryStatus.SENT_TO_WS
-        );
-
-        List<MessageDelivery> deliveries = since == null
-                ? deliveryRepository.findByUserIdAndStatusInOrderByCreatedAtAsc(userId, statuses)
-                : deliveryRepository.findByUserIdAndStatusInAndCreatedAtAfterOrderByCreatedAtAsc(userId, statuses, since);
-
-        List<Map<String, Object>> payloads = new ArrayList<>();
-        for (MessageDelivery d : deliveries) {
-            ChatRoom room = d.getRoomId() != null
-                    ? chatRoomRepository.findById(d.getRoomId()).orElse(null)
-                    : null;
-            if (room == null) {
-                continue;
+    /**
+     * Replays a user's undelivered messages page by page, oldest first.
+     * Each page is one joined read (delivery + message + room) followed by one bulk status update,
+     * so the backlog is never held in memory as a whole.
+     */
+    public void replayPending(Long userId, Instant since, Consumer<List<Map<String, Object>>> sink) {
+        Instant cursorTs = since != null ? since : Instant.EPOCH;
+        // since is exclusive: with MAX_VALUE no row at exactly `since` passes the keyset predicate
+        Long cursorId = since != null ? Long.MAX_VALUE : 0L;
+        Map<Long, List<Long>> membersByRoom = new HashMap<>();
+
+        while (true) {
+            List<PendingReplayRow> rows = deliveryRepository.pendingReplayPage(
+                    userId, REPLAY_STATUSES, cursorTs, cursorId, PageRequest.of(0, REPLAY_PAGE_SIZE));
+            if (rows.isEmpty()) {
+                return;
             }
-            ChatMessage msg = chatMessageRepository.findByRoomIdAndMessageId(room.getId(), d.getMsgId())
-                    .orElse(null);
-            if (msg == null) {
-                continue;
+
+            List<Map<String, Object>> page = new ArrayList<>(rows.size());
+            List<Long> deliveryIds = new ArrayList<>(rows.size());
+            for (PendingReplayRow row : rows) {
+                ChatRoom room = row.getRoom();
+                Long peerId = null;
+                if (!Boolean.TRUE.equals(room.getGroup())) {
+                    List<Long> members = membersByRoom.computeIfAbsent(room.getId(), membershipService::memberIds);
+                    peerId = resolvePeerId(room, members, userId);
+                }
+                page.add(RoomEvent.of(row.getMessage(), objectMapper).inboxPayload(room, peerId));
+                deliveryIds.add(row.getDeliveryId());
+            }
+
+            sink.accept(page);
+            deliveryRepository.transitionStatus(deliveryIds,
+                    MessageDeliveryStatus.PENDING, MessageDeliveryStatus.SENT_TO_WS, Instant.now());
+
+            if (rows.size() < REPLAY_PAGE_SIZE) {
+                return;
             }
-            List<Long> members = membershipService.memberIds(room.getId());
-            Long peerId = resolvePeerId(room, members, userId);
-            Map<String, Object> base = toRoomEvent(msg);
-            Map<String, Object> payload = buildInboxPayload(room, msg, base, peerId);
-            payloads.add(payload);
-
-            d.setStatus(MessageDeliveryStatus.SENT_TO_WS);
-            deliveryRepository.save(d);
+            PendingReplayRow last = rows.get(rows.size() - 1);
+            cursorTs = last.getCreatedAt();
+            cursorId = last.getDeliveryId();
         }
-        return payloads.stream()
-                .sorted(Comparator.comparing((Map<String, Object> p) ->
-                        (Instant) p.getOrDefault("createdAt", Instant.EPOCH)))
-                .collect(Collectors.toList());
     }
 
     public void markDelivered(String msgId, Long userId, String deviceId, boolean read) {
@@ -149,28 +192,18 @@ public class InboxDeliveryService {
         if (saved == null || saved.getRoomId() == null) {
             return;
         }
+        sendInboxEvent(saved, membershipService.memberIds(saved.getRoomId()), null);
+    }
 
-        chatRoomRepository.findById(saved.getRoomId()).ifPresent(room -> {
-            List<Long> members = membershipService.memberIds(room.getId());
-            Map<String, Object> baseEvent = toRoomEvent(saved);
-
-            for (Long memberId : members) {
-                if (memberId == null || memberId.equals(saved.getSenderId())) {
-                    continue;
-                }
-
-                Long peerId = resolvePeerId(room, members, memberId);
-                Map<String, Object> payload = buildInboxPayload(room, saved, baseEvent, peerId);
-                boolean sent = sendIfOnline(memberId, payload);
-                if (sent) {
-                    deliveryRepository.findByMsgIdAndUserId(saved.getMessageId(), memberId)
-                            .ifPresent(delivery -> {
-                                delivery.setStatus(MessageDeliveryStatus.SENT_TO_WS);
-                                deliveryRepository.save(delivery);
-                            });
-                }
-            }
-        });
+    /**
+     * Same as {@link #sendInboxEvent(ChatMessage)} for callers that already hold the member list
+     * and, optionally, the serialized event.
+     */
+    public void sendInboxEvent(ChatMessage saved, List<Long> members, RoomEvent event) {
+        if (saved == null || saved.getRoomId() == null) {
+            return;
+        }
+        chatRoomRepository.findById(saved.getRoomId()).ifPresent(room -> deliver(room, saved, members, event));
     }
 
     private Long resolvePeerId(ChatRoom room, List<Long> members, Long recipientId) {
@@ -182,43 +215,4 @@ public class InboxDeliveryService {
         }
         return members.stream().filter(id -> !id.equals(recipientId)).findFirst().orElse(null);
     }
-
-    private Map<String, Object> buildInboxPayload(ChatRoom room, ChatMessage saved, Map<String, Object> baseEvent, Long peerId) {
-        Map<String, Object> inboxEvent = new HashMap<>(baseEvent == null ? Collections.emptyMap() : baseEvent);
-        inboxEvent.put("type", "message");
-        inboxEvent.put("roomKey", room.getRoomId());
-        inboxEvent.put("roomName", room.getName());
-        inboxEvent.put("roomImage", room.getImageUrl());
-        inboxEvent.put("roomDbId", room.getId());
-        inboxEvent.put("msgId", saved.getMessageId());
-        inboxEvent.put("messageId", saved.getMessageId());
-        inboxEvent.put("senderId", saved.getSenderId());
-        inboxEvent.put("createdAt", saved.getServerTs());
-        if (peerId != null) {
-            inboxEvent.put("peerId", peerId);
-        }
-        return inboxEvent;
-    }
-
-    private Map<String, Object> toRoomEvent(ChatMessage m) {
-        Map<String, Object> e = new HashMap<>();
-        e.put("roomId", m.getRoomId());
-        e.put("messageId", m.getMessageId());
-        e.put("senderId", m.getSenderId());
-        e.put("type", m.getType().name());
-        e.put("serverTs", m.getServerTs());
-        e.put("e2ee", m.isE2ee());
-        if (m.isE2ee()) {
-            e.put("e2eeVer", m.getE2eeVer());
-            e.put("algo", m.getAlgo());
-            e.put("aad", m.getAad());
-            e.put("iv", m.getIv());
-            e.put("ciphertext", m.getCiphertext());
-            e.put("keyRef", m.getKeyRef());
-            e.put("senderDeviceId", m.getSenderDeviceId());
-        } else {
-            e.put("body", m.getBody());
-        }
-        return e;
-    }
 }
@@ -0,0 +1,279 @@
+package com.om.Real_Time_Communication.service;
+
+import com.om.Real_Time_Communication.dto.MessageCreated;
+import jakarta.annotation.PreDestroy;
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.LongPoint;
+import org.apache.lucene.document.NumericDocValuesField;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.document.TextField;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.FieldDoc;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.MatchAllDocsQuery;
+import org.apache.lucene.search.PrefixQuery;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.SearcherManager;
+import org.apache.lucene.search.Sort;
+import org.apache.lucene.search.SortField;
+import org.apache.lucene.search.StoredFields;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.FSDirectory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.LongSupplier;
+
+/**
+ * Per-pod Lucene index of plaintext message bodies for in-room search.
+ * Documents are sorted in the index by room, then newest first, so each room's postings sit
+ * together and a room filter reads one contiguous slice. A query is a single index lookup:
+ * the room and visibility cutoff are filters, the text terms are ANDed with the last term
+ * matched as a prefix, and hits rank by relevance then recency. E2EE messages are never indexed.
+ * Writes and deletes become searchable on the next {@link #refresh()} (about a second).
+ * {@code rtc.search.local.dir} must be on a volume that survives restarts: on an ephemeral
+ * directory (the tmpdir default) every start backfills the whole retention window.
+ */
+@Component
+public class LocalMessageIndex {
+    private static final Logger log = LoggerFactory.getLogger(LocalMessageIndex.class);
+
+    static final int MAX_BODY_CHARS = 2000;
+
+    private static final String F_ID = "mid";
+    private static final String F_ROOM = "room";
+    private static final String F_TS = "ts";
+    private static final String F_BODY = "body";
+
+    private static final Sort INDEX_SORT = new Sort(
+            new SortField(F_ROOM, SortField.Type.LONG),
+            new SortField(F_TS, SortField.Type.LONG, true));
+    private static final Sort RANKED = new Sort(SortField.FIELD_SCORE, new SortField(F_TS, SortField.Type.LONG, true));
+    private static final Sort NEWEST = new Sort(new SortField(F_TS, SortField.Type.LONG, true));
+
+    private final Directory dir;
+    private final Analyzer analyzer = new StandardAnalyzer();
+    private final IndexWriter writer;
+    private final SearcherManager searchers;
+    private final Duration retention;
+    private final LongSupplier clock;
+    private final long newestAtOpenMs;
+    private volatile boolean ready;
+
+    @Autowired
+    public LocalMessageIndex(@Value("${rtc.search.local.dir:${java.io.tmpdir}/rtc-search}") String path,
+                             @Value("${rtc.search.local.retention-days:30}") int retentionDays) throws IOException {
+        this(FSDirectory.open(Path.of(path)), Duration.ofDays(retentionDays), System::currentTimeMillis);
+        if (Path.of(path).toAbsolutePath().startsWith(Path.of(System.getProperty("java.io.tmpdir")).toAbsolutePath())) {
+            log.warn("[SEARCH] local index at {} is under java.io.tmpdir; set rtc.search.local.dir to a persistent "
+                    + "volume or every restart backfills {} days of messages", path, retentionDays);
+        }
+    }
+
+    public LocalMessageIndex(Directory dir, Duration retention, LongSupplier clock) throws IOException {
+        this.dir = dir;
+        this.retention = retention;
+        this.clock = clock;
+        IndexWriterConfig iwc = new IndexWriterConfig(analyzer)
+                .setOpenMode(IndexWriterConfig.OpenMode.CREATE_OR_APPEND)
+                .setIndexSort(INDEX_SORT);
+        this.writer = new IndexWriter(dir, iwc);
+        this.searchers = new SearcherManager(writer, null);
+        this.newestAtOpenMs = newestIndexedMs();
+    }
+
+    /** Adds or replaces the message; a redelivered or backfilled event overwrites by message id. */
+    public void index(MessageCreated ev) {
+        if (ev == null || ev.e2ee || ev.messageId == null || ev.roomId == null
+                || ev.body == null || ev.body.isBlank()) {
+            return;
+        }
+        long ts = ev.serverTs == null ? clock.getAsLong() : ev.serverTs.toEpochMilli();
+        index(ev.roomId, ev.messageId, ts, ev.body);
+    }
+
+    public void index(long roomId, String messageId, long serverTsMs, String body) {
+        String text = body.length() > MAX_BODY_CHARS ? body.substring(0, MAX_BODY_CHARS) : body;
+        Document doc = new Document();
+        doc.add(new StringField(F_ID, messageId, Field.Store.YES));
+        doc.add(new LongPoint(F_ROOM, roomId));
+        doc.add(new NumericDocValuesField(F_ROOM, roomId));
+        doc.add(new LongPoint(F_TS, serverTsMs));
+        doc.add(new NumericDocValuesField(F_TS, serverTsMs));
+        doc.add(new TextField(F_BODY, text, Field.Store.YES));
+        try {
+            writer.updateDocument(new Term(F_ID, messageId), doc);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /** Removes the message, e.g. after delete-for-everyone; unknown ids are a no-op. */
+    public void delete(String messageId) {
+        if (messageId == null) return;
+        try {
+            writer.deleteDocuments(new Term(F_ID, messageId));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Messages in the room sent strictly after {@code cutoff} that contain every query term
+     * (the last one as a prefix). A blank query returns the newest visible messages.
+     */
+    public List<SearchService.RecentHit> search(Long roomId, String query, int limit, Instant cutoff) {
+        BooleanQuery.Builder q = new BooleanQuery.Builder()
+                .add(LongPoint.newExactQuery(F_ROOM, roomId), BooleanClause.Occur.FILTER);
+        if (cutoff != null) {
+            q.add(LongPoint.newRangeQuery(F_TS, Math.addExact(cutoff.toEpochMilli(), 1), Long.MAX_VALUE),
+                    BooleanClause.Occur.FILTER);
+        }
+        List<String> terms = terms(query);
+        if (terms.isEmpty() && query != null && !query.isBlank()) {
+            return List.of(); // only punctuation/stop words: nothing to match on
+        }
+        for (int i = 0; i < terms.size(); i++) {
+            Term t = new Term(F_BODY, terms.get(i));
+            q.add(i == terms.size() - 1 ? new PrefixQuery(t) : new TermQuery(t), BooleanClause.Occur.MUST);
+        }
+        if (terms.isEmpty()) {
+            q.add(new MatchAllDocsQuery(), BooleanClause.Occur.MUST);
+        }
+
+        int n = Math.max(1, limit);
+        IndexSearcher searcher;
+        try {
+            searcher = searchers.acquire();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        try {
+            TopDocs top = searcher.search(q.build(), n, terms.isEmpty() ? NEWEST : RANKED);
+            StoredFields stored = searcher.storedFields();
+            List<SearchService.RecentHit> out = new ArrayList<>(top.scoreDocs.length);
+            for (ScoreDoc sd : top.scoreDocs) {
+                Document d = stored.document(sd.doc);
+                out.add(new SearchService.RecentHit(roomId, d.get(F_ID), d.get(F_BODY)));
+            }
+            return out;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            try {
+                searchers.release(searcher);
+            } catch (IOException e) {
+                log.warn("[SEARCH] releasing local searcher failed: {}", e.toString());
+            }
+        }
+    }
+
+    /** Newest serverTs that was already on disk when the index opened; backfill resumes from here. */
+    public long newestAtOpenMs() {
+        return newestAtOpenMs;
+    }
+
+    public Duration retention() {
+        return retention;
+    }
+
+    /** True once backfill has caught up; until then in-room search uses the Redis recents. */
+    public boolean isReady() {
+        return ready;
+    }
+
+    public void markReady() {
+        ready = true;
+    }
+
+    @Scheduled(fixedDelay = 1000)
+    public void refresh() {
+        try {
+            searchers.maybeRefresh();
+        } catch (IOException e) {
+            log.warn("[SEARCH] local index refresh failed: {}", e.toString());
+        }
+    }
+
+    @Scheduled(fixedDelay = 30_000)
+    public void commit() {
+        try {
+            if (writer.hasUncommittedChanges()) {
+                writer.commit();
+            }
+        } catch (IOException e) {
+            log.warn("[SEARCH] local index commit failed: {}", e.toString());
+        }
+    }
+
+    @Scheduled(fixedDelay = 3_600_000)
+    public void purgeExpired() {
+        long before = clock.getAsLong() - retention.toMillis();
+        try {
+            writer.deleteDocuments(LongPoint.newRangeQuery(F_TS, Long.MIN_VALUE, before));
+        } catch (IOException e) {
+            log.warn("[SEARCH] local index purge failed: {}", e.toString());
+        }
+    }
+
+    @PreDestroy
+    public void close() {
+        try {
+            searchers.close();
+            writer.close(); // commits pending changes
+            dir.close();
+        } catch (IOException e) {
+            log.warn("[SEARCH] closing local index failed: {}", e.toString());
+        }
+    }
+
+    private long newestIndexedMs() throws IOException {
+        IndexSearcher searcher = searchers.acquire();
+        try {
+            TopDocs top = searcher.search(new MatchAllDocsQuery(), 1, NEWEST);
+            if (top.scoreDocs.length == 0) return 0L;
+            Object[] sortValues = ((FieldDoc) top.scoreDocs[0]).fields;
+            return (Long) sortValues[0];
+        } finally {
+            searchers.release(searcher);
+        }
+    }
+
+    private List<String> terms(String query) {
+        List<String> out = new ArrayList<>();
+        if (query == null || query.isBlank()) return out;
+        try (TokenStream ts = analyzer.tokenStream(F_BODY, query)) {
+            CharTermAttribute term = ts.addAttribute(CharTermAttribute.class);
+            ts.reset();
+            while (ts.incrementToken()) {
+                out.add(term.toString());
+            }
+            ts.end();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return out;
+    }
+}
@@ -1,17 +1,23 @@
 package com.om.Real_Time_Communication.service;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
 import com.om.Real_Time_Communication.Repository.*;
+import com.om.Real_Time_Communication.config.BinaryEnvelopeInterceptor;
 import com.om.Real_Time_Communication.dto.ChatSendDto;
 import com.om.Real_Time_Communication.dto.EventMessage;
-import com.om.Real_Time_Communication.dto.MessageCreated;
+import com.om.Real_Time_Communication.dto.MessageDeleted;
 import com.om.Real_Time_Communication.dto.MessageDto;
+import com.om.Real_Time_Communication.dto.RoomEvent;
 import com.om.Real_Time_Communication.models.*;
 import com.om.Real_Time_Communication.utility.IdValidators;
 import com.om.Real_Time_Communication.security.SessionRegistry;
 import com.om.Real_Time_Communication.presence.PresenceRegistry;
 import jakarta.transaction.Transactional;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.messaging.simp.SimpMessagingTemplate;
 import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
@@ -42,6 +48,15 @@ public class MessageService {
     @Autowired
     private SimpMessagingTemplate messagingTemplate;
 
+    @Value("${rtc.ws.cbor.enabled:true}")
+    private boolean cborFrames = true;
+
+    // identity-keyed (weakKeys): a message mutated after save is a new encoding via broadcastMessageUpdate
+    private final Cache<ChatMessage, RoomEvent> roomEvents = Caffeine.newBuilder()
+            .weakKeys()
+            .maximumSize(10_000)
+            .build();
+
     @Autowired
     private MessageRepository messageRepository;
 
@@ -170,19 +185,22 @@ public class MessageService {
                     .orElseThrow(() -> new RuntimeException("Duplicate detected but message not found"));
         }
 
-        if (membership != null) {
-            java.util.List<Long> participants = membership.memberIds(roomId);
-            for (Long participantId : participants) {
-                if (participantId != null) {
-                    membership.evictUserRooms(participantId);
-                }
-            }
+        // 5b) Serialize once: the outbox row, the room topic and every inbox frame share these bytes
+        RoomEvent event = roomEvent(saved);
+
+        // 5c) MessageCreated goes to the outbox in the same transaction; OutboxPublisher relays it
+        outboxRepo.save(messageCreatedEvent(saved, event));
+
+        // One member snapshot for cache eviction, push and inbox fan-out
+        List<Long> members = membership != null ? membership.memberIds(roomId) : null;
+        if (members != null) {
+            membership.evictUserRooms(members);
         }
 
         // 6) Fire notification to other members (don’t fail the write if notify breaks)
         try {
-            if (eventPublisher != null && membership != null) {
-                java.util.List<Long> recipients = new java.util.ArrayList<>(membership.memberIds(roomId));
+            if (eventPublisher != null && members != null) {
+                java.util.List<Long> recipients = new java.util.ArrayList<>(members);
                 recipients.removeIf(id -> id.equals(senderId)); // exclude author
 
                 java.util.List<Long> pushRecipients = recipients.stream()
@@ -211,10 +229,37 @@ public class MessageService {
             org.slf4j.LoggerFactory.getLogger(getClass())
                     .warn("notify failure room={} msg={} err={}", roomId, dto.getMessageId(), notifyEx.toString());
         }
-        inboxDeliveryService.sendInboxEvent(saved);
+        if (members != null) {
+            inboxDeliveryService.sendInboxEvent(saved, members, event);
+        } else {
+            inboxDeliveryService.sendInboxEvent(saved);
+        }
         return saved;
     }
 
+    private OutboxEvent messageCreatedEvent(ChatMessage saved, RoomEvent event) {
+        OutboxEvent out = new OutboxEvent();
+        out.setAggregateType("ChatRoom");
+        out.setAggregateId(saved.getRoomId());
+        out.setEventType("MessageCreated");
+        // the room frame is a superset of MessageCreated; consumers ignore the extra flags
+        out.setPayload(new String(event.roomFrame(), StandardCharsets.UTF_8));
+        return out;
+    }
+
+    private OutboxEvent messageDeletedEvent(ChatMessage message) {
+        OutboxEvent out = new OutboxEvent();
+        out.setAggregateType("ChatRoom");
+        out.setAggregateId(message.getRoomId());
+        out.setEventType("MessageDeleted");
+        try {
+            out.setPayload(objectMapper.writeValueAsString(new MessageDeleted(message.getRoomId(), message.getMessageId())));
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException(e);
+        }
+        return out;
+    }
+
     public interface DirectRoomPolicy {
         boolean isDirect(Long roomId);
         Long peer(Long roomId, Long userId);
@@ -406,6 +451,7 @@ public class MessageService {
         broadcastMessageUpdate(message);
     }
 
+    @Transactional
     public void deleteMessageForEveryone(String messageId, String userId) {
         ChatMessage message = chatMessageRepository.findByMessageId(messageId)
                 .orElseThrow(() -> new ResponseStatusException(HttpStatus.FORBIDDEN, "Message not found"));
@@ -417,10 +463,13 @@ public class MessageService {
         message.setDeletedBySender(true);
         message.setDeletedByReceiver(true);
         message.setDeletedForEveryone(true);
+        message.setDeletedAt(Instant.now());
         if (!message.isE2ee()) {
             message.setBody("This message was deleted");
         }
         chatMessageRepository.save(message);
+        // every pod's local search index drops it; relayed by OutboxPublisher like MessageCreated
+        outboxRepo.save(messageDeletedEvent(message));
         broadcastMessageUpdate(message);
     }
 
@@ -553,35 +602,36 @@ public class MessageService {
     
     /** Stable broadcast/event shape for subscribers (ascending compatible). */
     public Map<String, Object> toRoomEvent(ChatMessage m) {
-        Map<String, Object> e = new HashMap<>();
-        e.put("roomId", m.getRoomId());
-        e.put("messageId", m.getMessageId());
-        e.put("senderId", m.getSenderId());
-        e.put("type", m.getType().name());
-        e.put("serverTs", m.getServerTs());
-        e.put("e2ee", m.isE2ee());
-        e.put("deletedBySender", m.isDeletedBySender());
-        e.put("deletedByReceiver", m.isDeletedByReceiver());
-        e.put("deletedForEveryone", m.isDeletedForEveryone());
-        e.put("systemMessage", m.isSystemMessage());
-        if (m.isE2ee()) {
-            e.put("e2eeVer", m.getE2eeVer());
-            e.put("algo", m.getAlgo());
-            e.put("aad", m.getAad());
-            e.put("iv", m.getIv());
-            e.put("ciphertext", m.getCiphertext());
-            e.put("keyRef", m.getKeyRef());
-            e.put("senderDeviceId", m.getSenderDeviceId());
-        } else {
-            e.put("body", m.getBody());
-        }
-        return e;
+        return RoomEvent.of(m, objectMapper).toMap();
+    }
+
+    /**
+     * Serialized room event for a message this node just persisted. Held only as long as the
+     * entity instance is reachable, so the ordered broadcast after saveInbound reuses the bytes.
+     */
+    public RoomEvent roomEvent(ChatMessage m) {
+        return roomEvents.get(m, key -> RoomEvent.of(key, objectMapper));
     }
 
     private void broadcastMessageUpdate(ChatMessage message) {
         String roomKey = resolveRoomKey(message.getRoomId());
-        Map<String, Object> event = toRoomEvent(message);
-        messagingTemplate.convertAndSend("/topic/room." + roomKey, event);
+        // flags changed on this instance; never serve a cached encoding here
+        RoomEvent event = RoomEvent.of(message, objectMapper);
+        roomEvents.invalidate(message);
+        broadcastToRoom(roomKey, event);
+    }
+
+    /**
+     * Publishes a room frame in both encodings: JSON to /topic/room.{key} and, for sessions that
+     * negotiated CBOR (their SUBSCRIBE is redirected), the once-encoded CBOR to /topic/room.{key}.cbor.
+     */
+    public void broadcastToRoom(String roomKey, RoomEvent event) {
+        String topic = "/topic/room." + roomKey;
+        messagingTemplate.send(topic, RoomEvent.jsonMessage(event.roomFrame()));
+        if (cborFrames) {
+            messagingTemplate.send(topic + BinaryEnvelopeInterceptor.CBOR_TOPIC_SUFFIX,
+                    RoomEvent.cborMessage(event.cborRoomFrame()));
+        }
     }
 
     private String resolveRoomKey(Long roomId) {
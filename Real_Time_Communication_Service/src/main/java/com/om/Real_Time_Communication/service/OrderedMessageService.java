@@ -3,6 +3,7 @@ package com.om.Real_Time_Communication.service;
 import com.om.Real_Time_Communication.Repository.ChatRoomRepository;
 import com.om.Real_Time_Communication.dto.AckDto;
 import com.om.Real_Time_Communication.dto.ChatSendDto;
+import com.om.Real_Time_Communication.dto.RoomEvent;
 import com.om.Real_Time_Communication.models.ChatMessage;
 import com.om.Real_Time_Communication.models.ChatRoom;
 import com.om.Real_Time_Communication.presence.PerRoomDispatcher;
@@ -11,8 +12,7 @@ import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Service;
 import org.springframework.messaging.simp.SimpMessagingTemplate;
 
-import java.util.List;
-import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 @Service
 
@@ -22,30 +22,25 @@ public class OrderedMessageService {
     private final MessageService messageService; // existing service doing DB + fanout
     private final SimpMessagingTemplate messagingTemplate;
     private final ChatRoomRepository chatRoomRepository;
-    private final RoomMembershipService membershipService;
-    private final InboxDeliveryService inboxDeliveryService;
 
     public OrderedMessageService(
             PerRoomDispatcher dispatcher,
             MessageService messageService,
             SimpMessagingTemplate messagingTemplate,
-            ChatRoomRepository chatRoomRepository,
-            RoomMembershipService membershipService,
-            InboxDeliveryService inboxDeliveryService
+            ChatRoomRepository chatRoomRepository
     ) {
         this.dispatcher = dispatcher;
         this.messageService = messageService;
         this.messagingTemplate = messagingTemplate;
         this.chatRoomRepository = chatRoomRepository;
-        this.membershipService = membershipService;
-        this.inboxDeliveryService = inboxDeliveryService;
     }
 
     /**
      * Strict FIFO: persist then ACK the sender and broadcast to the room in order.
-     * Runs the work on a per-room executor to preserve message ordering.
+     * The work is queued on the room's mailbox; the returned future completes once it has run,
+     * so the inbound STOMP thread is released immediately.
      */
-    public void saveAndBroadcastOrdered(String roomId, Long senderId, ChatSendDto dto) throws Exception {
+    public CompletableFuture<Void> saveAndBroadcastOrdered(String roomId, Long senderId, ChatSendDto dto) {
         log.info("Received message {} for room {} from sender {}", dto.getMessageId(), roomId, senderId);
         ChatRoom room = chatRoomRepository.findByRoomId(roomId)
                 .orElseGet(() -> tryResolveByNumericId(roomId));
@@ -54,7 +49,7 @@ public class OrderedMessageService {
             throw new IllegalArgumentException("Room not found: " + roomId);
         }
         Long internalId = room.getId();
-        dispatcher.executeAndWait(internalId, () -> {
+        CompletableFuture<Void> done = dispatcher.submit(internalId, () -> {
             // Keep the real work transactional
 
             ChatMessage saved = messageService.saveInbound(internalId, senderId, dto);
@@ -67,16 +62,20 @@ public class OrderedMessageService {
             log.info("Acknowledged message {} to sender {}", saved.getMessageId(), senderId);
 
             // Broadcast the message event to the room topic for other subscribers
-            Map<String, Object> event = messageService.toRoomEvent(saved);
-            messagingTemplate.convertAndSend("/topic/room." + roomId, event);
+            // same bytes saveInbound already encoded for the outbox and the inbox frames
+            RoomEvent event = messageService.roomEvent(saved);
+            messageService.broadcastToRoom(roomId, event);
             log.info("Broadcasted message {} to room {}", saved.getMessageId(), roomId);
-
-            List<Long> members = membershipService.memberIds(internalId);
-
-            inboxDeliveryService.recordAndDispatch(room, saved, event, members);
+            // per-member /queue/inbox frames were already produced once by saveInbound
 
             return null; // required by Callable
         });
+        return done.whenComplete((ignored, err) -> {
+            if (err != null) {
+                log.error("[RTC][SEND][FAIL] roomId={} sender={} messageId={} err={}",
+                        roomId, senderId, dto.getMessageId(), err.toString(), err);
+            }
+        });
     }
 
     private ChatRoom tryResolveByNumericId(String roomId) {
@@ -0,0 +1,117 @@
+package com.om.Real_Time_Communication.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.om.Real_Time_Communication.Repository.ChatRoomRepository;
+import com.om.Real_Time_Communication.models.ChatRoom;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * What STOMP authorization needs to know about a room, without a database query per frame.
+ * Room keys never change owner, so roomKey -> id is cached outright. Membership-derived facts
+ * (member set, direct/group, peer) are rebuilt only when {@link RoomMembershipService#memberIds}
+ * hands back a different list, i.e. after room:v:{id} moved; checking that version is still one
+ * Redis GET per frame. Membership changes need no hook here: invalidating the member list is enough.
+ */
+@Service
+public class RoomDescriptorCache {
+
+    private final ChatRoomRepository chatRoomRepository;
+    private final RoomMembershipService membership;
+
+    private final Cache<String, Long> roomIdsByKey = Caffeine.newBuilder()
+            .maximumSize(100_000)
+            .expireAfterAccess(Duration.ofHours(1))
+            .recordStats()
+            .build();
+
+    private final Cache<Long, RoomDescriptor> descriptors = Caffeine.newBuilder()
+            .maximumSize(50_000)
+            .expireAfterAccess(Duration.ofMinutes(30))
+            .build();
+
+    public RoomDescriptorCache(ChatRoomRepository chatRoomRepository, RoomMembershipService membership,
+                               MeterRegistry meterRegistry) {
+        this.chatRoomRepository = chatRoomRepository;
+        this.membership = membership;
+        CaffeineCacheMetrics.monitor(meterRegistry, roomIdsByKey, "rtc.room.keys");
+    }
+
+    /** Resolve a room key (public roomId or legacy numeric id) to the primary key. */
+    public Long resolveRoomId(String roomKey) {
+        Long cached = roomIdsByKey.getIfPresent(roomKey);
+        if (cached != null) {
+            return cached;
+        }
+        Long id = lookupRoomId(roomKey);
+        // unknown keys throw above and are never cached, so a room created later is found
+        roomIdsByKey.put(roomKey, id);
+        return id;
+    }
+
+    public RoomDescriptor describe(Long roomId) {
+        List<Long> ids = membership.memberIds(roomId);
+        RoomDescriptor d = descriptors.getIfPresent(roomId);
+        // memberIds returns the same list instance until the room's membership version changes
+        if (d != null && d.source == ids) {
+            return d;
+        }
+        d = new RoomDescriptor(roomId, ids);
+        descriptors.put(roomId, d);
+        return d;
+    }
+
+    private Long lookupRoomId(String roomKey) {
+        // Prefer the public "roomId" stable identifier
+        Optional<Long> byExternalId = chatRoomRepository.findByRoomId(roomKey).map(ChatRoom::getId);
+        if (byExternalId.isPresent()) {
+            return byExternalId.get();
+        }
+
+        // Fallback: allow clients that still reference the numeric id directly
+        try {
+            Long numericId = Long.valueOf(roomKey);
+            return chatRoomRepository.findById(numericId)
+                    .map(ChatRoom::getId)
+                    .orElseThrow(() -> new IllegalArgumentException("Unknown room " + roomKey));
+        } catch (NumberFormatException ignore) {
+            throw new IllegalArgumentException("Unknown room " + roomKey);
+        }
+    }
+
+    /** Immutable view of one room's membership as seen by a single memberIds() snapshot. */
+    public static final class RoomDescriptor {
+        private final Long roomId;
+        private final List<Long> source;
+        private final Set<Long> members;
+
+        RoomDescriptor(Long roomId, List<Long> source) {
+            this.roomId = roomId;
+            this.source = source;
+            this.members = Set.copyOf(source);
+        }
+
+        public Long roomId() { return roomId; }
+
+        public boolean isMember(Long userId) { return userId != null && members.contains(userId); }
+
+        /** Same rule the interceptor always used: exactly two participants. */
+        public boolean isDirect() { return members.size() == 2; }
+
+        /** The other user of a direct room. */
+        public Long peerOf(Long userId) {
+            if (!isDirect()) throw new IllegalArgumentException("Not a direct room: " + roomId);
+            for (Long id : members) {
+                if (!id.equals(userId)) return id;
+            }
+            return userId;
+        }
+    }
+}
@@ -1,19 +1,32 @@
 package com.om.Real_Time_Communication.service;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
 import com.om.Real_Time_Communication.Repository.ChatRoomParticipantRepository;
 import io.micrometer.common.lang.Nullable;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.core.RedisCallback;
 import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.stereotype.Service;
 
+import java.nio.charset.StandardCharsets;
 import java.time.Duration;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 import java.util.Set;
 
 @Service
 public class RoomMembershipService {
 
+    private static final Logger log = LoggerFactory.getLogger(RoomMembershipService.class);
+
     private final ChatRoomParticipantRepository repo;
     private final E2eeDeviceService deviceService;
 
@@ -22,15 +35,77 @@ public class RoomMembershipService {
 
     private Duration ttl = Duration.ofMinutes(10);
 
-    private String kUserRooms(Long userId, String deviceId) { return "user:rooms:" + userId + ":" + deviceId; }
+    // Local member sets, validated against the room:v:{id} counter bumped by AclService.onMembershipChanged.
+    // Without Redis there is no version to check, so entries only live for a short TTL.
+    private static final long MEMBERS_MAX_ROOMS = 50_000;
+    private static final Duration MEMBERS_TTL = Duration.ofMinutes(10);
+    private static final Duration MEMBERS_TTL_UNVERSIONED = Duration.ofSeconds(5);
+
+    private final Cache<Long, Members> members = Caffeine.newBuilder()
+            .maximumSize(MEMBERS_MAX_ROOMS)
+            .expireAfterWrite(MEMBERS_TTL)
+            .recordStats()
+            .build();
+    private final Counter membersStale;
+
+    private record Members(String version, long loadedAtMs, List<Long> ids) {}
 
-    public RoomMembershipService(ChatRoomParticipantRepository repo, E2eeDeviceService deviceService) {
+    // user:rooms:{uid}:{gen}:{deviceId}; gen lives in user:rooms:gen:{uid} with no TTL: if it expired,
+    // the next INCR would restart at 1 and could land on a list from that earlier generation still alive
+
+    private String kUserRooms(Long userId, String gen, String deviceId) { return "user:rooms:" + userId + ":" + gen + ":" + deviceId; }
+    private String kUserRoomsGen(Long userId) { return "user:rooms:gen:" + userId; }
+    private String kRoomVersion(Long roomId) { return "room:v:" + roomId; }
+
+    public RoomMembershipService(ChatRoomParticipantRepository repo, E2eeDeviceService deviceService,
+                                 MeterRegistry meterRegistry) {
         this.repo = repo;
         this.deviceService = deviceService;
+        CaffeineCacheMetrics.monitor(meterRegistry, members, "rtc.room.members");
+        this.membersStale = Counter.builder("rtc.room.members.stale")
+                .description("Cached member sets reloaded because room:v changed")
+                .register(meterRegistry);
     }
 
+    /** Member ids of a room; served from the local cache while room:v:{id} is unchanged. */
     public List<Long> memberIds(Long roomId) {
-        return repo.findUserIdsByRoomId(roomId);
+        String version = currentVersion(roomId);
+        Members cached = members.getIfPresent(roomId);
+        if (cached != null) {
+            if (version != null && version.equals(cached.version())) {
+                return cached.ids();
+            }
+            if (version == null && cached.version() == null
+                    && System.currentTimeMillis() - cached.loadedAtMs() < MEMBERS_TTL_UNVERSIONED.toMillis()) {
+                return cached.ids();
+            }
+            membersStale.increment();
+        }
+        List<Long> ids = Collections.unmodifiableList(new ArrayList<>(repo.findUserIdsByRoomId(roomId)));
+        if (!ids.isEmpty()) {
+            // never pin an empty set: it usually means the room's participants are not committed yet
+            members.put(roomId, new Members(version, System.currentTimeMillis(), ids));
+        }
+        return ids;
+    }
+
+    /** Drop this node's copy immediately; other nodes notice through the version counter. */
+    public void invalidateMembers(Long roomId) {
+        members.invalidate(roomId);
+    }
+
+    private String currentVersion(Long roomId) {
+        if (redis == null) {
+            return null;
+        }
+        try {
+            String v = redis.opsForValue().get(kRoomVersion(roomId));
+            // A room whose membership never changed has no counter yet; treat it as version 0.
+            return v == null ? "0" : v;
+        } catch (Exception ex) {
+            log.warn("room version lookup failed room={} err={}", roomId, ex.toString());
+            return null;
+        }
     }
 
     public boolean isMember(Long userId, Long roomId) {
@@ -40,10 +115,12 @@ public class RoomMembershipService {
     public List<Long> roomsForUser(Long userId, String deviceId) {
         var activeDevice = deviceService.requireActiveDevice(userId, deviceId);
 
+        String key = null;
         if (redis != null) {
-            Set<String> cached = redis.opsForSet().members(kUserRooms(userId, deviceId));
+            key = kUserRooms(userId, roomsGeneration(userId), deviceId);
+            Set<String> cached = redis.opsForSet().members(key);
             if (cached != null && !cached.isEmpty()) {
-                redis.expire(kUserRooms(userId, deviceId), ttl);
+                redis.expire(key, ttl);
                 List<Long> out = new ArrayList<>(cached.size());
                 for (String v : cached) out.add(Long.valueOf(v));
                 return out;
@@ -51,8 +128,7 @@ public class RoomMembershipService {
         }
         
         List<Long> list = repo.findVisibleChatRoomIdsByUserId(userId, activeDevice.getHistoryVisibleFrom());
-        if (redis != null && !list.isEmpty()) {
-            String key = kUserRooms(userId, deviceId);
+        if (key != null && !list.isEmpty()) {
             String[] vals = list.stream().map(String::valueOf).toArray(String[]::new);
             redis.opsForSet().add(key, vals);
             redis.expire(key, ttl);
@@ -71,17 +147,36 @@ public class RoomMembershipService {
     
     public void evictUserRooms(Long userId, String deviceId) {
         if (redis != null) {
-            redis.delete(kUserRooms(userId, deviceId));
+            redis.delete(kUserRooms(userId, roomsGeneration(userId), deviceId));
         }
     }
 
+    /**
+     * Invalidate every device's room list for the user in O(1): bumping the generation makes the
+     * old per-device keys unreachable, and their own TTL reclaims them.
+     */
     public void evictUserRooms(Long userId) {
         if (redis != null) {
-            Set<String> keys = redis.keys("user:rooms:" + userId + ":*");
-            if (keys != null && !keys.isEmpty()) {
-                redis.delete(keys);
-            }
+            redis.opsForValue().increment(kUserRoomsGen(userId));
         }
     }
-}
 
+    /** Same as {@link #evictUserRooms(Long)} for many users, sent as one pipeline. */
+    public void evictUserRooms(Collection<Long> userIds) {
+        if (redis == null || userIds == null || userIds.isEmpty()) {
+            return;
+        }
+        redis.executePipelined((RedisCallback<Object>) connection -> {
+            for (Long userId : userIds) {
+                if (userId == null) continue;
+                connection.stringCommands().incr(kUserRoomsGen(userId).getBytes(StandardCharsets.UTF_8));
+            }
+            return null;
+        });
+    }
+
+    private String roomsGeneration(Long userId) {
+        String gen = redis.opsForValue().get(kUserRoomsGen(userId));
+        return gen == null ? "0" : gen;
+    }
+}
@@ -19,13 +19,16 @@ public class SearchService {
     private final ElasticsearchOperations es;
     private final StringRedisTemplate redis;
     private final ChatMessageRepository chatMessageRepository;
+    private final LocalMessageIndex localIndex;
 
     public SearchService(ElasticsearchOperations es,
                          StringRedisTemplate redis,
-                         ChatMessageRepository chatMessageRepository) {
+                         ChatMessageRepository chatMessageRepository,
+                         LocalMessageIndex localIndex) {
         this.es = es;
         this.redis = redis;
         this.chatMessageRepository = chatMessageRepository;
+        this.localIndex = localIndex;
     }
 
     public java.util.List<SearchMessageDoc> searchAll(Long userId, java.util.List<Long> roomIds, String query, int limit) {
@@ -50,7 +53,14 @@ public class SearchService {
         return hits.get().map(SearchHit::getContent).toList();
     }
 
+    /**
+     * In-room search limited to what the device may see. Served by the pod's local index once it
+     * has caught up; until then (or if backfill failed) falls back to scanning the Redis recents.
+     */
     public java.util.List<RecentHit> searchInRoomMvpVisible(Long roomId, String query, int limit, Instant cutoff) {
+        if (localIndex.isReady()) {
+            return localIndex.search(roomId, query, limit, cutoff);
+        }
         String zKey = "room:idx:" + roomId;
         var ids = redis.opsForZSet().reverseRange(zKey, 0, 2000);
         if (ids == null || ids.isEmpty()) return java.util.List.of();
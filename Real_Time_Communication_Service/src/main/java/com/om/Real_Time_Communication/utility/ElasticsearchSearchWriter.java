@@ -1,48 +1,341 @@
 package com.om.Real_Time_Communication.utility;
 // imports:
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.om.Real_Time_Communication.dto.SearchMessageDoc;
-import lombok.RequiredArgsConstructor;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.elasticsearch.BulkFailureException;
 import org.springframework.data.elasticsearch.core.ElasticsearchOperations;
 import org.springframework.data.elasticsearch.core.mapping.IndexCoordinates;
 import org.springframework.data.elasticsearch.core.query.IndexQuery;
 import org.springframework.data.elasticsearch.core.query.IndexQueryBuilder;
 import org.springframework.stereotype.Component;
 
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * Bulk writer for the Elasticsearch message index with a bounded queue.
+ * When the queue is full the configured {@link Overflow} policy decides: drop the oldest document,
+ * spill to a local file that is replayed once the queue has room, or block the consumer (which
+ * leaves the backlog in RabbitMQ). Replay streams the spill file from a persisted byte offset,
+ * never more documents than the queue has room for, and deletes the file once it is consumed.
+ * A failed bulk request backs off exponentially. Retries never go back through the queue, so no
+ * overflow policy can drop them: the flusher holds them and sends them first once the backoff has
+ * passed. A request that failed as a whole (ES unreachable, timeout) is held unchanged and retried
+ * until it gets through; only documents the bulk response names are charged an attempt, and
+ * those rejected permanently (4xx other than 429) or failed {@link #MAX_ATTEMPTS} times are dropped.
+ */
 @Component
 public class ElasticsearchSearchWriter implements SearchWriter {
+    private static final Logger log = LoggerFactory.getLogger(ElasticsearchSearchWriter.class);
+
+    public enum Overflow { DROP_OLDEST, SPILL, BLOCK }
+
+    static final int BATCH_SIZE = 1000;
+    static final int MAX_ATTEMPTS = 5;
+    static final long BASE_BACKOFF_MS = 500;
+    static final long MAX_BACKOFF_MS = 60_000;
+
+    private record Pending(SearchMessageDoc doc, int attempts) {}
+
     private final ElasticsearchOperations es;
-    private final java.util.List<SearchMessageDoc> buffer = new java.util.ArrayList<>();
+    private final ObjectMapper om;
+    private final int capacity;
+    private final Overflow overflow;
+    private final Path spillFile;
+    private final Path offsetFile;
+    private final LongSupplier clock;
+    private final BlockingQueue<Pending> queue;
+
+    private final Object spillLock = new Object();
+    private final AtomicLong spilled = new AtomicLong();  // documents in the spill file not yet replayed
+    private long replayOffset;                           // bytes of the spill file already replayed; spillLock
+    private int consecutiveFailures;                     // flusher thread only
+    private long nextAttemptAtMs;                        // flusher thread only
+    private List<Pending> retrying = new ArrayList<>();  // flusher thread only; sent before the queue
 
-    public ElasticsearchSearchWriter(ElasticsearchOperations es) {
+    private final Counter rejectedOverflow;
+    private final Counter rejectedPermanent;
+    private final Counter rejectedRetries;
+
+    @Autowired
+    public ElasticsearchSearchWriter(ElasticsearchOperations es,
+                                     ObjectMapper om,
+                                     @Value("${rtc.search.es.queue-capacity:50000}") int capacity,
+                                     @Value("${rtc.search.es.overflow:DROP_OLDEST}") Overflow overflow,
+                                     @Value("${rtc.search.es.spill-dir:${java.io.tmpdir}/rtc-search-spill}") String spillDir,
+                                     MeterRegistry meterRegistry) {
+        this(es, om, capacity, overflow, Path.of(spillDir), System::currentTimeMillis, meterRegistry);
+    }
+
+    public ElasticsearchSearchWriter(ElasticsearchOperations es, ObjectMapper om, int capacity,
+                                     Overflow overflow, Path spillDir, LongSupplier clock,
+                                     MeterRegistry meterRegistry) {
         this.es = es;
+        this.om = om;
+        this.capacity = capacity;
+        this.overflow = overflow;
+        this.spillFile = spillDir.resolve("es-pending.jsonl");
+        this.offsetFile = spillDir.resolve("es-pending.offset");
+        this.clock = clock;
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        if (Files.exists(spillFile)) {
+            // left over from a previous run; replayed from where it stopped on the first flush with room
+            try {
+                replayOffset = readOffset();
+                spilled.set(countLines(replayOffset));
+            } catch (IOException e) {
+                log.warn("[SEARCH] cannot read spill file {}: {}", spillFile, e.toString());
+            }
+        }
+        Gauge.builder("rtc.search.es.queue.depth", queue, BlockingQueue::size)
+                .description("Documents waiting for a bulk request")
+                .register(meterRegistry);
+        Gauge.builder("rtc.search.es.spilled", spilled, AtomicLong::get)
+                .description("Documents parked in the local spill file")
+                .register(meterRegistry);
+        rejectedOverflow = Counter.builder("rtc.search.es.rejected").tag("reason", "overflow").register(meterRegistry);
+        rejectedPermanent = Counter.builder("rtc.search.es.rejected").tag("reason", "permanent").register(meterRegistry);
+        rejectedRetries = Counter.builder("rtc.search.es.rejected").tag("reason", "retries").register(meterRegistry);
     }
 
     @Override
-    public synchronized void enqueue(SearchMessageDoc doc) {
-        buffer.add(doc);
-        if (buffer.size() >= 1000) flushUnsafe();
+    public void enqueue(SearchMessageDoc doc) {
+        Pending p = new Pending(doc, 0);
+        if (queue.offer(p)) return;
+        switch (overflow) {
+            case BLOCK -> {
+                try {
+                    queue.put(p); // holds the listener thread; unacked deliveries stay in RabbitMQ
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    reject(rejectedOverflow, 1);
+                }
+            }
+            case SPILL -> spill(List.of(p));
+            default -> requeue(p);
+        }
     }
 
     @org.springframework.scheduling.annotation.Scheduled(fixedDelay = 500)
-    public void flush() { synchronized (this) { flushUnsafe(); } }
+    public void flush() {
+        if (clock.getAsLong() < nextAttemptAtMs) return; // backing off
+        if (!retrying.isEmpty()) {
+            List<Pending> held = retrying;
+            retrying = new ArrayList<>();
+            if (!send(held)) return;
+        }
+        replaySpill();
+        List<Pending> batch = new ArrayList<>(BATCH_SIZE);
+        while (queue.drainTo(batch, BATCH_SIZE) > 0) {
+            boolean ok = send(batch);
+            batch.clear();
+            if (!ok) return;
+        }
+    }
+
+    public int queueDepth() {
+        return queue.size();
+    }
 
-    private void flushUnsafe() {
-        if (buffer.isEmpty()) return;
-        var batch = new java.util.ArrayList<>(buffer);
-        buffer.clear();
+    public long spilledCount() {
+        return spilled.get();
+    }
 
+    /** @return false if anything is held for retry; the caller stops until the backoff has passed */
+    private boolean send(List<Pending> batch) {
+        List<IndexQuery> queries = new ArrayList<>(batch.size());
+        for (Pending p : batch) {
+            queries.add(new IndexQueryBuilder()
+                    .withId(p.doc().getMessageId())
+                    .withObject(p.doc())
+                    .build());
+        }
         try {
-            java.util.List<IndexQuery> queries = new java.util.ArrayList<>(batch.size());
-            for (var d : batch) {
-                queries.add(new IndexQueryBuilder()
-                        .withId(d.getMessageId())
-                        .withObject(d)
-                        .build());
-            }
             es.bulkIndex(queries, IndexCoordinates.of(SearchMessageDoc.INDEX));
+            consecutiveFailures = 0;
+            return true;
+        } catch (BulkFailureException e) {
+            // only the documents named in the bulk response failed; the rest are indexed
+            Map<String, BulkFailureException.FailureDetails> failed = e.getFailedDocuments();
+            for (Pending p : batch) {
+                BulkFailureException.FailureDetails details = failed.get(p.doc().getMessageId());
+                if (details == null) continue;
+                if (isPermanent(details.status())) {
+                    log.warn("[SEARCH] dropping {} rejected by Elasticsearch: {}", p.doc().getMessageId(), details.errorMessage());
+                    reject(rejectedPermanent, 1);
+                } else if (p.attempts() + 1 >= MAX_ATTEMPTS) {
+                    reject(rejectedRetries, 1);
+                } else {
+                    retrying.add(new Pending(p.doc(), p.attempts() + 1));
+                }
+            }
+            if (retrying.isEmpty()) return true;
+            backOff(e);
+            return false;
         } catch (Exception e) {
-            // simple retry
-            buffer.addAll(batch);
+            // the request never reached the documents; none of them used up an attempt
+            retrying.addAll(batch);
+            backOff(e);
+            return false;
         }
     }
+
+    private void backOff(Exception e) {
+        consecutiveFailures++;
+        long delay = Math.min(MAX_BACKOFF_MS, BASE_BACKOFF_MS << Math.min(consecutiveFailures - 1, 20));
+        nextAttemptAtMs = clock.getAsLong() + delay;
+        log.warn("[SEARCH] bulk index failed ({} in a row), {} held, {} queued, retrying in {}ms: {}",
+                consecutiveFailures, retrying.size(), queue.size(), delay, e.toString());
+    }
+
+    /** Drop-oldest: make room by evicting from the head until the document fits. */
+    private void requeue(Pending p) {
+        while (!queue.offer(p)) {
+            if (queue.poll() != null) reject(rejectedOverflow, 1);
+        }
+    }
+
+    private void spill(List<Pending> docs) {
+        StringBuilder lines = new StringBuilder();
+        try {
+            for (Pending p : docs) lines.append(om.writeValueAsString(p.doc())).append('\n');
+            synchronized (spillLock) {
+                Files.createDirectories(spillFile.getParent());
+                Files.writeString(spillFile, lines, StandardCharsets.UTF_8,
+                        StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+                spilled.addAndGet(docs.size());
+            }
+        } catch (IOException e) {
+            log.warn("[SEARCH] spill to {} failed, dropping {} docs: {}", spillFile, docs.size(), e.toString());
+            reject(rejectedOverflow, docs.size());
+        }
+    }
+
+    /**
+     * Moves spilled documents back into the queue once it is at most half full. Reads whole lines
+     * from the replay offset, at most as many as the queue has free slots, then advances the
+     * offset past them; the file itself is only appended to, and deleted once fully replayed.
+     */
+    private void replaySpill() {
+        if (spilled.get() == 0 || queue.size() > capacity / 2) return;
+        int room = capacity - queue.size();
+        long offset;
+        synchronized (spillLock) {
+            offset = replayOffset;
+        }
+        long consumed = 0;
+        int docs = 0;
+        try (FileChannel ch = FileChannel.open(spillFile, StandardOpenOption.READ);
+             InputStream in = new BufferedInputStream(Channels.newInputStream(ch.position(offset)))) {
+            ByteArrayOutputStream line = new ByteArrayOutputStream();
+            int b;
+            // only lines ending in '\n' are complete; a spill still being appended stays put
+            while (docs < room && (b = in.read()) != -1) {
+                if (b != '\n') {
+                    line.write(b);
+                    continue;
+                }
+                if (line.size() > 0) {
+                    Pending p = parse(line.toByteArray());
+                    if (p != null && !queue.offer(p)) break; // listeners filled the queue; resume here
+                    docs++;
+                }
+                consumed += line.size() + 1;
+                line.reset();
+            }
+        } catch (NoSuchFileException e) {
+            return;
+        } catch (IOException e) {
+            log.warn("[SEARCH] reading spill file {} failed: {}", spillFile, e.toString());
+        }
+        if (consumed > 0) advance(offset + consumed, docs);
+    }
+
+    private Pending parse(byte[] line) {
+        try {
+            return new Pending(om.readValue(line, SearchMessageDoc.class), 0);
+        } catch (IOException e) {
+            reject(rejectedPermanent, 1);
+            return null;
+        }
+    }
+
+    private void advance(long offset, int docs) {
+        synchronized (spillLock) {
+            replayOffset = offset;
+            spilled.addAndGet(-docs);
+            try {
+                if (replayOffset >= Files.size(spillFile)) {
+                    // fully replayed: the next spill starts a fresh file
+                    Files.delete(spillFile);
+                    Files.deleteIfExists(offsetFile);
+                    replayOffset = 0;
+                    spilled.set(0);
+                } else {
+                    Files.writeString(offsetFile, Long.toString(replayOffset), StandardCharsets.UTF_8);
+                }
+            } catch (IOException e) {
+                log.warn("[SEARCH] recording spill replay offset failed: {}", e.toString());
+            }
+        }
+    }
+
+    private long readOffset() throws IOException {
+        if (!Files.exists(offsetFile)) return 0;
+        try {
+            long offset = Long.parseLong(Files.readString(offsetFile, StandardCharsets.UTF_8).trim());
+            return offset >= 0 && offset <= Files.size(spillFile) ? offset : 0;
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    private long countLines(long offset) throws IOException {
+        long count = 0;
+        boolean blank = true;
+        try (FileChannel ch = FileChannel.open(spillFile, StandardOpenOption.READ);
+             InputStream in = new BufferedInputStream(Channels.newInputStream(ch.position(offset)))) {
+            int b;
+            while ((b = in.read()) != -1) {
+                if (b == '\n') {
+                    if (!blank) count++;
+                    blank = true;
+                } else {
+                    blank = false;
+                }
+            }
+        }
+        return count;
+    }
+
+    private static boolean isPermanent(Integer status) {
+        return status != null && status >= 400 && status < 500 && status != 429;
+    }
+
+    private static void reject(Counter counter, int n) {
+        counter.increment(n);
+    }
 }
@@ -2,16 +2,41 @@ package com.om.Real_Time_Communication.utility;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 
+import com.om.Real_Time_Communication.Repository.ChatMessageRepository;
 import com.om.Real_Time_Communication.config.RabbitConfig;
 import com.om.Real_Time_Communication.dto.MessageCreated;
+import com.om.Real_Time_Communication.dto.MessageDeleted;
 import com.om.Real_Time_Communication.dto.SearchMessageDoc;
+import com.om.Real_Time_Communication.models.ChatMessage;
+import com.om.Real_Time_Communication.service.LocalMessageIndex;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import lombok.RequiredArgsConstructor;
 import org.slf4j.Logger; import org.slf4j.LoggerFactory;
+import org.springframework.amqp.core.Message;
 import org.springframework.amqp.rabbit.annotation.RabbitListener;
+import org.springframework.amqp.support.AmqpHeaders;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.redis.connection.DefaultStringTuple;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
 import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.messaging.handler.annotation.Header;
 import org.springframework.stereotype.Component;
 
+import java.io.IOException;
+import java.time.Duration;
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
 
 @Component
 public class MessageSearchIndexer {
@@ -20,40 +45,163 @@ public class MessageSearchIndexer {
     private final ObjectMapper om;
     private final SearchWriter searchWriter;          // OpenSearch/Elasticsearch writer (bulk)
     private final StringRedisTemplate redis;          // Redis recents
+    private final LocalMessageIndex localIndex;       // per-pod in-room search
+    private final ChatMessageRepository chatMessageRepository;
 
-    public MessageSearchIndexer(ObjectMapper om, SearchWriter searchWriter, StringRedisTemplate redis) {
+    private final DistributionSummary batchSize;
+    private final Timer lag;
+
+    static final long RECENTS_CAP = 10_000;             // ids kept per room:idx:{room}
+    private static final Duration BODY_TTL = Duration.ofDays(7);
+    private static final int BACKFILL_PAGE = 500;
+    private static final long BACKFILL_OVERLAP_MS = 60_000; // re-index a minute before the last commit
+
+    public MessageSearchIndexer(ObjectMapper om, SearchWriter searchWriter, StringRedisTemplate redis,
+                                LocalMessageIndex localIndex, ChatMessageRepository chatMessageRepository,
+                                MeterRegistry meterRegistry) {
         this.om = om;
         this.searchWriter = searchWriter;
         this.redis = redis;
+        this.localIndex = localIndex;
+        this.chatMessageRepository = chatMessageRepository;
+        this.batchSize = DistributionSummary.builder("rtc.search.indexer.batch.size")
+                .description("Message-created events handled per indexer batch")
+                .register(meterRegistry);
+        this.lag = Timer.builder("rtc.search.indexer.lag")
+                .description("Time from message serverTs until its recents and body are written")
+                .publishPercentiles(0.5, 0.99)
+                .register(meterRegistry);
+    }
+
+    /**
+     * Every pod gets every create and delete here (own queue), so its local index covers all
+     * rooms and forgets messages deleted for everyone.
+     */
+    @RabbitListener(queues = "#{localSearchQueue.name}")
+    public void onLocalSearchEvent(String payload,
+                                   @Header(AmqpHeaders.RECEIVED_ROUTING_KEY) String routingKey) throws Exception {
+        if (routingKey != null && routingKey.endsWith(".message.deleted")) {
+            localIndex.delete(om.readValue(payload, MessageDeleted.class).messageId);
+        } else {
+            localIndex.index(om.readValue(payload, MessageCreated.class));
+        }
+    }
+
+    /**
+     * Catches the local index up with what it missed while the pod was down (or everything in the
+     * retention window on a fresh disk). Live events are already flowing; both paths upsert or
+     * delete by message id, so overlap is harmless. The local queue does not outlive the pod, so
+     * deletes of older messages made while it was down are replayed from chat_message.deleted_at.
+     * In-room search switches to the index once this is done.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void backfillLocalIndex() {
+        Thread t = new Thread(this::backfill, "search-backfill");
+        t.setDaemon(true);
+        t.start();
     }
 
-    @RabbitListener(queues = RabbitConfig.Q_READMODEL_MSG_CREATED)
-    public void onMessageCreated(String payload) throws Exception {
-        MessageCreated ev = om.readValue(payload, MessageCreated.class);
+    void backfill() {
+        long floor = System.currentTimeMillis() - localIndex.retention().toMillis();
+        // nothing newer than the last commit survived a crash, so this also bounds the missed deletes
+        Instant since = Instant.ofEpochMilli(Math.max(floor, localIndex.newestAtOpenMs() - BACKFILL_OVERLAP_MS));
+        long indexed = 0;
+        long deleted = 0;
+        try {
+            Instant afterTs = since;
+            long afterId = 0L;
+            while (true) {
+                List<ChatMessage> page = chatMessageRepository.plaintextAfter(afterTs, afterId, PageRequest.of(0, BACKFILL_PAGE));
+                for (ChatMessage m : page) {
+                    if (m.isDeletedForEveryone()) {
+                        localIndex.delete(m.getMessageId());
+                        deleted++;
+                    } else if (m.getBody() != null && !m.getBody().isBlank()) {
+                        localIndex.index(m.getRoomId(), m.getMessageId(), m.getServerTs().toEpochMilli(), m.getBody());
+                        indexed++;
+                    }
+                    afterTs = m.getServerTs();
+                    afterId = m.getId();
+                }
+                if (page.size() < BACKFILL_PAGE) break;
+            }
+
+            afterTs = since;
+            afterId = 0L;
+            while (true) {
+                List<ChatMessage> page = chatMessageRepository.plaintextDeletedAfter(afterTs, afterId, PageRequest.of(0, BACKFILL_PAGE));
+                for (ChatMessage m : page) {
+                    localIndex.delete(m.getMessageId());
+                    deleted++;
+                    afterTs = m.getDeletedAt();
+                    afterId = m.getId();
+                }
+                if (page.size() < BACKFILL_PAGE) break;
+            }
+            localIndex.refresh();
+            localIndex.markReady();
+            log.info("[SEARCH] local index backfilled {} messages, dropped {} deleted", indexed, deleted);
+        } catch (Exception ex) {
+            log.warn("[SEARCH] local index backfill failed after {} messages; in-room search stays on Redis: {}",
+                    indexed, ex.toString());
+        }
+    }
+
+    /**
+     * Read-model deliveries arrive in batches (see {@code batchRabbitListenerContainerFactory}).
+     * All Redis work for a batch goes out as one pipeline: a ZADD per room with every new member,
+     * an unconditional ZREMRANGEBYRANK cap per room, and a SETEX per searchable body. A payload
+     * that does not parse is logged and skipped; a Redis failure fails the batch for redelivery.
+     */
+    @RabbitListener(queues = RabbitConfig.Q_READMODEL_MSG_CREATED,
+            containerFactory = RabbitConfig.BATCH_LISTENER_FACTORY)
+    public void onMessageCreated(List<Message> deliveries) {
+        List<MessageCreated> events = new ArrayList<>(deliveries.size());
+        for (Message m : deliveries) {
+            try {
+                events.add(om.readValue(m.getBody(), MessageCreated.class));
+            } catch (IOException ex) {
+                log.warn("[SEARCH] skipping unreadable message-created payload: {}", ex.toString());
+            }
+        }
+        if (events.isEmpty()) return;
 
         // 1) OpenSearch/Elasticsearch (async bulk)
-        SearchMessageDoc doc = SearchMessageDoc.from(ev);
-        searchWriter.enqueue(doc);
-
-        // 2) Redis secondary indexes (MVP / fast recents)
-        // Per-room sorted set of recent messageIds
-        String zKey = "room:idx:" + ev.roomId;
-        long score = ev.serverTs == null ? Instant.now().toEpochMilli() : ev.serverTs.toEpochMilli();
-        redis.opsForZSet().add(zKey, ev.messageId, score);
-        // Optional cap: keep only last N (e.g., 10k)
-        Long size = redis.opsForZSet().zCard(zKey);
-        if (size != null && size > 10_000) {
-            redis.opsForZSet().removeRange(zKey, 0, size - 10_000);
+        for (MessageCreated ev : events) {
+            searchWriter.enqueue(SearchMessageDoc.from(ev));
+        }
+
+        // 2) Redis secondary indexes (MVP / fast recents), one round-trip for the batch
+        long now = System.currentTimeMillis();
+        Map<String, Set<StringRedisConnection.StringTuple>> byRoom = new HashMap<>();
+        for (MessageCreated ev : events) {
+            long score = ev.serverTs == null ? now : ev.serverTs.toEpochMilli();
+            byRoom.computeIfAbsent("room:idx:" + ev.roomId, k -> new HashSet<>())
+                    .add(new DefaultStringTuple(ev.messageId, score));
         }
+        redis.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection c = (StringRedisConnection) connection;
+            for (Map.Entry<String, Set<StringRedisConnection.StringTuple>> e : byRoom.entrySet()) {
+                c.zAdd(e.getKey(), e.getValue());
+                // keep only the newest RECENTS_CAP ids; a no-op while the set is smaller
+                c.zRemRange(e.getKey(), 0, -(RECENTS_CAP + 1));
+            }
+            // For non-E2EE only, cache a tiny searchable body blob (MVP), recent-only
+            for (MessageCreated ev : events) {
+                if (!ev.e2ee && ev.body != null && !ev.body.isBlank()) {
+                    // keep short (e.g., 2 KB) to avoid memory blowups
+                    String truncated = ev.body.length() > 2000 ? ev.body.substring(0, 2000) : ev.body;
+                    c.setEx("msg:body:" + ev.messageId, BODY_TTL.toSeconds(), truncated);
+                }
+            }
+            return null;
+        });
 
-        // For non-E2EE only, cache a tiny searchable body blob (MVP)
-        if (!ev.e2ee && ev.body != null && !ev.body.isBlank()) {
-            String bodyKey = "msg:body:" + ev.messageId;
-            // keep short (e.g., 2 KB) to avoid memory blowups
-            String truncated = ev.body.length() > 2000 ? ev.body.substring(0, 2000) : ev.body;
-            redis.opsForValue().set(bodyKey, truncated);
-            // Optional TTL: recent-only index
-            redis.expire(bodyKey, java.time.Duration.ofDays(7));
+        batchSize.record(events.size());
+        for (MessageCreated ev : events) {
+            if (ev.serverTs != null) {
+                lag.record(Math.max(0, now - ev.serverTs.toEpochMilli()), TimeUnit.MILLISECONDS);
+            }
         }
     }
 }
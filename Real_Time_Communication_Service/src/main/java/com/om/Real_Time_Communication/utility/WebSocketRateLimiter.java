@@ -1,46 +1,114 @@
 package com.om.Real_Time_Communication.utility;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
 import io.github.bucket4j.Bandwidth;
 import io.github.bucket4j.Bucket;
 import io.github.bucket4j.Bucket4j;
-import org.redisson.api.RBucket;
+import org.redisson.api.RScript;
 import org.redisson.api.RedissonClient;
+import org.redisson.client.codec.StringCodec;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
 import java.time.Duration;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentMap;
-import java.util.concurrent.TimeUnit;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.LongSupplier;
 
+/**
+ * Connection limits per IP and per user.
+ * With Redisson present every pod draws from the same token bucket: the bucket is a single
+ * GCRA timestamp (theoretical arrival time) per key, checked and advanced by one Lua script, so
+ * the budget is atomic and shared. The script reads the time from Redis itself, so pods with
+ * skewed clocks still agree on the bucket. Without Redisson each pod uses its own Bucket4j
+ * buckets; after a Redis error it does the same and leaves Redis alone for five seconds.
+ */
 @Component
 public class WebSocketRateLimiter {
 
+    private static final Logger log = LoggerFactory.getLogger(WebSocketRateLimiter.class);
+
+    static final long IP_CAPACITY = 100;   // connections per IP per minute
+    static final long USER_CAPACITY = 32;  // connections per user per minute
+    private static final Duration PERIOD = Duration.ofMinutes(1);
+    static final long REDIS_RETRY_MS = 5_000;
+
+    private static final Bandwidth ipLimit = Bandwidth.simple(IP_CAPACITY, PERIOD);
+    private static final Bandwidth userLimit = Bandwidth.simple(USER_CAPACITY, PERIOD);
+
+    /**
+     * KEYS[1] bucket. ARGV: emission interval, period (ms). Returns 1 if admitted. Now is the
+     * server's TIME in ms (epoch millis stay exact in Lua's %.14g number formatting); a write
+     * after TIME needs Redis 5+, which replicates script effects rather than the script.
+     */
+    public static final String GCRA_SCRIPT = """
+            local time = redis.call('TIME')
+            local now = tonumber(time[1]) * 1000 + math.floor(tonumber(time[2]) / 1000)
+            local emission = tonumber(ARGV[1])
+            local period = tonumber(ARGV[2])
+            local tat = tonumber(redis.call('GET', KEYS[1]) or '0')
+            if tat < now then tat = now end
+            local nxt = tat + emission
+            if nxt - now > period then return 0 end
+            redis.call('SET', KEYS[1], nxt, 'PX', nxt - now)
+            return 1
+            """;
+
     @Autowired(required = false)
     private RedissonClient redissonClient;
 
-    private final ConcurrentMap<String, Bucket> localBuckets = new ConcurrentHashMap<>();
+    private final Cache<String, Bucket> localBuckets = Caffeine.newBuilder()
+            .maximumSize(100_000)
+            .expireAfterAccess(PERIOD.multipliedBy(2))
+            .build();
+
+    private final LongSupplier clock;
+    private final AtomicBoolean redisDown = new AtomicBoolean(false);
+    private volatile long redisRetryAtMs;
+
+    public WebSocketRateLimiter() {
+        this(System::currentTimeMillis);
+    }
 
-    private static final Bandwidth ipLimit = Bandwidth.simple(100, Duration.ofMinutes(1));   // 50 connections per IP
-    private static final Bandwidth userLimit = Bandwidth.simple(32, Duration.ofMinutes(1)); // 10 per user
+    public WebSocketRateLimiter(LongSupplier clock) {
+        this.clock = clock;
+    }
 
     public boolean isAllowed(String ip, String userId) {
-        Bucket ipBucket = getBucket("ip:" + ip, ipLimit);
-        Bucket userBucket = getBucket("user:" + userId, userLimit);
+        return tryConsume("ip:" + ip, IP_CAPACITY, ipLimit)
+                && tryConsume("user:" + userId, USER_CAPACITY, userLimit);
+    }
 
-        return ipBucket.tryConsume(1) && userBucket.tryConsume(1);
+    private boolean tryConsume(String key, long capacity, Bandwidth limit) {
+        if (redissonClient != null && clock.getAsLong() >= redisRetryAtMs) {
+            Boolean shared = tryConsumeShared(key, capacity);
+            if (shared != null) {
+                return shared;
+            }
+        }
+        return localBuckets.get(key, k -> Bucket4j.builder().addLimit(limit).build()).tryConsume(1);
     }
 
-    private Bucket getBucket(String key, Bandwidth limit) {
-        if (redissonClient != null) {
-            RBucket<Bucket> redisBucket = redissonClient.getBucket(key);
-            Bucket bucket = redisBucket.get();
-            if (bucket == null) {
-                bucket = Bucket4j.builder().addLimit(limit).build();
-                redisBucket.set(bucket, 1, TimeUnit.HOURS);
+    private Boolean tryConsumeShared(String key, long capacity) {
+        long period = PERIOD.toMillis();
+        try {
+            Long allowed = redissonClient.getScript(StringCodec.INSTANCE).eval(
+                    RScript.Mode.READ_WRITE, GCRA_SCRIPT, RScript.ReturnType.INTEGER,
+                    List.of("ws:rl:" + key),
+                    String.valueOf(period / capacity), String.valueOf(period));
+            if (redisDown.compareAndSet(true, false)) {
+                log.info("[RATE] shared WebSocket limiter reachable again");
+            }
+            return allowed != null && allowed == 1L;
+        } catch (RuntimeException ex) {
+            redisRetryAtMs = clock.getAsLong() + REDIS_RETRY_MS;
+            if (redisDown.compareAndSet(false, true)) {
+                log.warn("[RATE] shared WebSocket limiter unavailable, using per-pod buckets: {}", ex.toString());
             }
-            return bucket;
+            return null;
         }
-        return localBuckets.computeIfAbsent(key, k -> Bucket4j.builder().addLimit(limit).build());
     }
 }
@@ -0,0 +1,177 @@
+package com.om.Real_Time_Communication;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.databind.CBORMapper;
+import com.om.Real_Time_Communication.config.BinaryEnvelopeInterceptor;
+import com.om.Real_Time_Communication.dto.RoomEvent;
+import com.om.Real_Time_Communication.models.ChatMessage;
+import com.om.Real_Time_Communication.models.ChatRoom;
+import org.junit.jupiter.api.Test;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.util.MimeType;
+import org.springframework.util.MimeTypeUtils;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BinaryEnvelopeInterceptorTest {
+
+    private final BinaryEnvelopeInterceptor interceptor = new BinaryEnvelopeInterceptor(true);
+
+    @Test
+    void cborSessionSubscribesToTheCborRoomTopic() {
+        interceptor.preSend(connect("s1", "cbor"), null);
+        assertTrue(interceptor.isCbor("s1"));
+
+        Message<?> room = interceptor.preSend(subscribe("s1", "/topic/room.r-7"), null);
+        Message<?> typing = interceptor.preSend(subscribe("s1", "/topic/room.r-7.typing"), null);
+
+        assertEquals("/topic/room.r-7.cbor", StompHeaderAccessor.wrap(room).getDestination());
+        assertEquals("/topic/room.r-7.typing", StompHeaderAccessor.wrap(typing).getDestination());
+    }
+
+    @Test
+    void cborTopicFrameIsLabeledNotReencoded() {
+        interceptor.preSend(connect("s1", "cbor"), null);
+        byte[] cbor = event().cborRoomFrame();
+
+        Message<?> out = interceptor.preSend(
+                frame("s1", "/topic/room.r-7.cbor", MimeTypeUtils.APPLICATION_OCTET_STREAM, cbor), null);
+
+        StompHeaderAccessor acc = StompHeaderAccessor.wrap(out);
+        assertSame(cbor, out.getPayload());
+        assertEquals("/topic/room.r-7", acc.getDestination());
+        assertEquals("cbor", acc.getFirstNativeHeader(BinaryEnvelopeInterceptor.ENCODING_HEADER));
+    }
+
+    @Test
+    void roomEventCborCarriesCiphertextAsBytes() throws Exception {
+        RoomEvent event = event();
+        byte[] cbor = event.cborRoomFrame();
+
+        JsonNode decoded = new CBORMapper().readTree(cbor);
+        assertEquals("m1", decoded.get("messageId").asText());
+        assertTrue(decoded.get("ciphertext").isBinary());
+        assertArrayEquals(new byte[]{4, 5, 6, 7}, decoded.get("ciphertext").binaryValue());
+        assertArrayEquals(new byte[]{1, 2, 3}, decoded.get("iv").binaryValue());
+        assertTrue(cbor.length < event.roomFrame().length);
+        assertSame(cbor, event.cborRoomFrame());
+    }
+
+    @Test
+    void inboxCopyForACborSessionGetsThePreEncodedBody() throws Exception {
+        interceptor.preSend(connect("s1", "cbor"), null);
+        AtomicInteger encodes = new AtomicInteger();
+        Supplier<byte[]> cbor = counting(event().cborInboxFrame(room(), null), encodes);
+
+        Message<?> out = interceptor.preSend(resolvedInbox("s1", cbor), null);
+
+        assertEquals(1, encodes.get());
+        assertNull(out.getHeaders().get(RoomEvent.CBOR_BODY_HEADER));
+        assertEquals(MimeTypeUtils.APPLICATION_OCTET_STREAM,
+                SimpMessageHeaderAccessor.getContentType(out.getHeaders()));
+        JsonNode decoded = new CBORMapper().readTree((byte[]) out.getPayload());
+        assertEquals("r-7", decoded.get("roomKey").asText());
+        assertTrue(decoded.get("ciphertext").isBinary());
+    }
+
+    @Test
+    void inboxCopyForAJsonSessionNeverEncodesCbor() {
+        interceptor.preSend(connect("s2", null), null);
+        AtomicInteger encodes = new AtomicInteger();
+        Message<byte[]> msg = resolvedInbox("s2", counting(event().cborInboxFrame(room(), null), encodes));
+
+        assertSame(msg, interceptor.preSend(msg, null));
+        assertEquals(0, encodes.get());
+    }
+
+    @Test
+    void jsonSessionsAreUntouched() {
+        interceptor.preSend(connect("s2", null), null);
+        Message<byte[]> sub = subscribe("s2", "/topic/room.r-7");
+        Message<byte[]> frame = frame("s2", "/topic/room.r-7", MimeTypeUtils.APPLICATION_JSON, event().roomFrame());
+
+        assertSame(sub, interceptor.preSend(sub, null));
+        assertSame(frame, interceptor.preSend(frame, null));
+    }
+
+    @Test
+    void disabledIgnoresTheCborRequest() {
+        BinaryEnvelopeInterceptor off = new BinaryEnvelopeInterceptor(false);
+        off.preSend(connect("s4", "cbor"), null);
+
+        assertFalse(off.isCbor("s4"));
+    }
+
+    @Test
+    void disconnectForgetsTheSession() {
+        interceptor.preSend(connect("s3", "cbor"), null);
+        StompHeaderAccessor acc = StompHeaderAccessor.create(StompCommand.DISCONNECT);
+        acc.setSessionId("s3");
+        interceptor.preSend(MessageBuilder.createMessage(new byte[0], acc.getMessageHeaders()), null);
+
+        assertFalse(interceptor.isCbor("s3"));
+    }
+
+    private static RoomEvent event() {
+        ChatMessage m = new ChatMessage();
+        m.setRoomId(7L);
+        m.setMessageId("m1");
+        m.setSenderId(1L);
+        m.setE2ee(true);
+        m.setIv(new byte[]{1, 2, 3});
+        m.setCiphertext(new byte[]{4, 5, 6, 7});
+        return RoomEvent.of(m, new ObjectMapper().findAndRegisterModules());
+    }
+
+    private static ChatRoom room() {
+        ChatRoom room = new ChatRoom();
+        room.setRoomId("r-7");
+        return room;
+    }
+
+    private static Supplier<byte[]> counting(Supplier<byte[]> delegate, AtomicInteger calls) {
+        return () -> {
+            calls.incrementAndGet();
+            return delegate.get();
+        };
+    }
+
+    private static Message<byte[]> connect(String sessionId, String encoding) {
+        StompHeaderAccessor acc = StompHeaderAccessor.create(StompCommand.CONNECT);
+        acc.setSessionId(sessionId);
+        if (encoding != null) acc.setNativeHeader(BinaryEnvelopeInterceptor.ENCODING_HEADER, encoding);
+        return MessageBuilder.createMessage(new byte[0], acc.getMessageHeaders());
+    }
+
+    private static Message<byte[]> subscribe(String sessionId, String destination) {
+        StompHeaderAccessor acc = StompHeaderAccessor.create(StompCommand.SUBSCRIBE);
+        acc.setSessionId(sessionId);
+        acc.setDestination(destination);
+        return MessageBuilder.createMessage(new byte[0], acc.getMessageHeaders());
+    }
+
+    private static Message<byte[]> frame(String sessionId, String destination,
+                                         MimeType type, byte[] payload) {
+        StompHeaderAccessor acc = StompHeaderAccessor.create(StompCommand.MESSAGE);
+        acc.setSessionId(sessionId);
+        acc.setDestination(destination);
+        acc.setContentType(type);
+        return MessageBuilder.createMessage(payload, acc.getMessageHeaders());
+    }
+
+    /** What UserDestinationMessageHandler puts on the broker channel for one of the user's sessions. */
+    private static Message<byte[]> resolvedInbox(String sessionId, Supplier<byte[]> cbor) {
+        Message<byte[]> sent = RoomEvent.jsonMessage(event().inboxFrame(room(), null), cbor);
+        SimpMessageHeaderAccessor acc = SimpMessageHeaderAccessor.wrap(sent);
+        acc.setDestination("/queue/inbox-user" + sessionId);
+        return MessageBuilder.createMessage(sent.getPayload(), acc.getMessageHeaders());
+    }
+}
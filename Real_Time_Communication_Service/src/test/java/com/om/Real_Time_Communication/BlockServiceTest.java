@@ -0,0 +1,70 @@
+package com.om.Real_Time_Communication;
+
+import com.om.Real_Time_Communication.Repository.UserBlockRepository;
+import com.om.Real_Time_Communication.models.UserBlock;
+import com.om.Real_Time_Communication.service.BlockService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ValueOperations;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+class BlockServiceTest {
+
+    private UserBlockRepository repo;
+    private ValueOperations<String, String> values;
+    private BlockService service;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        repo = mock(UserBlockRepository.class);
+        StringRedisTemplate redis = mock(StringRedisTemplate.class);
+        values = mock(ValueOperations.class);
+        when(redis.opsForValue()).thenReturn(values);
+
+        service = new BlockService();
+        ReflectionTestUtils.setField(service, "blockRepo", repo);
+        ReflectionTestUtils.setField(service, "redis", redis);
+    }
+
+    @Test
+    void pairIsServedFromCacheUntilAnotherNodeBumpsItsVersion() {
+        when(repo.findActiveBlockBetween("2", "1")).thenReturn(List.of(), List.of(new UserBlock()));
+
+        assertFalse(service.isBlocked("2", "1"));
+        assertFalse(service.isBlocked("1", "2"), "both directions share one entry");
+        verify(repo, times(1)).findActiveBlockBetween(any(), any());
+
+        when(values.get("block:v:1:2")).thenReturn("1"); // blockUser ran on another node
+        assertTrue(service.isBlocked("2", "1"));
+        verify(repo, times(2)).findActiveBlockBetween(any(), any());
+    }
+
+    @Test
+    void blockingBumpsTheSharedVersion() {
+        when(repo.findByBlockerIdAndBlockedId("1", "2")).thenReturn(Optional.empty());
+
+        service.blockUser("1", "2");
+        service.unblockUser("2", "1");
+
+        verify(values, times(2)).increment("block:v:1:2");
+    }
+
+    @Test
+    void redisOutageFallsBackToTheDatabase() {
+        when(values.get(any())).thenThrow(new IllegalStateException("redis down"));
+        when(repo.findActiveBlockBetween("1", "2")).thenReturn(List.of(new UserBlock()));
+
+        assertTrue(service.isBlocked("1", "2"));
+        assertTrue(service.isBlocked("1", "2"));
+        verify(repo, times(1)).findActiveBlockBetween("1", "2");
+    }
+}
@@ -0,0 +1,85 @@
+package com.om.Real_Time_Communication;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.databind.CBORMapper;
+import com.om.Real_Time_Communication.config.BinaryEnvelopeInterceptor;
+import com.om.Real_Time_Communication.config.WebSocketConfig;
+import com.om.Real_Time_Communication.dto.ChatSendDto;
+import org.junit.jupiter.api.Test;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.converter.CompositeMessageConverter;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.util.MimeType;
+import org.springframework.util.MimeTypeUtils;
+import org.springframework.web.socket.config.annotation.DelegatingWebSocketMessageBrokerConfiguration;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * The broker converter exactly as {@link WebSocketConfig} configures it: CBOR only for frames
+ * labelled application/cbor, JSON for everything else in both directions.
+ */
+class BrokerMessageConverterTest {
+
+    private final CompositeMessageConverter converter = brokerConverter();
+
+    @Test
+    void untypedJsonSendIsReadAsJson() {
+        String json = "{\"messageId\":\"m1\",\"type\":\"TEXT\",\"body\":\"hello\",\"iv\":\"AQID\"}";
+
+        ChatSendDto dto = (ChatSendDto) converter.fromMessage(send(json.getBytes(StandardCharsets.UTF_8), null), ChatSendDto.class);
+
+        assertNotNull(dto);
+        assertEquals("m1", dto.getMessageId());
+        assertEquals("hello", dto.getBody());
+        assertArrayEquals(new byte[]{1, 2, 3}, dto.getIv());
+    }
+
+    @Test
+    void cborLabelledSendIsReadAsCbor() throws Exception {
+        byte[] cbor = new CBORMapper().writeValueAsBytes(Map.of("messageId", "m2", "ciphertext", new byte[]{9, 8}));
+
+        ChatSendDto dto = (ChatSendDto) converter.fromMessage(send(cbor, BinaryEnvelopeInterceptor.APPLICATION_CBOR), ChatSendDto.class);
+
+        assertEquals("m2", dto.getMessageId());
+        assertArrayEquals(new byte[]{9, 8}, dto.getCiphertext());
+    }
+
+    @Test
+    void convertAndSendStillProducesJson() throws Exception {
+        List<Message<?>> sent = new ArrayList<>();
+        SimpMessagingTemplate template = new SimpMessagingTemplate((message, timeout) -> sent.add(message));
+        template.setMessageConverter(converter);
+
+        template.convertAndSend("/queue/ack", Map.of("messageId", "m3", "status", "ACK"));
+
+        Message<?> out = sent.get(0);
+        MimeType type = StompHeaderAccessor.wrap(out).getContentType();
+        assertTrue(MimeTypeUtils.APPLICATION_JSON.equalsTypeAndSubtype(type), "content-type was " + type);
+        JsonNode body = new ObjectMapper().readTree((byte[]) out.getPayload());
+        assertEquals("m3", body.get("messageId").asText());
+    }
+
+    private static Message<byte[]> send(byte[] payload, MimeType contentType) {
+        StompHeaderAccessor acc = StompHeaderAccessor.create(StompCommand.SEND);
+        acc.setDestination("/app/rooms/r-1/send");
+        if (contentType != null) acc.setContentType(contentType);
+        return MessageBuilder.createMessage(payload, acc.getMessageHeaders());
+    }
+
+    private static CompositeMessageConverter brokerConverter() {
+        WebSocketConfig config = new WebSocketConfig(null, null, null, null, null, null, null, null, null);
+        DelegatingWebSocketMessageBrokerConfiguration broker = new DelegatingWebSocketMessageBrokerConfiguration();
+        broker.setConfigurers(List.of(config));
+        return broker.brokerMessageConverter();
+    }
+}
@@ -0,0 +1,105 @@
+package com.om.Real_Time_Communication;
+
+import com.om.Real_Time_Communication.service.DeliveryRecorder;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.LongStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class DeliveryRecorderTest {
+
+    private final JdbcTemplate jdbc = mock(JdbcTemplate.class);
+    private final DeliveryRecorder recorder = new DeliveryRecorder(jdbc);
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void pendingRowsGoOutAsOneConflictTolerantBatch() {
+        recorder.recordPending("m1", 10L, Arrays.asList(2L, null, 3L));
+
+        ArgumentCaptor<String> sql = ArgumentCaptor.forClass(String.class);
+        ArgumentCaptor<List<Object[]>> rows = ArgumentCaptor.forClass(List.class);
+        verify(jdbc, times(1)).batchUpdate(sql.capture(), rows.capture());
+        assertTrue(sql.getValue().contains("ON CONFLICT (msg_id, user_id) DO NOTHING"));
+        assertEquals(2, rows.getValue().size());
+        assertArrayEquals(new Object[]{"m1", 2L, 10L, "PENDING"}, Arrays.copyOf(rows.getValue().get(0), 4));
+        assertEquals(3L, rows.getValue().get(1)[1]);
+
+        recorder.recordPending("m2", 10L, List.of());
+        verifyNoMoreInteractions(jdbc);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void flushCoalescesTransitionsIntoBoundedBatches() {
+        recorder.markSent("m1", ids(0, 700));
+        recorder.markSent("m2", ids(0, 500));
+
+        recorder.flush();
+
+        ArgumentCaptor<List<Object[]>> batches = ArgumentCaptor.forClass(List.class);
+        verify(jdbc, times(3)).batchUpdate(startsWith("UPDATE message_delivery"), batches.capture());
+        assertEquals(List.of(500, 500, 200), batches.getAllValues().stream().map(List::size).toList());
+        Object[] first = batches.getAllValues().get(0).get(0);
+        assertEquals("SENT_TO_WS", first[0]);
+        assertEquals("m1", first[2]);
+        assertEquals("PENDING", first[4]);
+    }
+
+    @Test
+    void idleFlushTouchesNothingAndRunsOnAFixedDelay() throws Exception {
+        recorder.flush();
+        verifyNoInteractions(jdbc);
+
+        Scheduled scheduled = DeliveryRecorder.class.getMethod("flush").getAnnotation(Scheduled.class);
+        assertNotNull(scheduled);
+        assertEquals(200L, scheduled.fixedDelay());
+    }
+
+    @Test
+    void transitionsBeyondTheCapAreDropped() {
+        recorder.markSent("m1", ids(0, 50_000));
+        recorder.markSent("m2", ids(0, 10));
+
+        List<Integer> sizes = new ArrayList<>();
+        doAnswer(inv -> { sizes.add(inv.<List<?>>getArgument(1).size()); return new int[0]; })
+                .when(jdbc).batchUpdate(anyString(), anyList());
+        recorder.flush();
+
+        assertEquals(50_000, sizes.stream().mapToInt(Integer::intValue).sum());
+
+        // once drained the queue accepts transitions again
+        sizes.clear();
+        recorder.markSent("m3", ids(0, 1));
+        recorder.flush();
+        assertEquals(List.of(1), sizes);
+    }
+
+    @Test
+    void failedBatchIsDroppedAndTheRestWaitsForTheNextFlush() {
+        List<Integer> sizes = new ArrayList<>();
+        doThrow(new IllegalStateException("db down"))
+                .doAnswer(inv -> { sizes.add(inv.<List<?>>getArgument(1).size()); return new int[0]; })
+                .when(jdbc).batchUpdate(anyString(), anyList());
+        recorder.markSent("m1", ids(0, 600));
+
+        recorder.flush();          // first 500 fail and are not retried
+        recorder.flush();          // remaining 100
+        recorder.flush();          // nothing left
+
+        assertEquals(List.of(100), sizes);
+        verify(jdbc, times(2)).batchUpdate(anyString(), anyList());
+    }
+
+    private static List<Long> ids(long from, long to) {
+        return LongStream.range(from, to).boxed().toList();
+    }
+}
@@ -0,0 +1,220 @@
+package com.om.Real_Time_Communication;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.om.Real_Time_Communication.dto.SearchMessageDoc;
+import com.om.Real_Time_Communication.utility.ElasticsearchSearchWriter;
+import com.om.Real_Time_Communication.utility.ElasticsearchSearchWriter.Overflow;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
+import org.springframework.data.elasticsearch.BulkFailureException;
+import org.springframework.data.elasticsearch.core.ElasticsearchOperations;
+import org.springframework.data.elasticsearch.core.mapping.IndexCoordinates;
+import org.springframework.data.elasticsearch.core.query.IndexQuery;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class ElasticsearchSearchWriterTest {
+
+    private final ElasticsearchOperations es = mock(ElasticsearchOperations.class);
+    private final AtomicLong now = new AtomicLong(1_000_000);
+    private final SimpleMeterRegistry meters = new SimpleMeterRegistry();
+
+    @TempDir
+    Path spillDir;
+
+    @Test
+    void dropOldestKeepsTheQueueBounded() {
+        ElasticsearchSearchWriter writer = writer(3, Overflow.DROP_OLDEST);
+        for (int i = 0; i < 5; i++) writer.enqueue(doc("m" + i));
+
+        assertEquals(3, writer.queueDepth());
+        assertEquals(2.0, rejected("overflow"));
+
+        List<String> sent = captureSent();
+        writer.flush();
+        assertEquals(List.of("m2", "m3", "m4"), sent);
+    }
+
+    @Test
+    void spillParksOverflowOnDiskAndReplaysIt() {
+        ElasticsearchSearchWriter writer = writer(2, Overflow.SPILL);
+        for (int i = 0; i < 4; i++) writer.enqueue(doc("m" + i));
+        assertEquals(2, writer.queueDepth());
+        assertEquals(2, writer.spilledCount());
+
+        List<String> sent = captureSent();
+        writer.flush(); // sends the queue, replays the spill only once there is room
+        writer.flush();
+
+        assertEquals(List.of("m0", "m1", "m2", "m3"), sent);
+        assertEquals(0, writer.spilledCount());
+        assertEquals(0.0, rejected("overflow"));
+    }
+
+    @Test
+    void replayIsBoundedByFreeSlotsAndResumesFromItsOffset() throws Exception {
+        ElasticsearchSearchWriter writer = writer(4, Overflow.SPILL);
+        for (int i = 0; i < 10; i++) writer.enqueue(doc("m" + i));
+        assertEquals(6, writer.spilledCount());
+        Path spill = spillDir.resolve("es-pending.jsonl");
+        long spillSize = Files.size(spill);
+
+        List<String> sent = captureSent();
+        writer.flush();                      // queue full: sends m0..m3, replays nothing
+        writer.flush();                      // replays four of six into the empty queue
+        assertEquals(List.of("m0", "m1", "m2", "m3", "m4", "m5", "m6", "m7"), sent);
+        assertEquals(2, writer.spilledCount());
+        assertEquals(spillSize, Files.size(spill), "the spill file is not rewritten");
+
+        // a restarted pod picks up after the last replayed line
+        ElasticsearchSearchWriter restarted = writer(4, Overflow.SPILL);
+        assertEquals(2, restarted.spilledCount());
+        restarted.flush();
+        assertEquals(List.of("m0", "m1", "m2", "m3", "m4", "m5", "m6", "m7", "m8", "m9"), sent);
+        assertFalse(Files.exists(spill), "a fully replayed file is deleted");
+        assertFalse(Files.exists(spillDir.resolve("es-pending.offset")));
+    }
+
+    @Test
+    void failedBulkBacksOffExponentiallyThenRetries() {
+        ElasticsearchSearchWriter writer = writer(10, Overflow.DROP_OLDEST);
+        when(es.bulkIndex(anyList(), any(IndexCoordinates.class)))
+                .thenThrow(new RuntimeException("es down"))
+                .thenThrow(new RuntimeException("es down"))
+                .thenReturn(List.of());
+        writer.enqueue(doc("m0"));
+
+        writer.flush();                      // failure 1 -> 500ms
+        now.addAndGet(499);
+        writer.flush();                      // still backing off
+        verify(es, times(1)).bulkIndex(anyList(), any(IndexCoordinates.class));
+
+        now.addAndGet(1);
+        writer.flush();                      // failure 2 -> 1000ms
+        now.addAndGet(999);
+        writer.flush();
+        verify(es, times(2)).bulkIndex(anyList(), any(IndexCoordinates.class));
+
+        now.addAndGet(1);
+        writer.flush();                      // succeeds
+        verify(es, times(3)).bulkIndex(anyList(), any(IndexCoordinates.class));
+        assertEquals(0, writer.queueDepth());
+    }
+
+    @Test
+    void bulkResponseDecidesPerDocument() {
+        ElasticsearchSearchWriter writer = writer(10, Overflow.DROP_OLDEST);
+        when(es.bulkIndex(anyList(), any(IndexCoordinates.class))).thenThrow(new BulkFailureException("partial", Map.of(
+                "bad", new BulkFailureException.FailureDetails(400, "mapper_parsing_exception"),
+                "busy", new BulkFailureException.FailureDetails(429, "es_rejected_execution_exception"))));
+        writer.enqueue(doc("ok"));
+        writer.enqueue(doc("bad"));
+        writer.enqueue(doc("busy"));
+
+        writer.flush();
+        assertEquals(1.0, rejected("permanent"));
+
+        List<String> sent = captureSent();
+        now.addAndGet(500);
+        writer.flush();
+        assertEquals(List.of("busy"), sent, "only the throttled document is retried");
+    }
+
+    @Test
+    void documentsAreDroppedAfterMaxAttempts() {
+        ElasticsearchSearchWriter writer = writer(10, Overflow.DROP_OLDEST);
+        when(es.bulkIndex(anyList(), any(IndexCoordinates.class))).thenThrow(new BulkFailureException("partial", Map.of(
+                "m0", new BulkFailureException.FailureDetails(429, "es_rejected_execution_exception"))));
+        writer.enqueue(doc("m0"));
+
+        for (int i = 0; i < 10; i++) {
+            writer.flush();
+            now.addAndGet(120_000);
+        }
+
+        verify(es, times(5)).bulkIndex(anyList(), any(IndexCoordinates.class));
+        assertEquals(0, writer.queueDepth());
+        assertEquals(1.0, rejected("retries"));
+    }
+
+    @Test
+    void requestLevelFailureIsRetriedFirstWithoutChargingAttempts() {
+        ElasticsearchSearchWriter writer = writer(10, Overflow.DROP_OLDEST);
+        when(es.bulkIndex(anyList(), any(IndexCoordinates.class))).thenThrow(new RuntimeException("es down"));
+        writer.enqueue(doc("m0"));
+        writer.enqueue(doc("m1"));
+
+        for (int i = 0; i < 2 * 5; i++) {
+            writer.flush();
+            now.addAndGet(120_000);
+        }
+        writer.enqueue(doc("m2"));
+
+        List<String> sent = captureSent();
+        writer.flush();
+
+        assertEquals(List.of("m0", "m1", "m2"), sent);
+        assertEquals(0.0, rejected("retries"));
+        assertEquals(0.0, rejected("overflow"));
+    }
+
+    @Test
+    void retriesNeverDropQueuedDocumentsUnderBlock() {
+        ElasticsearchSearchWriter writer = writer(2, Overflow.BLOCK);
+        when(es.bulkIndex(anyList(), any(IndexCoordinates.class))).thenThrow(new BulkFailureException("partial", Map.of(
+                "m0", new BulkFailureException.FailureDetails(429, "es_rejected_execution_exception"),
+                "m1", new BulkFailureException.FailureDetails(429, "es_rejected_execution_exception"))));
+        writer.enqueue(doc("m0"));
+        writer.enqueue(doc("m1"));
+        writer.flush();                      // both held for retry
+        writer.enqueue(doc("m2"));
+        writer.enqueue(doc("m3"));           // queue full again
+
+        List<String> sent = captureSent();
+        now.addAndGet(500);
+        writer.flush();
+
+        assertEquals(List.of("m0", "m1", "m2", "m3"), sent);
+        assertEquals(0.0, rejected("overflow"));
+    }
+
+    private ElasticsearchSearchWriter writer(int capacity, Overflow overflow) {
+        return new ElasticsearchSearchWriter(es, new ObjectMapper().findAndRegisterModules(),
+                capacity, overflow, spillDir, now::get, meters);
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<String> captureSent() {
+        List<String> sent = new ArrayList<>();
+        doAnswer(inv -> {
+            for (IndexQuery q : (List<IndexQuery>) inv.getArgument(0)) sent.add(q.getId());
+            return List.of();
+        }).when(es).bulkIndex(anyList(), any(IndexCoordinates.class));
+        return sent;
+    }
+
+    private double rejected(String reason) {
+        return meters.get("rtc.search.es.rejected").tag("reason", reason).counter().count();
+    }
+
+    private static SearchMessageDoc doc(String id) {
+        SearchMessageDoc d = new SearchMessageDoc();
+        d.setMessageId(id);
+        d.setRoomId(1L);
+        d.setCreatedAt(Instant.ofEpochMilli(1_000));
+        d.setText("hello " + id);
+        return d;
+    }
+}
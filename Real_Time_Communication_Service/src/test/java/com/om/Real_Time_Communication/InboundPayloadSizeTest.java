@@ -0,0 +1,28 @@
+package com.om.Real_Time_Communication;
+
+import com.om.Real_Time_Communication.config.InboundSizeAndRateInterceptor;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class InboundPayloadSizeTest {
+
+    @Test
+    void matchesUtf8EncodingWithoutEncoding() {
+        for (String s : new String[]{"", "plain ascii", "ünïcödé", "€ and 中文", "emoji 😀!", "lone \uD800 surrogate"}) {
+            assertEquals(s.getBytes(StandardCharsets.UTF_8).length,
+                    InboundSizeAndRateInterceptor.payloadSize(s, 1024), s);
+        }
+    }
+
+    @Test
+    void stopsCountingPastTheCap() {
+        String big = "€".repeat(1000); // 3000 bytes
+        assertTrue(InboundSizeAndRateInterceptor.payloadSize(big, 100) > 100);
+        assertTrue(InboundSizeAndRateInterceptor.payloadSize("x".repeat(200), 100) > 100);
+        assertEquals(3, InboundSizeAndRateInterceptor.payloadSize(new byte[3], 100));
+        assertEquals(0, InboundSizeAndRateInterceptor.payloadSize(null, 100));
+    }
+}
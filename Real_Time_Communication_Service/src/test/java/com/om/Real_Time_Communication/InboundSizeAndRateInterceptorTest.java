@@ -0,0 +1,73 @@
+package com.om.Real_Time_Communication;
+
+import com.om.Real_Time_Communication.config.InboundSizeAndRateInterceptor;
+import com.om.Real_Time_Communication.config.SlidingWindowRateLimiter;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.MessageBuilder;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class InboundSizeAndRateInterceptorTest {
+
+    private final SlidingWindowRateLimiter limiter = mock(SlidingWindowRateLimiter.class);
+    private final InboundSizeAndRateInterceptor interceptor = new InboundSizeAndRateInterceptor(limiter);
+    private final Map<String, Object> session = new ConcurrentHashMap<>();
+
+    @Test
+    void sendKeysAreBuiltOncePerSession() {
+        interceptor.preSend(frame(StompCommand.SEND, "/app/rooms/7/send"), null);
+        interceptor.preSend(frame(StompCommand.SEND, "/app/rooms/7/send"), null);
+        interceptor.preSend(frame(StompCommand.SEND, "/app/room/8/send"), null);
+
+        List<String> keys = checkedKeys(6);
+        assertEquals(List.of("u:42:r:7:send", "u:42:send", "u:42:r:7:send", "u:42:send", "u:42:r:8:send", "u:42:send"), keys);
+        assertSame(keys.get(0), keys.get(2), "room key reused, not rebuilt");
+        assertSame(keys.get(1), keys.get(3));
+        assertSame(keys.get(1), keys.get(5));
+    }
+
+    @Test
+    void subscribeKeysAreBuiltOncePerSession() {
+        interceptor.preSend(frame(StompCommand.SUBSCRIBE, "/topic/room.7"), null);
+        interceptor.preSend(frame(StompCommand.SUBSCRIBE, "/user/queue/ack"), null);
+        interceptor.preSend(frame(StompCommand.SUBSCRIBE, "/topic/room.8"), null);
+
+        List<String> keys = checkedKeys(5);
+        assertEquals(List.of("s:sid-1:sub", "u:42:room-subs", "s:sid-1:sub", "s:sid-1:sub", "u:42:room-subs"), keys);
+        assertSame(keys.get(0), keys.get(3));
+        assertSame(keys.get(1), keys.get(4));
+    }
+
+    @Test
+    void sendWithoutRoomDestinationUsesTheCatchAllRoomKey() {
+        interceptor.preSend(frame(StompCommand.SEND, null), null);
+        interceptor.preSend(frame(StompCommand.SEND, "/app/chat"), null);
+
+        assertEquals(List.of("u:42:r:-1:send", "u:42:send", "u:42:r:-1:send", "u:42:send"), checkedKeys(4));
+    }
+
+    private List<String> checkedKeys(int calls) {
+        ArgumentCaptor<String> keys = ArgumentCaptor.forClass(String.class);
+        verify(limiter, times(calls)).checkOrThrow(keys.capture(), anyInt(), anyLong());
+        return keys.getAllValues();
+    }
+
+    private Message<byte[]> frame(StompCommand command, String destination) {
+        StompHeaderAccessor acc = StompHeaderAccessor.create(command);
+        if (destination != null) acc.setDestination(destination);
+        acc.setSessionId("sid-1");
+        acc.setSessionAttributes(session);
+        acc.setUser(() -> "42");
+        return MessageBuilder.createMessage(new byte[0], acc.getMessageHeaders());
+    }
+}
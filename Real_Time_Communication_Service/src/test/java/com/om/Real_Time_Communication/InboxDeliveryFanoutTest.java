@@ -0,0 +1,78 @@
+package com.om.Real_Time_Communication;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.om.Real_Time_Communication.Repository.ChatRoomRepository;
+import com.om.Real_Time_Communication.Repository.MessageDeliveryRepository;
+import com.om.Real_Time_Communication.models.ChatMessage;
+import com.om.Real_Time_Communication.models.ChatRoom;
+import com.om.Real_Time_Communication.models.MessageType;
+import com.om.Real_Time_Communication.service.DeliveryRecorder;
+import com.om.Real_Time_Communication.service.InboxDeliveryService;
+import com.om.Real_Time_Communication.service.RoomMembershipService;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class InboxDeliveryFanoutTest {
+
+    @Test
+    void eachRecipientGetsExactlyOneInboxFrame() {
+        ChatRoomRepository rooms = mock(ChatRoomRepository.class);
+        RoomMembershipService membership = mock(RoomMembershipService.class);
+        SimpMessagingTemplate messaging = mock(SimpMessagingTemplate.class);
+        when(messaging.getUserDestinationPrefix()).thenReturn("/user/");
+        DeliveryRecorder recorder = mock(DeliveryRecorder.class);
+        SimpleMeterRegistry meters = new SimpleMeterRegistry();
+
+        InboxDeliveryService service = new InboxDeliveryService(
+                mock(MessageDeliveryRepository.class), rooms, membership, messaging, recorder,
+                new ObjectMapper().findAndRegisterModules(), meters);
+
+        ChatRoom room = ChatRoom.builder().id(10L).roomId("r-10").group(true).build();
+        when(rooms.findById(10L)).thenReturn(Optional.of(room));
+
+        ChatMessage saved = new ChatMessage();
+        saved.setRoomId(10L);
+        saved.setSenderId(1L);
+        saved.setMessageId("m1");
+        saved.setType(MessageType.TEXT);
+        saved.setServerTs(Instant.now());
+
+        service.sendInboxEvent(saved, List.of(1L, 2L, 3L), null);
+
+        ArgumentCaptor<Message<byte[]>> to2 = frameCaptor();
+        ArgumentCaptor<Message<byte[]>> to3 = frameCaptor();
+        verify(messaging, times(1)).send(eq("/user/2/queue/inbox"), to2.capture());
+        verify(messaging, times(1)).send(eq("/user/3/queue/inbox"), to3.capture());
+        verify(messaging, never()).send(eq("/user/1/queue/inbox"), any(Message.class));
+        // a group room's inbox frame is encoded once and shared by every recipient
+        assertSame(to2.getValue().getPayload(), to3.getValue().getPayload());
+        String json = new String(to2.getValue().getPayload(), StandardCharsets.UTF_8);
+        assertTrue(json.startsWith("{\"type\":\"message\",\"roomKey\":\"r-10\""), json);
+        assertTrue(json.contains("\"messageId\":\"m1\""), json);
+        verify(membership, never()).memberIds(anyLong());
+        verify(recorder).recordPending("m1", 10L, List.of(2L, 3L));
+        verify(recorder).markSent("m1", List.of(2L, 3L));
+
+        DistributionSummary frames = meters.get("rtc.inbox.frames.per.message").summary();
+        assertEquals(1, frames.count());
+        assertEquals(2.0, frames.totalAmount());
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static ArgumentCaptor<Message<byte[]>> frameCaptor() {
+        return (ArgumentCaptor) ArgumentCaptor.forClass(Message.class);
+    }
+}
@@ -0,0 +1,119 @@
+package com.om.Real_Time_Communication;
+
+import com.om.Real_Time_Communication.config.JwksCache;
+import com.om.Real_Time_Communication.config.RsaKeyUtil;
+import com.om.Real_Time_Communication.config.RtcJwtConfig;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.math.BigInteger;
+import java.security.KeyPairGenerator;
+import java.security.interfaces.RSAPublicKey;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class JwksCacheTest {
+
+    private final AtomicLong now = new AtomicLong(1_000_000);
+    private final AtomicInteger fetches = new AtomicInteger();
+    private volatile CountDownLatch gate = new CountDownLatch(0);
+    private volatile List<String> kids = List.of("k1");
+    private final RSAPublicKey pub = newKey();
+
+    @Test
+    void concurrentColdStartSharesOneFetch() throws Exception {
+        gate = new CountDownLatch(1);
+        JwksCache cache = cache();
+
+        ExecutorService pool = Executors.newFixedThreadPool(16);
+        List<Future<RSAPublicKey>> results = new ArrayList<>();
+        for (int i = 0; i < 16; i++) results.add(pool.submit(() -> cache.getKey("k1")));
+        Thread.sleep(100);
+        gate.countDown();
+        for (Future<RSAPublicKey> r : results) assertNotNull(r.get(5, TimeUnit.SECONDS));
+        pool.shutdown();
+
+        assertEquals(1, fetches.get());
+    }
+
+    @Test
+    void unknownKidsRefetchAtMostOncePerInterval() {
+        JwksCache cache = cache();
+        assertNotNull(cache.getKey("k1"));
+
+        for (int i = 0; i < 100; i++) assertNull(cache.getKey("forged-" + (i % 3)));
+        assertEquals(1, fetches.get(), "inside the refetch floor no kid forces a fetch");
+
+        now.addAndGet(31_000);
+        kids = List.of("k1", "k2");
+        assertNotNull(cache.getKey("k2"), "a rotated-in kid is picked up once the floor has passed");
+        assertNull(cache.getKey("forged-0"));
+        assertEquals(2, fetches.get());
+    }
+
+    @Test
+    void keysKeepBeingServedDuringRefreshAhead() {
+        JwksCache cache = cache();
+        assertNotNull(cache.getKey("k1"));
+
+        gate = new CountDownLatch(1);          // next fetch hangs
+        now.addAndGet(9 * 60 * 1000);          // past 80% of the 10 minute max-age
+        long t0 = System.nanoTime();
+        assertEquals(pub.getModulus(), cache.getKey("k1").getModulus());
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - t0) < 500, "must not wait for the refresh");
+        assertEquals(2, fetches.get());
+        gate.countDown();
+    }
+
+    @SuppressWarnings("rawtypes")
+    private JwksCache cache() {
+        RtcJwtConfig cfg = new RtcJwtConfig("iss", "http://jwks", null, null);
+        return new JwksCache(cfg, new RsaKeyUtil(), now::get) {
+            @Override
+            protected Mono<ResponseEntity<Map>> fetch() {
+                fetches.incrementAndGet();
+                return Mono.fromCallable(() -> {
+                    gate.await();
+                    List<Map<String, String>> jwks = new ArrayList<>();
+                    for (String kid : kids) jwks.add(jwk(kid));
+                    HttpHeaders headers = new HttpHeaders();
+                    headers.setCacheControl("public, max-age=600");
+                    return new ResponseEntity<Map>(Map.of("keys", jwks), headers, HttpStatus.OK);
+                }).subscribeOn(Schedulers.boundedElastic());
+            }
+        };
+    }
+
+    private Map<String, String> jwk(String kid) {
+        Base64.Encoder b64 = Base64.getUrlEncoder().withoutPadding();
+        return Map.of("kty", "RSA", "use", "sig", "alg", "RS256", "kid", kid,
+                "n", b64.encodeToString(unsigned(pub.getModulus())),
+                "e", b64.encodeToString(unsigned(pub.getPublicExponent())));
+    }
+
+    private static byte[] unsigned(BigInteger v) {
+        byte[] b = v.toByteArray();
+        return b[0] == 0 ? java.util.Arrays.copyOfRange(b, 1, b.length) : b;
+    }
+
+    private static RSAPublicKey newKey() {
+        try {
+            KeyPairGenerator gen = KeyPairGenerator.getInstance("RSA");
+            gen.initialize(2048);
+            return (RSAPublicKey) gen.generateKeyPair().getPublic();
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
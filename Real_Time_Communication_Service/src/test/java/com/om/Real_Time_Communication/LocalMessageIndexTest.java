@@ -0,0 +1,145 @@
+package com.om.Real_Time_Communication;
+
+import com.om.Real_Time_Communication.dto.MessageCreated;
+import com.om.Real_Time_Communication.service.LocalMessageIndex;
+import com.om.Real_Time_Communication.service.SearchService.RecentHit;
+import org.apache.lucene.store.ByteBuffersDirectory;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LocalMessageIndexTest {
+
+    private static final long T0 = 1_700_000_000_000L;
+
+    private final AtomicLong now = new AtomicLong(T0);
+    private LocalMessageIndex index;
+
+    @AfterEach
+    void close() {
+        if (index != null) index.close();
+    }
+
+    @Test
+    void searchIsPartitionedByRoom() throws Exception {
+        index = newIndex();
+        index.index(1L, "a", T0, "lunch at noon");
+        index.index(2L, "b", T0, "lunch tomorrow");
+        index.refresh();
+
+        assertEquals(List.of("a"), ids(index.search(1L, "lunch", 10, null)));
+        assertEquals(List.of("b"), ids(index.search(2L, "lunch", 10, null)));
+    }
+
+    @Test
+    void visibilityCutoffIsExclusive() throws Exception {
+        index = newIndex();
+        index.index(1L, "old", T0 - 1000, "project kickoff");
+        index.index(1L, "edge", T0, "project kickoff notes");
+        index.index(1L, "new", T0 + 1000, "project kickoff recap");
+        index.refresh();
+
+        List<RecentHit> hits = index.search(1L, "project", 10, Instant.ofEpochMilli(T0));
+        assertEquals(List.of("new"), ids(hits));
+    }
+
+    @Test
+    void allTermsMustMatchAndLastTermIsAPrefix() throws Exception {
+        index = newIndex();
+        index.index(1L, "m1", T0, "Deploy the release candidate");
+        index.index(1L, "m2", T0 + 1, "release notes only");
+        index.index(1L, "m3", T0 + 2, "deploy went fine");
+        index.refresh();
+
+        assertEquals(List.of("m1"), ids(index.search(1L, "deploy rel", 10, null)));
+        assertEquals("Deploy the release candidate", index.search(1L, "DEPLOY candidate", 10, null).get(0).snippet());
+        assertTrue(index.search(1L, "?!", 10, null).isEmpty());
+    }
+
+    @Test
+    void blankQueryReturnsNewestFirst() throws Exception {
+        index = newIndex();
+        index.index(1L, "m1", T0, "first");
+        index.index(1L, "m2", T0 + 2, "third");
+        index.index(1L, "m3", T0 + 1, "second");
+        index.refresh();
+
+        assertEquals(List.of("m2", "m3"), ids(index.search(1L, " ", 2, null)));
+    }
+
+    @Test
+    void redeliveryReplacesAndE2eeIsSkipped() throws Exception {
+        index = newIndex();
+        index.index(event("dup", "hello world", false));
+        index.index(event("dup", "hello world", false));
+        index.index(event("secret", "hello cipher", true));
+        index.refresh();
+
+        assertEquals(List.of("dup"), ids(index.search(7L, "hello", 10, null)));
+    }
+
+    @Test
+    void deletedMessageIsNoLongerFound() throws Exception {
+        index = newIndex();
+        index.index(1L, "keep", T0, "budget review");
+        index.index(1L, "gone", T0 + 1, "budget leak");
+        index.refresh();
+        assertEquals(2, index.search(1L, "budget", 10, null).size());
+
+        index.delete("gone");
+        index.delete("never-indexed");
+        index.refresh();
+
+        assertEquals(List.of("keep"), ids(index.search(1L, "budget", 10, null)));
+        assertTrue(index.search(1L, "leak", 10, null).isEmpty());
+    }
+
+    @Test
+    void purgeDropsMessagesOutsideRetention() throws Exception {
+        index = newIndex();
+        index.index(1L, "stale", T0, "weekly sync");
+        index.index(1L, "fresh", T0 + Duration.ofDays(2).toMillis(), "weekly sync");
+        now.set(T0 + Duration.ofDays(8).toMillis());
+        index.purgeExpired();
+        index.refresh();
+
+        assertEquals(List.of("fresh"), ids(index.search(1L, "weekly", 10, null)));
+    }
+
+    @Test
+    void reopenedIndexReportsNewestPersistedMessage(@TempDir Path dir) throws Exception {
+        LocalMessageIndex first = new LocalMessageIndex(dir.toString(), 7);
+        first.index(1L, "m1", T0, "alpha");
+        first.index(1L, "m2", T0 + 5, "beta");
+        first.close();
+
+        index = new LocalMessageIndex(dir.toString(), 7);
+        assertEquals(T0 + 5, index.newestAtOpenMs());
+    }
+
+    private LocalMessageIndex newIndex() throws Exception {
+        return new LocalMessageIndex(new ByteBuffersDirectory(), Duration.ofDays(7), now::get);
+    }
+
+    private static MessageCreated event(String id, String body, boolean e2ee) {
+        MessageCreated ev = new MessageCreated();
+        ev.roomId = 7L;
+        ev.messageId = id;
+        ev.body = body;
+        ev.e2ee = e2ee;
+        ev.serverTs = Instant.ofEpochMilli(T0);
+        return ev;
+    }
+
+    private static List<String> ids(List<RecentHit> hits) {
+        return hits.stream().map(RecentHit::messageId).toList();
+    }
+}
@@ -0,0 +1,141 @@
+package com.om.Real_Time_Communication;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.om.Real_Time_Communication.Repository.ChatMessageRepository;
+import com.om.Real_Time_Communication.dto.MessageCreated;
+import com.om.Real_Time_Communication.models.ChatMessage;
+import com.om.Real_Time_Communication.service.LocalMessageIndex;
+import com.om.Real_Time_Communication.utility.MessageSearchIndexer;
+import com.om.Real_Time_Communication.utility.SearchWriter;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class MessageSearchIndexerTest {
+
+    private final StringRedisTemplate redis = mock(StringRedisTemplate.class);
+    private final StringRedisConnection conn = mock(StringRedisConnection.class);
+    private final SearchWriter writer = mock(SearchWriter.class);
+    private final SimpleMeterRegistry meters = new SimpleMeterRegistry();
+    private final LocalMessageIndex localIndex = mock(LocalMessageIndex.class);
+    private final ChatMessageRepository messages = mock(ChatMessageRepository.class);
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void wholeBatchGoesOutAsOnePipeline() {
+        when(redis.executePipelined(any(RedisCallback.class))).thenAnswer(inv -> {
+            ((RedisCallback<Object>) inv.getArgument(0)).doInRedis(conn);
+            return List.of();
+        });
+        MessageSearchIndexer indexer = indexer();
+
+        Instant ts = Instant.now().minusSeconds(2);
+        indexer.onMessageCreated(List.of(
+                delivery(1, "m1", false, "hello", ts),
+                delivery(1, "m2", true, null, ts),
+                delivery(2, "m3", false, "there", ts),
+                new Message("not json".getBytes(StandardCharsets.UTF_8), new MessageProperties())));
+
+        verify(redis, times(1)).executePipelined(any(RedisCallback.class));
+        ArgumentCaptor<Set<StringRedisConnection.StringTuple>> members = ArgumentCaptor.forClass(Set.class);
+        verify(conn).zAdd(eq("room:idx:1"), members.capture());
+        assertEquals(2, members.getValue().size());
+        verify(conn).zAdd(eq("room:idx:2"), anySet());
+        verify(conn).zRemRange("room:idx:1", 0, -10_001);
+        verify(conn).zRemRange("room:idx:2", 0, -10_001);
+        verify(conn).setEx("msg:body:m1", Duration.ofDays(7).toSeconds(), "hello");
+        verify(conn).setEx("msg:body:m3", Duration.ofDays(7).toSeconds(), "there");
+        verify(conn, never()).setEx(eq("msg:body:m2"), anyLong(), anyString());
+        verify(conn, never()).zCard(anyString());
+        verify(writer, times(3)).enqueue(any());
+
+        assertEquals(3.0, meters.get("rtc.search.indexer.batch.size").summary().totalAmount());
+        assertEquals(3, meters.get("rtc.search.indexer.lag").timer().count());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void batchOfUnreadablePayloadsTouchesNothing() {
+        MessageSearchIndexer indexer = indexer();
+
+        indexer.onMessageCreated(List.of(new Message("{".getBytes(StandardCharsets.UTF_8), new MessageProperties())));
+
+        verify(redis, never()).executePipelined(any(RedisCallback.class));
+        verifyNoInteractions(writer);
+    }
+
+    @Test
+    void localQueueIndexesCreatesAndRemovesDeletes() throws Exception {
+        MessageSearchIndexer indexer = indexer();
+
+        indexer.onLocalSearchEvent("{\"roomId\":1,\"messageId\":\"m1\",\"body\":\"hi\"}", "room.1.message.created");
+        indexer.onLocalSearchEvent("{\"roomId\":1,\"messageId\":\"m1\"}", "room.1.message.deleted");
+
+        ArgumentCaptor<MessageCreated> created = ArgumentCaptor.forClass(MessageCreated.class);
+        verify(localIndex).index(created.capture());
+        assertEquals("m1", created.getValue().messageId);
+        verify(localIndex).delete("m1");
+    }
+
+    @Test
+    void backfillDropsDeletedRowsAndDeletesMissedWhileDown() {
+        Instant lastCommit = Instant.ofEpochMilli(System.currentTimeMillis()).minus(Duration.ofHours(1));
+        when(localIndex.retention()).thenReturn(Duration.ofDays(30));
+        when(localIndex.newestAtOpenMs()).thenReturn(lastCommit.toEpochMilli());
+        ChatMessage live = message(1, "new", false, lastCommit.plusSeconds(10), null);
+        ChatMessage gone = message(2, "new-deleted", true, lastCommit.plusSeconds(20), lastCommit.plusSeconds(30));
+        ChatMessage old = message(3, "old-deleted", true, lastCommit.minus(Duration.ofDays(3)), lastCommit.plusSeconds(40));
+        when(messages.plaintextAfter(any(), anyLong(), any())).thenReturn(List.of(live, gone));
+        when(messages.plaintextDeletedAfter(any(), anyLong(), any())).thenReturn(List.of(gone, old));
+
+        ReflectionTestUtils.invokeMethod(indexer(), "backfill");
+
+        Instant since = lastCommit.minusSeconds(60);
+        verify(messages).plaintextAfter(eq(since), eq(0L), any());
+        verify(messages).plaintextDeletedAfter(eq(since), eq(0L), any());
+        verify(localIndex).index(10L, "new", live.getServerTs().toEpochMilli(), "body new");
+        verify(localIndex, never()).index(anyLong(), eq("new-deleted"), anyLong(), anyString());
+        verify(localIndex, atLeastOnce()).delete("new-deleted");
+        verify(localIndex).delete("old-deleted");
+        verify(localIndex).markReady();
+    }
+
+    private MessageSearchIndexer indexer() {
+        return new MessageSearchIndexer(new ObjectMapper().findAndRegisterModules(), writer,
+                redis, localIndex, messages, meters);
+    }
+
+    private static ChatMessage message(long id, String messageId, boolean deleted, Instant serverTs, Instant deletedAt) {
+        ChatMessage m = new ChatMessage();
+        ReflectionTestUtils.setField(m, "id", id);
+        m.setRoomId(10L);
+        m.setMessageId(messageId);
+        m.setBody(deleted ? "This message was deleted" : "body " + messageId);
+        m.setServerTs(serverTs);
+        m.setDeletedForEveryone(deleted);
+        m.setDeletedAt(deletedAt);
+        return m;
+    }
+
+    private static Message delivery(long roomId, String id, boolean e2ee, String body, Instant ts) {
+        String json = "{\"roomId\":" + roomId + ",\"messageId\":\"" + id + "\",\"e2ee\":" + e2ee
+                + ",\"serverTs\":\"" + ts + "\"" + (body == null ? "" : ",\"body\":\"" + body + "\"") + "}";
+        return new Message(json.getBytes(StandardCharsets.UTF_8), new MessageProperties());
+    }
+}
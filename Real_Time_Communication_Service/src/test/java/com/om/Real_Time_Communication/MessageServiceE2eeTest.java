@@ -43,6 +43,10 @@ public class MessageServiceE2eeTest {
         ReflectionTestUtils.setField(messageService, "aclService", aclService);
         ReflectionTestUtils.setField(messageService, "directPolicy", directPolicy);
         ReflectionTestUtils.setField(messageService, "inboxDeliveryService", inboxDeliveryService);
+        ReflectionTestUtils.setField(messageService, "outboxRepo",
+                Mockito.mock(com.om.Real_Time_Communication.Repository.OutboxEventRepository.class));
+        ReflectionTestUtils.setField(messageService, "objectMapper",
+                new com.fasterxml.jackson.databind.ObjectMapper().findAndRegisterModules());
     }
 
     @Test
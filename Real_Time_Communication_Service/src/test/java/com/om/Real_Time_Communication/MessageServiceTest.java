@@ -4,8 +4,11 @@ import com.om.Real_Time_Communication.Repository.ChatMessageRepository;
 import com.om.Real_Time_Communication.Repository.ChatRoomParticipantRepository;
 import com.om.Real_Time_Communication.Repository.ChatRoomRepository;
 import com.om.Real_Time_Communication.Repository.MessageRepository;
+import com.om.Real_Time_Communication.Repository.OutboxEventRepository;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.om.Real_Time_Communication.dto.ChatSendDto;
 import com.om.Real_Time_Communication.dto.MessageDto;
+import com.om.Real_Time_Communication.dto.RoomEvent;
 import com.om.Real_Time_Communication.models.ChatMessage;
 import com.om.Real_Time_Communication.models.*;
 import com.om.Real_Time_Communication.presence.PresenceRegistry;
@@ -18,6 +21,7 @@ import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.ArgumentCaptor;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.messaging.simp.SimpMessagingTemplate;
 import org.springframework.web.socket.WebSocketSession;
@@ -51,6 +55,8 @@ class MessageServiceTest {
     @Mock UndeliveredMessageStore undeliveredStore;
     @Mock InboxDeliveryService inboxDeliveryService;
     @Mock PresenceRegistry presenceRegistry;
+    @Mock OutboxEventRepository outboxRepo;
+    @Spy ObjectMapper objectMapper = new ObjectMapper().findAndRegisterModules();
 
     @InjectMocks
     MessageService service;
@@ -138,6 +144,27 @@ class MessageServiceTest {
         verify(eventPublisher, never()).publishOfflineMessage(anyString(), any());
     }
 
+    @Test
+    void deleteMessageForEveryone_publishesDeleteForSearchIndexes() throws Exception {
+        ChatMessage msg = new ChatMessage();
+        msg.setRoomId(10L);
+        msg.setMessageId("d1");
+        msg.setSenderId(1L);
+        msg.setBody("oops");
+        when(chatMessageRepository.findByMessageId("d1")).thenReturn(Optional.of(msg));
+
+        service.deleteMessageForEveryone("d1", "1");
+
+        assertTrue(msg.isDeletedForEveryone());
+        assertNotNull(msg.getDeletedAt(), "restarted pods replay deletes by deletedAt");
+        ArgumentCaptor<OutboxEvent> captor = ArgumentCaptor.forClass(OutboxEvent.class);
+        verify(outboxRepo).save(captor.capture());
+        OutboxEvent out = captor.getValue();
+        assertEquals("MessageDeleted", out.getEventType());
+        assertEquals(Long.valueOf(10L), out.getAggregateId());
+        assertEquals("d1", objectMapper.readTree(out.getPayload()).get("messageId").asText());
+    }
+
     @Test
     void deleteConversationForUser_marksMessagesAndHidesRoom() {
         Message m1 = new Message();
@@ -206,8 +233,15 @@ class MessageServiceTest {
 
         ArgumentCaptor<List<Long>> captor = ArgumentCaptor.forClass(List.class);
         verify(eventPublisher).publishNewMessage(eq(10L), eq("g1"), eq(1L), captor.capture(), eq(true), isNull());
-        verify(inboxDeliveryService).sendInboxEvent(saved);
+        verify(inboxDeliveryService).sendInboxEvent(eq(saved), eq(List.of(1L,2L,3L)), any(RoomEvent.class));
+        verify(membership, times(1)).memberIds(10L);
         assertEquals(List.of(2L,3L), captor.getValue());
+
+        ArgumentCaptor<OutboxEvent> outbox = ArgumentCaptor.forClass(OutboxEvent.class);
+        verify(outboxRepo).save(outbox.capture());
+        assertEquals("MessageCreated", outbox.getValue().getEventType());
+        assertEquals(10L, outbox.getValue().getAggregateId());
+        assertTrue(outbox.getValue().getPayload().contains("\"messageId\":\"g1\""));
     }
 
     @Test
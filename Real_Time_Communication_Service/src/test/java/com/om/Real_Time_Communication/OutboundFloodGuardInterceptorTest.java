@@ -0,0 +1,77 @@
+package com.om.Real_Time_Communication;
+
+import com.om.Real_Time_Communication.config.OutboundFloodGuardInterceptor;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.messaging.SessionDisconnectEvent;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class OutboundFloodGuardInterceptorTest {
+
+    @Test
+    void permitsAreHeldUntilCompletionAndStateIsDroppedOnDisconnect() {
+        SimpleMeterRegistry meters = new SimpleMeterRegistry();
+        OutboundFloodGuardInterceptor guard = new OutboundFloodGuardInterceptor(meters);
+
+        Message<byte[]> frame = frame("s1", "/topic/room.r1");
+        Message<?> out = guard.preSend(frame, null);
+        assertSame(frame, out, "frames pass through without being rebuilt");
+        assertEquals(1, guard.inflight("s1"));
+        assertEquals(1.0, meters.get("rtc.ws.outbound.inflight").tag("stat", "total").gauge().value());
+
+        guard.afterSendCompletion(out, null, true, null);
+        assertEquals(0, guard.inflight("s1"));
+
+        guard.preSend(frame, null);
+        guard.onDisconnect(new SessionDisconnectEvent(this, frame, "s1", CloseStatus.NORMAL));
+        assertEquals(0, guard.inflight("s1"));
+        assertEquals(0.0, meters.get("rtc.ws.outbound.sessions").gauge().value());
+    }
+
+    @Test
+    void gateBroughtBackByALateFrameExpiresOnceIdle() {
+        SimpleMeterRegistry meters = new SimpleMeterRegistry();
+        AtomicLong now = new AtomicLong(1_000_000);
+        OutboundFloodGuardInterceptor guard = new OutboundFloodGuardInterceptor(meters, now::get);
+
+        Message<byte[]> frame = frame("s3", "/topic/room.r1");
+        guard.preSend(frame, null);
+        guard.onDisconnect(new SessionDisconnectEvent(this, frame, "s3", CloseStatus.NORMAL));
+        guard.preSend(frame, null); // relay still delivering to the closed session
+        assertEquals(1, guard.inflight("s3"));
+
+        now.addAndGet(Duration.ofMinutes(3).toMillis());
+        assertEquals(0, guard.inflight("s3"));
+        assertEquals(0.0, meters.get("rtc.ws.outbound.sessions").gauge().value());
+    }
+
+    @Test
+    void congestedSessionDropsLowPriorityFramesAtOnce() {
+        SimpleMeterRegistry meters = new SimpleMeterRegistry();
+        OutboundFloodGuardInterceptor guard = new OutboundFloodGuardInterceptor(meters);
+
+        Message<byte[]> room = frame("s2", "/topic/room.r1");
+        for (int i = 0; i < 1000; i++) assertNotNull(guard.preSend(room, null));
+
+        assertNull(guard.preSend(frame("s2", "/topic/typing.r1"), null));
+        assertNull(guard.preSend(frame("s2", "/topic/typing.r1"), null));
+        assertEquals(2, guard.dropped("s2"));
+        assertEquals(2.0, meters.get("rtc.ws.outbound.dropped").tag("priority", "low").counter().count());
+    }
+
+    private static Message<byte[]> frame(String sessionId, String destination) {
+        SimpMessageHeaderAccessor acc = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+        acc.setSessionId(sessionId);
+        acc.setDestination(destination);
+        return MessageBuilder.createMessage(new byte[0], acc.getMessageHeaders());
+    }
+}
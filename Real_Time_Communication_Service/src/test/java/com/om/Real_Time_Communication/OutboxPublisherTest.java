@@ -0,0 +1,219 @@
+package com.om.Real_Time_Communication;
+
+import com.om.Real_Time_Communication.Repository.OutboxEventRepository;
+import com.om.Real_Time_Communication.config.RabbitConfig;
+import com.om.Real_Time_Communication.models.OutboxEvent;
+import com.om.Real_Time_Communication.presence.OutboxPublisher;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessagePostProcessor;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.core.ReturnedMessage;
+import org.springframework.amqp.rabbit.connection.ConnectionFactory;
+import org.springframework.amqp.rabbit.connection.CorrelationData;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class OutboxPublisherTest {
+
+    private final OutboxEventRepository repo = mock(OutboxEventRepository.class);
+    private final RabbitTemplate rabbit = mock(RabbitTemplate.class);
+    private final ConnectionFactory connectionFactory = mock(ConnectionFactory.class);
+    private final TransactionTemplate tx = mock(TransactionTemplate.class);
+    private final OutboxPublisher publisher = new OutboxPublisher(repo, rabbit, tx);
+
+    /** What the broker does with each published event id; unlisted ids are acked. */
+    private final Map<Long, Consumer<CorrelationData>> broker = new HashMap<>();
+    private final List<Message> published = new ArrayList<>();
+    private boolean inTransaction;
+
+    @BeforeEach
+    void setUp() {
+        when(tx.execute(any())).thenAnswer(inv -> {
+            inTransaction = true;
+            try {
+                return inv.<TransactionCallback<?>>getArgument(0).doInTransaction(null);
+            } finally {
+                inTransaction = false;
+            }
+        });
+        when(rabbit.getConnectionFactory()).thenReturn(connectionFactory);
+        when(connectionFactory.isPublisherConfirms()).thenReturn(true);
+        ReflectionTestUtils.setField(publisher, "confirmTimeoutMs", 100L);
+
+        doAnswer(inv -> {
+            assertFalse(inTransaction, "published while holding the claim transaction");
+            Message msg = new Message(((String) inv.getArgument(2)).getBytes(), new MessageProperties());
+            published.add(inv.<MessagePostProcessor>getArgument(3).postProcessMessage(msg));
+            CorrelationData cd = inv.getArgument(4);
+            long id = Long.parseLong(cd.getId().substring("obx-".length()));
+            broker.getOrDefault(id, ack()).accept(cd);
+            return null;
+        }).when(rabbit).convertAndSend(anyString(), anyString(), any(Object.class),
+                any(MessagePostProcessor.class), any(CorrelationData.class));
+    }
+
+    @Test
+    void ackedBatchIsSettledWithOneUpdate() {
+        when(repo.claimBatch(any(), anyInt())).thenReturn(List.of(event(1, 0), event(2, 0)));
+
+        publisher.pump();
+
+        verify(rabbit).convertAndSend(eq(RabbitConfig.EXCHANGE_EVENTS), eq("room.10.message.created"), eq("{}"),
+                any(MessagePostProcessor.class), any(CorrelationData.class));
+        assertEquals(List.of("obx-1", "obx-2"), published.stream().map(m -> m.getMessageProperties().getMessageId()).toList());
+        verify(repo, times(1)).markSent(eq(List.of(1L, 2L)), any());
+        verify(repo, never()).markFailed(any(), any(), any());
+        verify(tx, times(2)).execute(any());      // claim, then settle
+    }
+
+    @Test
+    void claimedRowsAreLeasedPastTheConfirmTimeoutBeforeTheClaimCommits() {
+        when(repo.claimBatch(any(), anyInt())).thenReturn(List.of(event(1, 0), event(2, 0)));
+
+        Instant before = Instant.now();
+        publisher.pump();
+
+        ArgumentCaptor<Instant> until = ArgumentCaptor.forClass(Instant.class);
+        InOrder order = inOrder(repo, rabbit);
+        order.verify(repo).claimBatch(any(), anyInt());
+        order.verify(repo).lease(eq(List.of(1L, 2L)), until.capture());
+        order.verify(rabbit, times(2)).convertAndSend(anyString(), anyString(), any(Object.class),
+                any(MessagePostProcessor.class), any(CorrelationData.class));
+        order.verify(repo).markSent(eq(List.of(1L, 2L)), any());
+        assertTrue(until.getValue().isAfter(before.plusMillis(100)));
+    }
+
+    @Test
+    void deleteEventsAreRoutedToTheDeletedKey() {
+        OutboxEvent deleted = event(3, 0);
+        deleted.setEventType("MessageDeleted");
+        when(repo.claimBatch(any(), anyInt())).thenReturn(List.of(deleted));
+
+        publisher.pump();
+
+        verify(rabbit).convertAndSend(eq(RabbitConfig.EXCHANGE_EVENTS), eq("room.10.message.deleted"), eq("{}"),
+                any(MessagePostProcessor.class), any(CorrelationData.class));
+    }
+
+    @Test
+    void nackUnroutableMissingConfirmAndSendErrorAreRetriedGroupedByAttempts() {
+        broker.put(2L, cd -> cd.getFuture().complete(new CorrelationData.Confirm(false, "nack")));
+        broker.put(3L, cd -> { /* confirm never arrives */ });
+        broker.put(4L, cd -> { throw new IllegalStateException("channel closed"); });
+        broker.put(5L, cd -> {
+            cd.setReturned(new ReturnedMessage(new Message(new byte[0]), 312, "NO_ROUTE", "x", "rk"));
+            cd.getFuture().complete(new CorrelationData.Confirm(true, null));
+        });
+        when(repo.claimBatch(any(), anyInt()))
+                .thenReturn(List.of(event(1, 0), event(2, 0), event(3, 0), event(4, 2), event(5, 2)));
+
+        Instant before = Instant.now();
+        publisher.pump();
+        Instant after = Instant.now();
+
+        verify(repo).markSent(eq(List.of(1L)), any());
+        Map<Collection<Long>, Instant> retries = captureMarkFailed("PENDING", 2);
+        assertBetween(retries.get(List.of(2L, 3L)), before, after, OutboxPublisher.backoff(1));
+        assertBetween(retries.get(List.of(4L, 5L)), before, after, OutboxPublisher.backoff(3));
+    }
+
+    @Test
+    void eventIsParkedAsFailedOnItsLastAttempt() {
+        broker.put(7L, cd -> cd.getFuture().complete(new CorrelationData.Confirm(false, "nack")));
+        broker.put(8L, cd -> cd.getFuture().complete(new CorrelationData.Confirm(false, "nack")));
+        when(repo.claimBatch(any(), anyInt())).thenReturn(List.of(event(7, 11), event(8, 10)));
+
+        publisher.pump();
+
+        verify(repo).markFailed(eq(List.of(7L)), eq("FAILED"), any());
+        verify(repo).markFailed(eq(List.of(8L)), eq("PENDING"), any());
+        verify(repo, never()).markSent(any(), any());
+    }
+
+    @Test
+    void backoffDoublesFromOneSecondAndIsCapped() {
+        assertEquals(Duration.ofSeconds(1), OutboxPublisher.backoff(0));
+        assertEquals(Duration.ofSeconds(1), OutboxPublisher.backoff(1));
+        assertEquals(Duration.ofSeconds(2), OutboxPublisher.backoff(2));
+        assertEquals(Duration.ofSeconds(256), OutboxPublisher.backoff(9));
+        assertEquals(Duration.ofMinutes(5), OutboxPublisher.backoff(10));
+        assertEquals(Duration.ofMinutes(5), OutboxPublisher.backoff(Integer.MAX_VALUE));
+    }
+
+    @Test
+    void fullBatchesKeepPumpingUntilOneComesBackShort() {
+        ReflectionTestUtils.setField(publisher, "batchSize", 2);
+        when(repo.claimBatch(any(), eq(2)))
+                .thenReturn(List.of(event(1, 0), event(2, 0)))
+                .thenReturn(List.of(event(3, 0), event(4, 0)))
+                .thenReturn(List.of(event(5, 0)));
+
+        publisher.pump();
+
+        verify(tx, times(6)).execute(any());
+        verify(repo, times(3)).markSent(any(), any());
+    }
+
+    @Test
+    void withoutPublisherConfirmsEventsAreSentWithoutWaiting() {
+        when(connectionFactory.isPublisherConfirms()).thenReturn(false);
+        broker.put(1L, cd -> { /* no confirm */ });
+        when(repo.claimBatch(any(), anyInt())).thenReturn(List.of(event(1, 0)));
+
+        publisher.pump();
+
+        verify(repo).markSent(eq(List.of(1L)), any());
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<Collection<Long>, Instant> captureMarkFailed(String status, int calls) {
+        ArgumentCaptor<Collection<Long>> ids = ArgumentCaptor.forClass(Collection.class);
+        ArgumentCaptor<Instant> next = ArgumentCaptor.forClass(Instant.class);
+        verify(repo, times(calls)).markFailed(ids.capture(), eq(status), next.capture());
+        Map<Collection<Long>, Instant> out = new HashMap<>();
+        for (int i = 0; i < calls; i++) {
+            out.put(List.copyOf(ids.getAllValues().get(i)), next.getAllValues().get(i));
+        }
+        return out;
+    }
+
+    private static void assertBetween(Instant actual, Instant before, Instant after, Duration delay) {
+        assertNotNull(actual);
+        assertFalse(actual.isBefore(before.plus(delay)), actual + " earlier than " + before.plus(delay));
+        assertFalse(actual.isAfter(after.plus(delay)), actual + " later than " + after.plus(delay));
+    }
+
+    private static Consumer<CorrelationData> ack() {
+        return cd -> cd.getFuture().complete(new CorrelationData.Confirm(true, null));
+    }
+
+    private static OutboxEvent event(long id, int attempts) {
+        OutboxEvent ev = new OutboxEvent();
+        ReflectionTestUtils.setField(ev, "id", id);
+        ev.setAggregateType("ChatRoom");
+        ev.setAggregateId(10L);
+        ev.setEventType("MessageCreated");
+        ev.setPayload("{}");
+        ev.setAttempts(attempts);
+        return ev;
+    }
+}
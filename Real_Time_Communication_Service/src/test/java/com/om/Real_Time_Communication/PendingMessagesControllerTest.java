@@ -0,0 +1,68 @@
+package com.om.Real_Time_Communication;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.om.Real_Time_Communication.controller.PendingMessagesController;
+import com.om.Real_Time_Communication.service.InboxDeliveryService;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.ByteArrayOutputStream;
+import java.security.Principal;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class PendingMessagesControllerTest {
+
+    private final InboxDeliveryService inbox = mock(InboxDeliveryService.class);
+    private final ObjectMapper om = new ObjectMapper();
+    private final PendingMessagesController controller = new PendingMessagesController(inbox, om);
+    private final Principal user = () -> "42";
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void pagesAreStreamedAsOneJsonArray() throws Exception {
+        doAnswer(inv -> {
+            Consumer<List<Map<String, Object>>> sink = inv.getArgument(2);
+            sink.accept(List.of(Map.of("messageId", "m1"), Map.of("messageId", "m2")));
+            sink.accept(List.of(Map.of("messageId", "m3")));
+            return null;
+        }).when(inbox).replayPending(eq(42L), eq(Instant.parse("2024-01-01T00:00:00Z")), any(Consumer.class));
+
+        ResponseEntity<StreamingResponseBody> res = controller.pending(user, "2024-01-01T00:00:00Z");
+
+        assertEquals(200, res.getStatusCode().value());
+        assertEquals(MediaType.APPLICATION_JSON, res.getHeaders().getContentType());
+        List<Map<String, Object>> body = om.readValue(stream(res), new TypeReference<>() {});
+        assertEquals(List.of("m1", "m2", "m3"), body.stream().map(m -> m.get("messageId")).toList());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void emptyBacklogIsAnEmptyArrayAndBadSinceIsIgnored() throws Exception {
+        ResponseEntity<StreamingResponseBody> res = controller.pending(user, "yesterday");
+
+        assertEquals("[]", new String(stream(res)));
+        verify(inbox).replayPending(eq(42L), isNull(), any(Consumer.class));
+    }
+
+    @Test
+    void anonymousRequestIsRejected() {
+        assertEquals(401, controller.pending(null, null).getStatusCode().value());
+        verifyNoInteractions(inbox);
+    }
+
+    private static byte[] stream(ResponseEntity<StreamingResponseBody> res) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        res.getBody().writeTo(out);
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,110 @@
+package com.om.Real_Time_Communication;
+
+import com.om.Real_Time_Communication.Repository.MessageDeliveryRepository;
+import com.om.Real_Time_Communication.dto.PendingReplayRow;
+import com.om.Real_Time_Communication.models.ChatMessage;
+import com.om.Real_Time_Communication.models.ChatRoom;
+import com.om.Real_Time_Communication.models.MessageDelivery;
+import com.om.Real_Time_Communication.models.MessageDeliveryStatus;
+import com.om.Real_Time_Communication.models.MessageType;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.data.domain.PageRequest;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Keyset paging of pending deliveries on (createdAt, id): rows that share a createdAt and straddle
+ * a page boundary must be neither skipped nor repeated.
+ */
+@DataJpaTest
+class PendingReplayPageTest {
+
+    private static final Instant T0 = Instant.parse("2024-01-01T00:00:00Z");
+    private static final Set<MessageDeliveryStatus> REPLAY =
+            EnumSet.of(MessageDeliveryStatus.PENDING, MessageDeliveryStatus.SENT_TO_WS);
+
+    @Autowired
+    TestEntityManager em;
+
+    @Autowired
+    MessageDeliveryRepository deliveries;
+
+    private final List<Long> expected = new ArrayList<>();
+
+    @BeforeEach
+    void seed() {
+        ChatRoom room = em.persist(ChatRoom.builder().roomId("r-1").group(true).build());
+        // three rows tie on T0 + 1s, so a page of two ends in the middle of the tie
+        Instant[] created = {T0, T0.plusSeconds(1), T0.plusSeconds(1), T0.plusSeconds(1), T0.plusSeconds(2)};
+        for (int i = 0; i < created.length; i++) {
+            expected.add(delivery(room, "m" + i, 7L, created[i], MessageDeliveryStatus.PENDING).getId());
+        }
+        delivery(room, "m-read", 7L, T0.plusSeconds(1), MessageDeliveryStatus.READ);
+        delivery(room, "m-other", 8L, T0.plusSeconds(1), MessageDeliveryStatus.PENDING);
+        em.flush();
+        em.clear();
+    }
+
+    @Test
+    void pagesWalkTiesOnCreatedAtWithoutGapsOrRepeats() {
+        List<Long> seen = new ArrayList<>();
+        Instant cursorTs = Instant.EPOCH;
+        Long cursorId = 0L;
+        while (true) {
+            List<PendingReplayRow> page = deliveries.pendingReplayPage(7L, REPLAY, cursorTs, cursorId, PageRequest.of(0, 2));
+            page.forEach(r -> seen.add(r.getDeliveryId()));
+            if (page.size() < 2) break;
+            PendingReplayRow last = page.get(page.size() - 1);
+            cursorTs = last.getCreatedAt();
+            cursorId = last.getDeliveryId();
+        }
+
+        assertEquals(expected, seen);
+    }
+
+    @Test
+    void rowsCarryTheirMessageAndRoom() {
+        PendingReplayRow first = deliveries.pendingReplayPage(7L, REPLAY, Instant.EPOCH, 0L, PageRequest.of(0, 1)).get(0);
+
+        assertEquals("m0", first.getMessage().getMessageId());
+        assertEquals("r-1", first.getRoom().getRoomId());
+    }
+
+    @Test
+    void sinceIsExclusiveOfTheWholeTie() {
+        List<PendingReplayRow> rows = deliveries.pendingReplayPage(
+                7L, REPLAY, T0.plusSeconds(1), Long.MAX_VALUE, PageRequest.of(0, 10));
+
+        assertEquals(List.of(expected.get(4)), rows.stream().map(PendingReplayRow::getDeliveryId).toList());
+    }
+
+    private MessageDelivery delivery(ChatRoom room, String msgId, Long userId, Instant createdAt,
+                                     MessageDeliveryStatus status) {
+        ChatMessage m = new ChatMessage();
+        m.setRoomId(room.getId());
+        m.setSenderId(1L);
+        m.setMessageId(msgId);
+        m.setType(MessageType.TEXT);
+        m.setBody("hi " + msgId);
+        m.setServerTs(createdAt);
+        em.persist(m);
+
+        MessageDelivery d = new MessageDelivery();
+        d.setMsgId(msgId);
+        d.setUserId(userId);
+        d.setRoomId(room.getId());
+        d.setStatus(status);
+        d.setCreatedAt(createdAt);
+        return em.persist(d);
+    }
+}
@@ -0,0 +1,85 @@
+package com.om.Real_Time_Communication;
+
+import com.om.Real_Time_Communication.presence.PerRoomDispatcher;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Load test for the mailbox dispatcher: 10k rooms are active at the same time on a
+ * small worker pool, and every room must still observe its messages in submit order.
+ */
+public class PerRoomDispatcherPerformanceTest {
+
+    @Test
+    void tenThousandActiveRoomsKeepPerRoomFifo() throws Exception {
+        int rooms = 10_000;
+        int perRoom = 20;
+        int producers = 16;
+
+        try (PerRoomDispatcher dispatcher = new PerRoomDispatcher(16)) {
+            ConcurrentMap<Long, AtomicInteger> lastSeen = new ConcurrentHashMap<>();
+            AtomicInteger outOfOrder = new AtomicInteger();
+            List<CompletableFuture<Integer>> futures = java.util.Collections.synchronizedList(new ArrayList<>());
+
+            ExecutorService pool = Executors.newFixedThreadPool(producers);
+            for (int p = 0; p < producers; p++) {
+                final int producer = p;
+                pool.submit(() -> {
+                    // each room is owned by exactly one producer, so its submit order is well defined
+                    for (int seq = 0; seq < perRoom; seq++) {
+                        for (long room = producer; room < rooms; room += producers) {
+                            final long roomId = room;
+                            final int expected = seq;
+                            futures.add(dispatcher.submit(roomId, () -> {
+                                AtomicInteger last = lastSeen.computeIfAbsent(roomId, k -> new AtomicInteger(-1));
+                                if (last.getAndSet(expected) != expected - 1) outOfOrder.incrementAndGet();
+                                return expected;
+                            }));
+                        }
+                    }
+                });
+            }
+            pool.shutdown();
+            assertTrue(pool.awaitTermination(30, TimeUnit.SECONDS));
+
+            CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).get(60, TimeUnit.SECONDS);
+
+            assertEquals(0, outOfOrder.get());
+            assertEquals(rooms, lastSeen.size());
+            lastSeen.values().forEach(v -> assertEquals(perRoom - 1, v.get()));
+        }
+    }
+
+    @Test
+    void submitDoesNotBlockAndIdleRoomsAreReclaimed() throws Exception {
+        try (PerRoomDispatcher dispatcher = new PerRoomDispatcher(2)) {
+            java.util.concurrent.CountDownLatch gate = new java.util.concurrent.CountDownLatch(1);
+            CompletableFuture<String> slow = dispatcher.submit(1L, () -> { gate.await(); return "slow"; });
+            CompletableFuture<String> next = dispatcher.submit(1L, () -> "next");
+
+            assertFalse(slow.isDone());
+            assertFalse(next.isDone());
+            gate.countDown();
+            assertEquals("next", next.get(5, TimeUnit.SECONDS));
+
+            CompletableFuture<Object> failed = dispatcher.submit(2L, () -> { throw new IllegalStateException("boom"); });
+            assertThrows(Exception.class, () -> failed.get(5, TimeUnit.SECONDS));
+
+            assertEquals(2, dispatcher.activeRooms());
+            Thread.sleep(50);
+            dispatcher.cleanupIdle(0);
+            assertEquals(0, dispatcher.activeRooms());
+        }
+    }
+}
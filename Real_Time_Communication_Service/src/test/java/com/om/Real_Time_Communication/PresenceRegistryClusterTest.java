@@ -0,0 +1,83 @@
+package com.om.Real_Time_Communication;
+
+import com.om.Real_Time_Communication.presence.PresenceRegistry;
+import com.om.Real_Time_Communication.presence.RedisPresenceStore;
+import com.om.Real_Time_Communication.support.InMemoryRedis;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Two registries sharing one Redis stand-in behave like two RTC pods:
+ * a device connected to pod A must be visible to pod B's shouldPush checks.
+ */
+class PresenceRegistryClusterTest {
+
+    @Test
+    void presenceIsVisibleAcrossNodes() {
+        InMemoryRedis redis = new InMemoryRedis();
+        RedisPresenceStore store = new RedisPresenceStore(redis.template(), 60_000);
+        PresenceRegistry podA = new PresenceRegistry(store, Duration.ZERO);
+        PresenceRegistry podB = new PresenceRegistry(store, Duration.ZERO);
+
+        podA.touch(7L, "phone", 42L);
+
+        assertTrue(podB.isOnline(7L));
+        assertTrue(podB.isViewingRoom(7L, 42L));
+        assertFalse(podB.isViewingRoom(7L, 43L));
+        assertFalse(podB.isOnline(8L));
+        assertEquals(Duration.ofMinutes(1), redis.ttl("presence:u:7"));
+
+        podA.markOffline(7L, "phone");
+        assertFalse(podB.isOnline(7L));
+    }
+
+    @Test
+    void nearCacheServesRepeatedLookupsUntilItExpires() {
+        InMemoryRedis redis = new InMemoryRedis();
+        RedisPresenceStore store = new RedisPresenceStore(redis.template(), 60_000);
+        PresenceRegistry podA = new PresenceRegistry(store, Duration.ofMinutes(5));
+        PresenceRegistry podB = new PresenceRegistry(store, Duration.ofMinutes(5));
+
+        assertFalse(podB.isOnline(9L));       // caches "no devices" for user 9
+        podA.touch(9L, "phone");
+        assertFalse(podB.isOnline(9L));       // still served from pod B's near-cache
+        assertTrue(podA.isOnline(9L));        // local state is always authoritative
+    }
+
+    @Test
+    void disconnectRemovesTheDeviceFromTheSharedHash() {
+        InMemoryRedis redis = new InMemoryRedis();
+        RedisPresenceStore store = new RedisPresenceStore(redis.template(), 60_000);
+        PresenceRegistry podA = new PresenceRegistry(store, Duration.ZERO);
+        PresenceRegistry podB = new PresenceRegistry(store, Duration.ZERO);
+
+        podA.touch(7L, "phone");
+        podA.touch(7L, "laptop");
+        podA.disconnect(7L, "phone");
+
+        assertEquals(Set.of("laptop"), redis.hash("presence:u:7").keySet());
+        assertTrue(podB.isOnline(7L));
+        podA.disconnect(7L, "laptop");
+        assertFalse(podB.isOnline(7L));
+        assertTrue(redis.hash("presence:u:7").isEmpty());
+    }
+
+    @Test
+    void devicesNotSeenWithinTheTtlAreDroppedOnRead() {
+        InMemoryRedis redis = new InMemoryRedis();
+        RedisPresenceStore store = new RedisPresenceStore(redis.template(), 60_000);
+        // a device whose node died while another device of the user kept the hash alive
+        redis.template().opsForHash().put("presence:u:7", "tablet",
+                "1||42|" + Instant.now().minus(Duration.ofMinutes(5)).toEpochMilli());
+        new PresenceRegistry(store, Duration.ZERO).touch(7L, "phone");
+
+        assertEquals(1, store.devices(7L).size());
+        assertEquals("phone", store.devices(7L).get(0).getDeviceId());
+        assertFalse(redis.hash("presence:u:7").containsKey("tablet"));
+    }
+}
@@ -0,0 +1,58 @@
+package com.om.Real_Time_Communication;
+
+import com.om.Real_Time_Communication.presence.PresenceRegistry;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Behaviour of the per-user presence index used by MessageService.shouldPush at registry sizes
+ * where a full scan would have shown up. Lookup cost itself is measured by
+ * {@code PresenceRegistryBenchmark} (JMH), not here.
+ */
+public class PresenceRegistryPerformanceTest {
+
+    private static final int DEVICES_PER_USER = 2;
+
+    @Test
+    void lookupsAreExactInALargeRegistry() {
+        PresenceRegistry registry = new PresenceRegistry();
+        int users = 100_000 / DEVICES_PER_USER;
+        for (long u = 0; u < users; u++) {
+            for (int d = 0; d < DEVICES_PER_USER; d++) {
+                registry.touch(u, "dev-" + d, u % 50);
+            }
+        }
+
+        assertTrue(registry.isOnline(0L));
+        assertTrue(registry.isOnline(users - 1L));
+        assertFalse(registry.isOnline((long) users));
+        assertTrue(registry.isViewingRoom(57L, 7L));
+        assertFalse(registry.isViewingRoom(58L, 7L));
+        assertEquals(DEVICES_PER_USER, registry.snapshotForUser(12_345L).size());
+    }
+
+    @Test
+    void indexStaysConsistentWithSnapshotAndSweep() {
+        PresenceRegistry registry = new PresenceRegistry();
+        registry.touch(1L, "phone", 10L);
+        registry.touch(1L, "tablet");
+        registry.touch(2L, "phone");
+
+        assertTrue(registry.isOnline(1L));
+        assertTrue(registry.isViewingRoom(1L, 10L));
+        assertFalse(registry.isViewingRoom(2L, 10L));
+        assertEquals(2, registry.snapshotForUser(1L).size());
+        assertTrue(registry.snapshotForUser(3L).isEmpty());
+
+        registry.markOffline(1L, "phone");
+        assertFalse(registry.isViewingRoom(1L, 10L));
+        assertTrue(registry.isOnline(1L));
+
+        registry.snapshotForUser(1L).forEach(p -> p.setLastSeen(p.getLastSeen().minusSeconds(60)));
+        registry.sweep();
+        assertFalse(registry.isOnline(1L));
+        assertTrue(registry.isOnline(2L));
+        assertEquals(2, registry.snapshotForUser(1L).size());
+    }
+}
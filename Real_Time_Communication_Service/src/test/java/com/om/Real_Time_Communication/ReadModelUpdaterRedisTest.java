@@ -0,0 +1,99 @@
+package com.om.Real_Time_Communication;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.om.Real_Time_Communication.presence.ReadModelUpdater;
+import com.om.Real_Time_Communication.service.RoomMembershipService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.testcontainers.containers.GenericContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+import org.testcontainers.utility.DockerImageName;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+/** The unread script against a real Redis; skipped where Docker is unavailable. */
+@Testcontainers(disabledWithoutDocker = true)
+class ReadModelUpdaterRedisTest {
+
+    @Container
+    static final GenericContainer<?> REDIS = new GenericContainer<>(DockerImageName.parse("redis:7-alpine"))
+            .withExposedPorts(6379);
+
+    private static LettuceConnectionFactory factory;
+    private static StringRedisTemplate redis;
+
+    private final RoomMembershipService membership = mock(RoomMembershipService.class);
+    private ReadModelUpdater updater;
+
+    @BeforeAll
+    static void connect() {
+        factory = new LettuceConnectionFactory(REDIS.getHost(), REDIS.getMappedPort(6379));
+        factory.afterPropertiesSet();
+        factory.start();
+        redis = new StringRedisTemplate(factory);
+    }
+
+    @AfterAll
+    static void disconnect() {
+        factory.destroy();
+    }
+
+    @BeforeEach
+    void setUp() {
+        try (RedisConnection c = factory.getConnection()) {
+            c.serverCommands().flushAll();
+        }
+        when(membership.memberIds(1L)).thenReturn(List.of(10L, 11L, 12L));
+        updater = new ReadModelUpdater(redis, new ObjectMapper().findAndRegisterModules(), membership,
+                new SimpleMeterRegistry());
+    }
+
+    @Test
+    void sameEventDeliveredTwiceCountsOnce() {
+        updater.onMessageCreated(List.of(delivery("obx-1", 10)));
+        updater.onMessageCreated(List.of(delivery("obx-1", 10)));   // outbox republish, same id
+
+        assertEquals(Map.of("11", "1", "12", "1"), unread(1));
+    }
+
+    @Test
+    void duplicatesInsideOneBatchCountOnce() {
+        updater.onMessageCreated(List.of(delivery("obx-1", 10), delivery("obx-1", 10), delivery("obx-2", 11)));
+
+        assertEquals(Map.of("10", "1", "11", "1", "12", "2"), unread(1));
+    }
+
+    @Test
+    void redeliveredBatchOnlyAppliesWhatWasMissing() {
+        updater.onMessageCreated(List.of(delivery("obx-1", 10)));   // applied before the batch failed
+        updater.onMessageCreated(List.of(delivery("obx-1", 10), delivery("obx-2", 10)));
+
+        assertEquals(Map.of("11", "2", "12", "2"), unread(1));
+        long ttl = redis.getExpire("readmodel:seen:{room:unread:1}:obx-2");
+        assertTrue(ttl > 0 && ttl <= 86_400, "ttl=" + ttl);
+    }
+
+    private static Map<Object, Object> unread(long roomId) {
+        return redis.opsForHash().entries("room:unread:" + roomId);
+    }
+
+    private static Message delivery(String id, long senderId) {
+        String json = "{\"roomId\":1,\"messageId\":\"" + id + "\",\"senderId\":" + senderId
+                + ",\"e2ee\":false,\"serverTs\":\"2024-01-01T00:00:00Z\",\"body\":\"hi\"}";
+        return new Message(json.getBytes(StandardCharsets.UTF_8), new MessageProperties());
+    }
+}
@@ -0,0 +1,91 @@
+package com.om.Real_Time_Communication;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.om.Real_Time_Communication.presence.ReadModelUpdater;
+import com.om.Real_Time_Communication.service.RoomMembershipService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.data.redis.connection.ReturnType;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class ReadModelUpdaterTest {
+
+    private final StringRedisTemplate redis = mock(StringRedisTemplate.class);
+    private final StringRedisConnection conn = mock(StringRedisConnection.class);
+    private final RoomMembershipService membership = mock(RoomMembershipService.class);
+    private final SimpleMeterRegistry meters = new SimpleMeterRegistry();
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void batchIsMergedIntoOnePipeline() {
+        when(redis.executePipelined(any(RedisCallback.class))).thenAnswer(inv -> {
+            ((RedisCallback<Object>) inv.getArgument(0)).doInRedis(conn);
+            return List.of();
+        });
+        when(membership.memberIds(1L)).thenReturn(List.of(10L, 11L, 12L));
+        when(membership.memberIds(2L)).thenReturn(List.of(10L, 20L));
+        ReadModelUpdater updater = updater();
+
+        String newest = event(1, "m2", 10, "2024-01-01T00:00:02Z");
+        updater.onMessageCreated(List.of(
+                delivery(event(1, "m1", 10, "2024-01-01T00:00:01Z")),
+                delivery(newest),
+                delivery(event(1, "m3", 11, "2024-01-01T00:00:00Z")),   // late arrival, older
+                delivery(event(2, "m4", 20, "2024-01-01T00:00:03Z")),
+                delivery("{oops")));
+
+        verify(redis, times(1)).executePipelined(any(RedisCallback.class));
+        verify(conn).set("room:last:1", newest);
+        verify(conn).set(eq("room:last:2"), anyString());
+        // one script per room: seen markers for its messages, then each message's recipients
+        verify(conn).eval(eq(ReadModelUpdater.UNREAD_SCRIPT), eq(ReturnType.INTEGER), eq(4),
+                eq("room:unread:1"), eq(seen(1, "m1")), eq(seen(1, "m2")), eq(seen(1, "m3")),
+                eq("86400"), eq("11 12"), eq("11 12"), eq("10 12"));
+        verify(conn).eval(eq(ReadModelUpdater.UNREAD_SCRIPT), eq(ReturnType.INTEGER), eq(2),
+                eq("room:unread:2"), eq(seen(2, "m4")), eq("86400"), eq("10"));
+        verify(conn, never()).hIncrBy(anyString(), anyString(), anyLong());
+        verify(membership, times(3)).memberIds(1L);
+
+        assertEquals(4.0, meters.get("rtc.readmodel.batch.size").summary().totalAmount());
+        assertEquals(4.0, meters.get("rtc.readmodel.unread.increments").counter().count());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void redisFailureFailsTheBatchForRedelivery() {
+        when(redis.executePipelined(any(RedisCallback.class))).thenThrow(new IllegalStateException("redis down"));
+        when(membership.memberIds(1L)).thenReturn(List.of(10L, 11L));
+        ReadModelUpdater updater = updater();
+
+        assertThrows(IllegalStateException.class, () -> updater.onMessageCreated(
+                List.of(delivery(event(1, "m1", 10, "2024-01-01T00:00:01Z")))));
+    }
+
+    private ReadModelUpdater updater() {
+        return new ReadModelUpdater(redis, new ObjectMapper().findAndRegisterModules(), membership, meters);
+    }
+
+    private static String seen(long roomId, String messageId) {
+        return "readmodel:seen:{room:unread:" + roomId + "}:" + messageId;
+    }
+
+    private static String event(long roomId, String id, long senderId, String ts) {
+        return "{\"roomId\":" + roomId + ",\"messageId\":\"" + id + "\",\"senderId\":" + senderId
+                + ",\"e2ee\":false,\"serverTs\":\"" + ts + "\",\"body\":\"hi\"}";
+    }
+
+    private static Message delivery(String json) {
+        return new Message(json.getBytes(StandardCharsets.UTF_8), new MessageProperties());
+    }
+}
@@ -0,0 +1,98 @@
+package com.om.Real_Time_Communication;
+
+import com.om.Real_Time_Communication.Repository.ChatRoomParticipantRepository;
+import com.om.Real_Time_Communication.Repository.ChatRoomRepository;
+import com.om.Real_Time_Communication.models.ChatRoom;
+import com.om.Real_Time_Communication.service.E2eeDeviceService;
+import com.om.Real_Time_Communication.service.RoomDescriptorCache;
+import com.om.Real_Time_Communication.service.RoomDescriptorCache.RoomDescriptor;
+import com.om.Real_Time_Communication.service.RoomMembershipService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ValueOperations;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+/**
+ * Steady-state STOMP authorization must not hit the database: the room key, the direct/group
+ * shape and the peer all come from memory until room:v:{id} moves.
+ */
+class RoomDescriptorCacheTest {
+
+    private ChatRoomRepository rooms;
+    private ChatRoomParticipantRepository participants;
+    private ValueOperations<String, String> values;
+    private RoomDescriptorCache cache;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        rooms = mock(ChatRoomRepository.class);
+        participants = mock(ChatRoomParticipantRepository.class);
+        StringRedisTemplate redis = mock(StringRedisTemplate.class);
+        values = mock(ValueOperations.class);
+        when(redis.opsForValue()).thenReturn(values);
+
+        SimpleMeterRegistry meters = new SimpleMeterRegistry();
+        RoomMembershipService membership = new RoomMembershipService(participants, mock(E2eeDeviceService.class), meters);
+        ReflectionTestUtils.setField(membership, "redis", redis);
+        cache = new RoomDescriptorCache(rooms, membership, meters);
+    }
+
+    @Test
+    void repeatedFramesAreAuthorizedFromMemory() {
+        ChatRoom room = mock(ChatRoom.class);
+        when(room.getId()).thenReturn(7L);
+        when(rooms.findByRoomId("dm-abc")).thenReturn(Optional.of(room));
+        when(values.get("room:v:7")).thenReturn("1");
+        when(participants.findUserIdsByRoomId(7L)).thenReturn(List.of(1L, 2L));
+
+        for (int i = 0; i < 1_000; i++) {
+            Long roomId = cache.resolveRoomId("dm-abc");
+            RoomDescriptor d = cache.describe(roomId);
+            assertTrue(d.isMember(1L));
+            assertTrue(d.isDirect());
+            assertEquals(2L, d.peerOf(1L));
+        }
+
+        verify(rooms, times(1)).findByRoomId("dm-abc");
+        verify(rooms, never()).findById(anyLong());
+        verify(participants, times(1)).findUserIdsByRoomId(7L);
+    }
+
+    @Test
+    void membershipChangeRebuildsDescriptor() {
+        when(values.get("room:v:7")).thenReturn("1");
+        when(participants.findUserIdsByRoomId(7L)).thenReturn(List.of(1L, 2L), List.of(1L, 2L, 3L));
+
+        RoomDescriptor before = cache.describe(7L);
+        assertSame(before, cache.describe(7L));
+        assertTrue(before.isDirect());
+
+        when(values.get("room:v:7")).thenReturn("2");
+        RoomDescriptor after = cache.describe(7L);
+        assertFalse(after.isDirect());
+        assertTrue(after.isMember(3L));
+        assertThrows(IllegalArgumentException.class, () -> after.peerOf(1L));
+    }
+
+    @Test
+    void unknownRoomKeysAreNotCached() {
+        when(rooms.findByRoomId(anyString())).thenReturn(Optional.empty());
+        assertThrows(IllegalArgumentException.class, () -> cache.resolveRoomId("nope"));
+
+        ChatRoom room = mock(ChatRoom.class);
+        when(room.getId()).thenReturn(9L);
+        when(rooms.findByRoomId("nope")).thenReturn(Optional.of(room));
+        assertEquals(9L, cache.resolveRoomId("nope"));
+    }
+}
@@ -0,0 +1,77 @@
+package com.om.Real_Time_Communication;
+
+import com.om.Real_Time_Communication.Repository.ChatRoomParticipantRepository;
+import com.om.Real_Time_Communication.service.E2eeDeviceService;
+import com.om.Real_Time_Communication.service.RoomMembershipService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ValueOperations;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+class RoomMembershipCacheTest {
+
+    private ChatRoomParticipantRepository repo;
+    private StringRedisTemplate redis;
+    private ValueOperations<String, String> values;
+    private SimpleMeterRegistry meters;
+    private RoomMembershipService service;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        repo = mock(ChatRoomParticipantRepository.class);
+        redis = mock(StringRedisTemplate.class);
+        values = mock(ValueOperations.class);
+        when(redis.opsForValue()).thenReturn(values);
+        meters = new SimpleMeterRegistry();
+
+        service = new RoomMembershipService(repo, mock(E2eeDeviceService.class), meters);
+        ReflectionTestUtils.setField(service, "redis", redis);
+    }
+
+    @Test
+    void servesCachedMembersUntilVersionChanges() {
+        when(values.get("room:v:10")).thenReturn("3");
+        when(repo.findUserIdsByRoomId(10L)).thenReturn(List.of(1L, 2L), List.of(1L, 2L, 3L));
+
+        assertEquals(List.of(1L, 2L), service.memberIds(10L));
+        assertEquals(List.of(1L, 2L), service.memberIds(10L));
+        verify(repo, times(1)).findUserIdsByRoomId(10L);
+
+        // AclService.onMembershipChanged on any node bumps the counter
+        when(values.get("room:v:10")).thenReturn("4");
+        assertEquals(List.of(1L, 2L, 3L), service.memberIds(10L));
+        verify(repo, times(2)).findUserIdsByRoomId(10L);
+
+        assertEquals(1.0, meters.get("rtc.room.members.stale").counter().count());
+        assertTrue(meters.get("cache.gets").tag("result", "hit").functionCounter().count() >= 1);
+    }
+
+    @Test
+    void fallsBackToDatabaseWhenRedisFails() {
+        when(values.get("room:v:11")).thenThrow(new IllegalStateException("redis down"));
+        when(repo.findUserIdsByRoomId(11L)).thenReturn(List.of(5L));
+
+        assertEquals(List.of(5L), service.memberIds(11L));
+    }
+
+    @Test
+    void evictUserRoomsBumpsGenerationWithoutKeysScan() {
+        service.evictUserRooms(7L);
+
+        verify(values).increment("user:rooms:gen:7");
+        // the generation must never expire, or INCR would restart and reuse a live generation
+        verify(redis, never()).expire(eq("user:rooms:gen:7"), any(Duration.class));
+        verify(redis, never()).keys(anyString());
+        verify(redis, never()).delete(anyString());
+    }
+}
@@ -0,0 +1,66 @@
+package com.om.Real_Time_Communication;
+
+import com.om.Real_Time_Communication.config.JwksCache;
+import com.om.Real_Time_Communication.config.RsJwtVerifier;
+import com.om.Real_Time_Communication.config.RtcJwtConfig;
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwtException;
+import io.jsonwebtoken.Jwts;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.interfaces.RSAPublicKey;
+import java.util.Date;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class RsJwtVerifierTest {
+
+    private KeyPair keys;
+    private JwksCache jwks;
+    private RsJwtVerifier verifier;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        KeyPairGenerator gen = KeyPairGenerator.getInstance("RSA");
+        gen.initialize(2048);
+        keys = gen.generateKeyPair();
+        jwks = mock(JwksCache.class);
+        when(jwks.getKey("k1")).thenReturn((RSAPublicKey) keys.getPublic());
+        verifier = new RsJwtVerifier(new RtcJwtConfig("iss", "http://jwks", null, null), jwks);
+    }
+
+    @Test
+    void repeatedTokenIsVerifiedOnce() {
+        String token = token("k1", "iss", 60_000);
+
+        for (int i = 0; i < 5; i++) {
+            Claims c = verifier.validate(token);
+            assertEquals(7, c.get("userId", Integer.class));
+        }
+        verify(jwks, times(1)).getKey("k1");
+
+        verifier.validate(token("k1", "iss", 120_000));
+        verify(jwks, times(2)).getKey("k1");
+    }
+
+    @Test
+    void rejectsExpiredWrongIssuerAndUnknownKid() {
+        assertThrows(JwtException.class, () -> verifier.validate(token("k1", "iss", -1_000)));
+        assertThrows(JwtException.class, () -> verifier.validate(token("k1", "other", 60_000)));
+        assertThrows(IllegalStateException.class, () -> verifier.validate(token("nope", "iss", 60_000)));
+    }
+
+    private String token(String kid, String issuer, long ttlMs) {
+        return Jwts.builder()
+                .header().keyId(kid).and()
+                .issuer(issuer)
+                .claim("userId", 7)
+                .expiration(new Date(System.currentTimeMillis() + ttlMs))
+                .signWith(keys.getPrivate(), Jwts.SIG.RS256)
+                .compact();
+    }
+}
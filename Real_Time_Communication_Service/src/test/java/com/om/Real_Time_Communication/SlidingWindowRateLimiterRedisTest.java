@@ -0,0 +1,122 @@
+package com.om.Real_Time_Communication;
+
+import com.om.Real_Time_Communication.config.SlidingWindowRateLimiter;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.testcontainers.containers.GenericContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+import org.testcontainers.utility.DockerImageName;
+
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * The sliding-window Lua script against a real Redis; skipped where Docker is unavailable.
+ * The script takes its time from Redis, so the tests wait for the server clock instead of faking one.
+ */
+@Testcontainers(disabledWithoutDocker = true)
+class SlidingWindowRateLimiterRedisTest {
+
+    @Container
+    static final GenericContainer<?> REDIS = new GenericContainer<>(DockerImageName.parse("redis:7-alpine"))
+            .withExposedPorts(6379);
+
+    private static LettuceConnectionFactory factory;
+    private static StringRedisTemplate redis;
+
+    @BeforeAll
+    static void connect() {
+        factory = new LettuceConnectionFactory(REDIS.getHost(), REDIS.getMappedPort(6379));
+        factory.afterPropertiesSet();
+        factory.start();
+        redis = new StringRedisTemplate(factory);
+    }
+
+    @AfterAll
+    static void disconnect() {
+        factory.destroy();
+    }
+
+    @BeforeEach
+    void flush() {
+        try (RedisConnection c = factory.getConnection()) {
+            c.serverCommands().flushAll();
+        }
+    }
+
+    @Test
+    void podsWithSkewedClocksEnforceOneBudget() {
+        SlidingWindowRateLimiter podA = shared(new AtomicLong(1_000_000));
+        SlidingWindowRateLimiter podB = shared(new AtomicLong(1_000_000 + 7_777)); // a window and a half ahead
+
+        awaitServerOffset(5_000, 0, 4_000);   // keep the burst inside one window
+        int allowed = 0;
+        for (int i = 0; i < 20; i++) {
+            if (podA.tryAcquire("u:1:send", 10, 5_000)) allowed++;
+            if (podB.tryAcquire("u:1:send", 10, 5_000)) allowed++;
+        }
+
+        assertEquals(10, allowed);
+        Set<String> counters = redis.keys("rl:{u:1:send}:5000:*");
+        assertEquals(1, counters.size(), "both pods counted into the window Redis' clock picked");
+        String counter = counters.iterator().next();
+        assertEquals("rl:{u:1:send}:5000:" + serverMs() / 5_000, counter);
+        assertEquals("10", redis.opsForValue().get(counter), "rejected events are not counted");
+        long ttl = redis.getExpire(counter, TimeUnit.MILLISECONDS);
+        assertTrue(ttl > 0 && ttl <= 10_000, "counter outlives its window by one length, ttl=" + ttl);
+    }
+
+    @Test
+    void windowEdgeBurstDoesNotDoubleTheSharedBudget() {
+        SlidingWindowRateLimiter limiter = shared(new AtomicLong(1_000_000));
+
+        awaitServerOffset(1_000, 800, 850);   // late in a window
+        for (int i = 0; i < 10; i++) assertTrue(limiter.tryAcquire("k", 10, 1_000));
+        assertFalse(limiter.tryAcquire("k", 10, 1_000));
+
+        // a fixed window would admit ten again; over half of the previous burst still overlaps
+        awaitServerOffset(1_000, 0, 400);
+        int allowed = 0;
+        for (int i = 0; i < 10; i++) {
+            if (limiter.tryAcquire("k", 10, 1_000)) allowed++;
+        }
+        assertTrue(allowed < 5, "allowed " + allowed + " right after the edge");
+    }
+
+    private SlidingWindowRateLimiter shared(AtomicLong clock) {
+        SlidingWindowRateLimiter limiter = new SlidingWindowRateLimiter(clock::get);
+        ReflectionTestUtils.setField(limiter, "redis", redis);
+        ReflectionTestUtils.setField(limiter, "redisEnabled", true);
+        return limiter;
+    }
+
+    private static long serverMs() {
+        return redis.execute((RedisCallback<Long>) c -> c.serverCommands().time(TimeUnit.MILLISECONDS));
+    }
+
+    /** Sleeps until Redis' clock is between {@code from} and {@code to} ms into a window. */
+    private static void awaitServerOffset(long windowMs, long from, long to) {
+        long offset = serverMs() % windowMs;
+        while (offset < from || offset >= to) {
+            long wait = offset < from ? from - offset : windowMs - offset + from;
+            try {
+                Thread.sleep(Math.max(1, wait));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException(e);
+            }
+            offset = serverMs() % windowMs;
+        }
+    }
+}
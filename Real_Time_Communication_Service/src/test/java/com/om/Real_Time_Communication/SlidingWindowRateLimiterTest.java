@@ -0,0 +1,87 @@
+package com.om.Real_Time_Communication;
+
+import com.om.Real_Time_Communication.config.SlidingWindowRateLimiter;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.RedisConnectionFailureException;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/** Local windows and the limiter's use of Redis; the Lua script itself runs in {@link SlidingWindowRateLimiterRedisTest}. */
+class SlidingWindowRateLimiterTest {
+
+    private final AtomicLong now = new AtomicLong(1_000_000);
+
+    @Test
+    void windowEdgeBurstDoesNotDoubleTheBudget() {
+        SlidingWindowRateLimiter limiter = new SlidingWindowRateLimiter(now::get);
+
+        now.set(1_000_900); // late in window [1_000_000, 1_001_000)
+        for (int i = 0; i < 10; i++) assertTrue(limiter.tryAcquire("k", 10, 1_000));
+        assertFalse(limiter.tryAcquire("k", 10, 1_000));
+
+        // a fixed window would reset here; 90% of the previous burst still overlaps
+        now.set(1_001_100);
+        assertTrue(limiter.tryAcquire("k", 10, 1_000));
+        assertFalse(limiter.tryAcquire("k", 10, 1_000));
+
+        // two windows later the old burst carries no weight
+        now.set(1_003_000);
+        for (int i = 0; i < 10; i++) assertTrue(limiter.tryAcquire("k", 10, 1_000));
+    }
+
+    @Test
+    void rejectedEventsAreNotCounted() {
+        SlidingWindowRateLimiter limiter = new SlidingWindowRateLimiter(now::get);
+        for (int i = 0; i < 3; i++) limiter.tryAcquire("k", 3, 1_000);
+        for (int i = 0; i < 100; i++) assertThrows(IllegalArgumentException.class, () -> limiter.checkOrThrow("k", 3, 1_000));
+
+        now.addAndGet(2_000);
+        assertDoesNotThrow(() -> limiter.checkOrThrow("k", 3, 1_000));
+    }
+
+    @Test
+    void sharedCheckSendsOnlyTheHashTaggedPrefixAndNoPodTime() {
+        StringRedisTemplate redis = mock(StringRedisTemplate.class);
+        when(redis.execute(any(RedisScript.class), anyList(), any(Object[].class))).thenReturn(1L, 0L);
+        SlidingWindowRateLimiter limiter = shared(redis);
+
+        now.set(1_002_500);
+        assertTrue(limiter.tryAcquire("u:1:send", 10, 5_000));
+        now.set(9_999_999);
+        assertFalse(limiter.tryAcquire("u:1:send", 10, 5_000), "the script's verdict is final");
+
+        verify(redis, times(2)).execute(eq(SlidingWindowRateLimiter.SCRIPT),
+                eq(List.of("rl:{u:1:send}:5000:")), eq("10"), eq("5000"));
+    }
+
+    @Test
+    void redisOutageFallsBackToLocalWindowAndBacksOff() {
+        StringRedisTemplate redis = mock(StringRedisTemplate.class);
+        when(redis.execute(any(RedisScript.class), anyList(), any(Object[].class)))
+                .thenThrow(new RedisConnectionFailureException("down"));
+        SlidingWindowRateLimiter limiter = shared(redis);
+
+        for (int i = 0; i < 5; i++) assertTrue(limiter.tryAcquire("k", 5, 10_000));
+        assertFalse(limiter.tryAcquire("k", 5, 10_000));
+        verify(redis, times(1)).execute(any(RedisScript.class), anyList(), any(Object[].class));
+
+        now.addAndGet(5_000);
+        limiter.tryAcquire("k", 5, 10_000);
+        verify(redis, times(2)).execute(any(RedisScript.class), anyList(), any(Object[].class));
+    }
+
+    private SlidingWindowRateLimiter shared(StringRedisTemplate redis) {
+        SlidingWindowRateLimiter limiter = new SlidingWindowRateLimiter(now::get);
+        ReflectionTestUtils.setField(limiter, "redis", redis);
+        ReflectionTestUtils.setField(limiter, "redisEnabled", true);
+        return limiter;
+    }
+}
@@ -0,0 +1,90 @@
+package com.om.Real_Time_Communication;
+
+import com.om.Real_Time_Communication.utility.WebSocketRateLimiter;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.redisson.Redisson;
+import org.redisson.api.RedissonClient;
+import org.redisson.config.Config;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.testcontainers.containers.GenericContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+import org.testcontainers.utility.DockerImageName;
+
+import java.util.function.LongSupplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/** The GCRA Lua script against a real Redis; skipped where Docker is unavailable. */
+@Testcontainers(disabledWithoutDocker = true)
+class WebSocketRateLimiterRedisTest {
+
+    @Container
+    static final GenericContainer<?> REDIS = new GenericContainer<>(DockerImageName.parse("redis:7-alpine"))
+            .withExposedPorts(6379);
+
+    private static RedissonClient redisson;
+
+    @BeforeAll
+    static void connect() {
+        Config config = new Config();
+        config.useSingleServer().setAddress("redis://" + REDIS.getHost() + ":" + REDIS.getMappedPort(6379));
+        redisson = Redisson.create(config);
+    }
+
+    @AfterAll
+    static void disconnect() {
+        redisson.shutdown();
+    }
+
+    @BeforeEach
+    void flush() {
+        redisson.getKeys().flushall();
+    }
+
+    @Test
+    void podsWithSkewedClocksShareOneBudget() {
+        WebSocketRateLimiter podA = limiter(System::currentTimeMillis);
+        WebSocketRateLimiter podB = limiter(() -> System.currentTimeMillis() + 3_600_000);
+
+        int allowed = 0;
+        for (int i = 0; i < 40; i++) {
+            // distinct IPs so only the per-user budget (32/min) binds
+            if (podA.isAllowed("10.0.0." + i, "7")) allowed++;
+            if (podB.isAllowed("10.0.1." + i, "7")) allowed++;
+        }
+
+        assertEquals(32, allowed);
+    }
+
+    @Test
+    void fullBucketExpiresAfterOnePeriod() {
+        WebSocketRateLimiter limiter = limiter(System::currentTimeMillis);
+        for (int i = 0; i < 32; i++) assertTrue(limiter.isAllowed("10.0.0." + i, "8"));
+        assertFalse(limiter.isAllowed("10.0.0.99", "8"));
+
+        long ttl = redisson.getBucket("ws:rl:user:8").remainTimeToLive();
+        assertTrue(ttl > 55_000 && ttl <= 60_000, "ttl=" + ttl);
+    }
+
+    @Test
+    void ipBudgetIsSharedAcrossUsers() {
+        WebSocketRateLimiter limiter = limiter(System::currentTimeMillis);
+
+        int allowed = 0;
+        for (int i = 0; i < 120; i++) {
+            if (limiter.isAllowed("10.0.9.9", "u" + i)) allowed++;
+        }
+
+        assertEquals(100, allowed);
+    }
+
+    private static WebSocketRateLimiter limiter(LongSupplier clock) {
+        WebSocketRateLimiter limiter = new WebSocketRateLimiter(clock);
+        ReflectionTestUtils.setField(limiter, "redissonClient", redisson);
+        return limiter;
+    }
+}
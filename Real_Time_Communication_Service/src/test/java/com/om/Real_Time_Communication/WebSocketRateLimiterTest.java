@@ -0,0 +1,63 @@
+package com.om.Real_Time_Communication;
+
+import com.om.Real_Time_Communication.utility.WebSocketRateLimiter;
+import org.junit.jupiter.api.Test;
+import org.redisson.api.RScript;
+import org.redisson.api.RedissonClient;
+import org.redisson.client.codec.Codec;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/** Local buckets and the limiter's use of Redisson; the GCRA script itself runs in {@link WebSocketRateLimiterRedisTest}. */
+class WebSocketRateLimiterTest {
+
+    private final AtomicLong now = new AtomicLong(1_700_000_000_000L);
+
+    @Test
+    void sharedCheckPassesOnlyRatesSoTheScriptUsesServerTime() {
+        RScript script = mock(RScript.class);
+        when(script.eval(any(RScript.Mode.class), anyString(), any(RScript.ReturnType.class), anyList(), any(Object[].class)))
+                .thenReturn(1L, 1L, 0L);
+        RedissonClient redis = mock(RedissonClient.class);
+        when(redis.getScript(any(Codec.class))).thenReturn(script);
+        WebSocketRateLimiter limiter = limiter(redis);
+
+        assertTrue(limiter.isAllowed("10.0.0.1", "7"));
+        assertFalse(limiter.isAllowed("10.0.0.1", "7"), "the script's verdict is final");
+
+        verify(script).eval(eq(RScript.Mode.READ_WRITE), eq(WebSocketRateLimiter.GCRA_SCRIPT), eq(RScript.ReturnType.INTEGER),
+                eq(List.of("ws:rl:user:7")), eq("1875"), eq("60000"));
+        verify(script, times(2)).eval(eq(RScript.Mode.READ_WRITE), eq(WebSocketRateLimiter.GCRA_SCRIPT), eq(RScript.ReturnType.INTEGER),
+                eq(List.of("ws:rl:ip:10.0.0.1")), eq("600"), eq("60000"));
+    }
+
+    @Test
+    void redisOutageFallsBackToLocalBucketsAndBacksOff() {
+        RedissonClient redis = mock(RedissonClient.class);
+        when(redis.getScript(any(Codec.class))).thenThrow(new IllegalStateException("redis down"));
+        WebSocketRateLimiter limiter = limiter(redis);
+
+        int allowed = 0;
+        for (int i = 0; i < 40; i++) {
+            if (limiter.isAllowed("10.0.0." + i, "7")) allowed++;
+        }
+        assertEquals(32, allowed);
+        verify(redis, times(1)).getScript(any(Codec.class));
+
+        now.addAndGet(5_000);
+        limiter.isAllowed("10.0.0.99", "7");
+        verify(redis, times(2)).getScript(any(Codec.class));
+    }
+
+    private WebSocketRateLimiter limiter(RedissonClient redis) {
+        WebSocketRateLimiter limiter = new WebSocketRateLimiter(now::get);
+        ReflectionTestUtils.setField(limiter, "redissonClient", redis);
+        return limiter;
+    }
+}
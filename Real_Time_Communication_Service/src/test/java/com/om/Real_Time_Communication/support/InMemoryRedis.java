@@ -0,0 +1,87 @@
+package com.om.Real_Time_Communication.support;
+
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.core.HashOperations;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * In-process Redis stand-in for unit tests: a StringRedisTemplate mock whose operations are
+ * backed by plain maps, so several components (or simulated pods) can share one "server".
+ */
+public class InMemoryRedis {
+
+    private final Map<String, Map<Object, Object>> hashes = new ConcurrentHashMap<>();
+    private final Map<String, Duration> ttls = new ConcurrentHashMap<>();
+    private final StringRedisTemplate template = mock(StringRedisTemplate.class);
+
+    @SuppressWarnings("unchecked")
+    public InMemoryRedis() {
+        HashOperations<String, Object, Object> hashOps = mock(HashOperations.class);
+        lenient().when(template.opsForHash()).thenReturn(hashOps);
+
+        lenient().doAnswer(inv -> {
+            hashes.computeIfAbsent(inv.getArgument(0), k -> new ConcurrentHashMap<>())
+                    .put(inv.getArgument(1), inv.getArgument(2));
+            return null;
+        }).when(hashOps).put(anyString(), any(), any());
+
+        lenient().when(hashOps.entries(anyString())).thenAnswer(inv ->
+                new HashMap<>(hashes.getOrDefault(inv.getArgument(0), Map.of())));
+
+        lenient().when(hashOps.get(anyString(), any())).thenAnswer(inv ->
+                hashes.getOrDefault(inv.getArgument(0), Map.of()).get(inv.getArgument(1)));
+
+        lenient().when(hashOps.delete(anyString(), any(Object[].class))).thenAnswer(inv -> {
+            Map<Object, Object> hash = hashes.get(inv.<String>getArgument(0));
+            if (hash == null) return 0L;
+            long removed = 0;
+            for (int i = 1; i < inv.getArguments().length; i++) {
+                if (hash.remove(inv.getArguments()[i]) != null) removed++;
+            }
+            return removed;
+        });
+
+        lenient().when(template.expire(anyString(), any(Duration.class))).thenAnswer(inv -> {
+            ttls.put(inv.getArgument(0), inv.getArgument(1));
+            return Boolean.TRUE;
+        });
+
+        // pipelined commands run straight against the maps; results are not collected
+        StringRedisConnection conn = mock(StringRedisConnection.class);
+        lenient().when(conn.hSet(anyString(), anyString(), anyString())).thenAnswer(inv -> {
+            hashes.computeIfAbsent(inv.getArgument(0), k -> new ConcurrentHashMap<>())
+                    .put(inv.getArgument(1), inv.getArgument(2));
+            return Boolean.TRUE;
+        });
+        lenient().when(conn.pExpire(anyString(), anyLong())).thenAnswer(inv -> {
+            ttls.put(inv.getArgument(0), Duration.ofMillis(inv.<Long>getArgument(1)));
+            return Boolean.TRUE;
+        });
+        lenient().when(template.executePipelined(any(RedisCallback.class))).thenAnswer(inv -> {
+            ((RedisCallback<Object>) inv.getArgument(0)).doInRedis(conn);
+            return List.of();
+        });
+    }
+
+    public StringRedisTemplate template() {
+        return template;
+    }
+
+    public Map<Object, Object> hash(String key) {
+        return hashes.getOrDefault(key, Map.of());
+    }
+
+    public Duration ttl(String key) {
+        return ttls.get(key);
+    }
+}